@@ -0,0 +1,688 @@
+package New_Additions;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * BundleSolver finds the best set of bundles for a cart, such as "any 3
+ * milk teas for $12" or "a drink with 2 toppings for $6". Which units go
+ * into which bundle interacts across the whole cart, so the solver searches
+ * over the multiset of remaining units with memoized dynamic programming:
+ * drinks with the same price that fit the same slots are collapsed into one
+ * unit type with a count, and each state is the vector of counts still
+ * unbundled.
+ *
+ * The search has a hard budget of search steps. Large catering orders that
+ * cannot be solved exactly within it fall back to a greedy pass that
+ * repeatedly applies the single most valuable bundle, so pricing never
+ * stalls the till. The budget counts steps rather than time so the same
+ * cart always gets the same bundles: the price shown on the cart is the
+ * price charged at commit, however busy the machine is.
+ *
+ * Bundles are read from a text file with one bundle per line:
+ * name|price in dollars|slot,slot,... where a slot is
+ * count:ALL, CATEGORY or ITEM:target:minimum topping portions, for example
+ * "Three Milk Teas|12.00|3:CATEGORY:Milk Tea:0".
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class BundleSolver {
+
+    /** Default location of the bundle definitions, next to the other data files */
+    public static final Path DEFAULT_PATH = Paths.get("bundles.txt");
+
+    /** Default search steps allowed for an exact solution, about 2 ms on a till */
+    public static final long DEFAULT_STEP_BUDGET = 20_000;
+
+    /** Carts with more units than this go straight to the greedy pass */
+    private static final int MAX_EXACT_UNITS = 256;
+
+    /** One slot of a bundle: how many units of which kind. */
+    public static final class Slot {
+        private final int count;
+        private final PromotionEngine.Scope scope;
+        private final String target;
+        private final int minToppings;
+
+        /**
+         * Constructs a slot.
+         *
+         * @param count the number of units the slot takes
+         * @param scope which items may fill it
+         * @param target the category name or menu item ID, ignored for ALL
+         * @param minToppings the topping portions each unit must have
+         * @author harry
+         */
+        public Slot(int count, PromotionEngine.Scope scope, String target, int minToppings) {
+            if (count <= 0 || minToppings < 0) {
+                throw new IllegalArgumentException("Invalid slot: " + count + " units, " + minToppings + " toppings");
+            }
+            if (scope == PromotionEngine.Scope.ITEM) {
+                Integer.parseInt(target);
+            }
+            this.count = count;
+            this.scope = scope;
+            this.target = target;
+            this.minToppings = minToppings;
+        }
+
+        boolean accepts(UnitType type) {
+            if (type.toppings < minToppings) {
+                return false;
+            }
+            switch (scope) {
+                case ALL:
+                    return true;
+                case CATEGORY:
+                    return target.equalsIgnoreCase(type.category);
+                default:
+                    return Integer.parseInt(target) == type.menuItemId;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return count + ":" + scope + ":" + target + ":" + minToppings;
+        }
+    }
+
+    /** A bundle: a fixed price for units filling all of its slots. */
+    public static final class Bundle {
+        private final String name;
+        private final long priceCents;
+        private final List<Slot> slots;
+
+        /**
+         * Constructs a bundle.
+         *
+         * @param name the name shown on the receipt
+         * @param priceCents the bundle price in cents
+         * @param slots the slots, all of which must be filled
+         * @author harry
+         */
+        public Bundle(String name, long priceCents, List<Slot> slots) {
+            if (priceCents < 0 || slots.isEmpty()) {
+                throw new IllegalArgumentException("Invalid bundle: " + name);
+            }
+            this.name = name;
+            this.priceCents = priceCents;
+            this.slots = new ArrayList<>(slots);
+        }
+
+        /**
+         * Parses one line of the bundles file.
+         *
+         * @param line the line
+         * @return the bundle
+         * @throws IllegalArgumentException if the line is not a valid bundle
+         * @author harry
+         */
+        public static Bundle parse(String line) {
+            String[] fields = line.split("\\|", -1);
+            if (fields.length != 3) {
+                throw new IllegalArgumentException("Expected 3 fields but found " + fields.length);
+            }
+            List<Slot> slots = new ArrayList<>();
+            for (String slot : fields[2].split(",")) {
+                String[] parts = slot.split(":", -1);
+                if (parts.length != 4) {
+                    throw new IllegalArgumentException("Invalid slot: " + slot);
+                }
+                slots.add(new Slot(Integer.parseInt(parts[0].trim()),
+                        PromotionEngine.Scope.valueOf(parts[1].trim().toUpperCase()), parts[2].trim(),
+                        Integer.parseInt(parts[3].trim())));
+            }
+            return new Bundle(fields[0].trim(), PricingEngine.toCents(Double.parseDouble(fields[1].trim())), slots);
+        }
+
+        /**
+         * Gets the name shown on the receipt.
+         *
+         * @return the bundle name
+         * @author harry
+         */
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder line = new StringBuilder(name).append('|')
+                    .append(String.format("%.2f", PricingEngine.toDollars(priceCents)));
+            for (int i = 0; i < slots.size(); i++) {
+                line.append(i == 0 ? '|' : ',').append(slots.get(i));
+            }
+            return line.toString();
+        }
+    }
+
+    /** The bundles chosen for a cart. */
+    public static final class Solution {
+        private final long discountCents;
+        private final List<String> bundleNames;
+        private final boolean optimal;
+
+        Solution(long discountCents, List<String> bundleNames, boolean optimal) {
+            this.discountCents = discountCents;
+            this.bundleNames = bundleNames;
+            this.optimal = optimal;
+        }
+
+        /**
+         * Gets the total saving of the chosen bundles.
+         *
+         * @return the discount in cents
+         * @author harry
+         */
+        public long getDiscountCents() {
+            return discountCents;
+        }
+
+        /**
+         * Gets the bundles applied, one entry per bundle instance.
+         *
+         * @return the bundle names
+         * @author harry
+         */
+        public List<String> getBundleNames() {
+            return bundleNames;
+        }
+
+        /**
+         * Checks whether the exact search finished within its step budget.
+         *
+         * @return true if the discount is the best possible, false if greedy
+         * @author harry
+         */
+        public boolean isOptimal() {
+            return optimal;
+        }
+    }
+
+    /** Identical drinks in a cart: same menu item, topping portions and price. */
+    private static final class UnitType {
+        final int menuItemId;
+        final String category;
+        final int toppings;
+        final long unitCents;
+
+        UnitType(int menuItemId, String category, int toppings, long unitCents) {
+            this.menuItemId = menuItemId;
+            this.category = category;
+            this.toppings = toppings;
+            this.unitCents = unitCents;
+        }
+    }
+
+    /** Thrown to unwind the search when the step budget runs out; carries no stack trace. */
+    private static final class BudgetExceeded extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BudgetExceeded() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final BudgetExceeded BUDGET_EXCEEDED = new BudgetExceeded();
+
+    private final List<Bundle> bundles;
+    private volatile Map<Integer, String> categories;
+
+    /**
+     * Constructs a solver for a set of bundles.
+     *
+     * @param bundles the bundles on offer
+     * @param menuItems the menu, used to find each drink's category
+     * @author harry
+     */
+    public BundleSolver(List<Bundle> bundles, Collection<MenuItem> menuItems) {
+        this.bundles = new ArrayList<>(bundles);
+        setMenu(menuItems);
+    }
+
+    /**
+     * Replaces the menu used to find each drink's category.
+     *
+     * @param menuItems the full menu
+     * @author harry
+     */
+    public void setMenu(Collection<MenuItem> menuItems) {
+        Map<Integer, String> byId = new HashMap<>();
+        for (MenuItem item : menuItems) {
+            byId.put(item.getMenuItemID(), item.getDrinkCategory());
+        }
+        categories = byId;
+    }
+
+    /**
+     * Gets the bundles on offer.
+     *
+     * @return the bundles, in file order
+     * @author harry
+     */
+    public List<Bundle> getBundles() {
+        return new ArrayList<>(bundles);
+    }
+
+    /**
+     * Chooses bundles for a cart within the default step budget.
+     *
+     * @param items the items of the cart
+     * @param pricing the prices to compare bundle prices against
+     * @return the chosen bundles
+     * @throws IllegalArgumentException if a menu item has no price
+     * @author harry
+     */
+    public Solution solve(List<OrderItem> items, PricingEngine pricing) {
+        return solve(items, pricing, DEFAULT_STEP_BUDGET);
+    }
+
+    /**
+     * Chooses bundles for a cart, exactly if possible within the step budget
+     * and greedily otherwise. The result depends only on the arguments.
+     *
+     * @param items the items of the cart
+     * @param pricing the prices to compare bundle prices against
+     * @param maxSteps the search steps allowed for the exact search
+     * @return the chosen bundles
+     * @throws IllegalArgumentException if a menu item has no price
+     * @author harry
+     */
+    public Solution solve(List<OrderItem> items, PricingEngine pricing, long maxSteps) {
+        if (bundles.isEmpty() || items.isEmpty()) {
+            return new Solution(0, Collections.emptyList(), true);
+        }
+
+        // Collapse interchangeable drinks into unit types, most expensive first
+        Map<Integer, String> categoryById = categories;
+        List<UnitType> types = new ArrayList<>();
+        List<Integer> typeCounts = new ArrayList<>();
+        int units = 0;
+        for (OrderItem item : items) {
+            if (item.getQuantity() <= 0) {
+                continue;
+            }
+            int toppings = 0;
+            for (Topping topping : Topping.values()) {
+                toppings += item.getTopping(topping);
+            }
+            long unitCents = pricing.lineCents(item) / item.getQuantity();
+            UnitType type = new UnitType(item.getMenuItemID(), categoryById.get(item.getMenuItemID()), toppings,
+                    unitCents);
+            int index = 0;
+            while (index < types.size() && !interchangeable(types.get(index), type)) {
+                index++;
+            }
+            if (index == types.size()) {
+                types.add(type);
+                typeCounts.add(0);
+            }
+            typeCounts.set(index, typeCounts.get(index) + item.getQuantity());
+            units += item.getQuantity();
+        }
+        Integer[] order = new Integer[types.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(types.get(b).unitCents, types.get(a).unitCents));
+        UnitType[] sortedTypes = new UnitType[order.length];
+        int[] counts = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedTypes[i] = types.get(order[i]);
+            counts[i] = typeCounts.get(order[i]);
+        }
+
+        Search search = new Search(sortedTypes, maxSteps);
+        if (units <= MAX_EXACT_UNITS) {
+            try {
+                return search.exact(counts.clone());
+            } catch (BudgetExceeded | ArithmeticException e) {
+                // Out of steps, or too many distinct states to number: fall back
+            }
+        }
+        return search.greedy(counts);
+    }
+
+    /** The state of one solve. */
+    private final class Search {
+        final UnitType[] types;
+        final long maxSteps;
+        /** Slot of each unit position of each bundle; positions of a slot are contiguous */
+        final int[][] positionSlot;
+        /** Whether each slot of each bundle accepts each unit type */
+        final boolean[][][] accepts;
+        long[] radix;
+        final Map<Long, Long> memo = new HashMap<>();
+        final Map<Long, int[]> choices = new HashMap<>();
+        long steps;
+
+        Search(UnitType[] types, long maxSteps) {
+            this.types = types;
+            this.maxSteps = maxSteps;
+            this.positionSlot = new int[bundles.size()][];
+            this.accepts = new boolean[bundles.size()][][];
+            for (int b = 0; b < bundles.size(); b++) {
+                List<Slot> slots = bundles.get(b).slots;
+                int positions = 0;
+                for (Slot slot : slots) {
+                    positions += slot.count;
+                }
+                positionSlot[b] = new int[positions];
+                accepts[b] = new boolean[slots.size()][types.length];
+                for (int s = 0, p = 0; s < slots.size(); s++) {
+                    for (int c = 0; c < slots.get(s).count; c++) {
+                        positionSlot[b][p++] = s;
+                    }
+                    for (int t = 0; t < types.length; t++) {
+                        accepts[b][s][t] = slots.get(s).accepts(types[t]);
+                    }
+                }
+            }
+        }
+
+        Solution exact(int[] counts) {
+            // Number each state in mixed radix so it can be memoized by a long
+            radix = new long[counts.length];
+            long key = 0;
+            long place = 1;
+            for (int t = 0; t < counts.length; t++) {
+                radix[t] = place;
+                key += place * counts[t];
+                place = Math.multiplyExact(place, counts[t] + 1L);
+            }
+
+            long discount = best(counts, key);
+
+            // Walk the recorded choices to name the bundles applied
+            List<String> names = new ArrayList<>();
+            int[] remaining = counts.clone();
+            while (true) {
+                int first = firstUnit(remaining);
+                if (first < 0) {
+                    break;
+                }
+                int[] choice = choices.get(key);
+                if (choice == null) {
+                    remaining[first]--;
+                    key -= radix[first];
+                    continue;
+                }
+                names.add(bundles.get(choice[0]).name);
+                for (int t = 0; t < remaining.length; t++) {
+                    remaining[t] -= choice[t + 1];
+                    key -= radix[t] * choice[t + 1];
+                }
+            }
+            return new Solution(discount, names, true);
+        }
+
+        /** Gets the best discount for the remaining units. */
+        long best(int[] counts, long key) {
+            Long cached = memo.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            if (++steps > maxSteps) {
+                throw BUDGET_EXCEEDED;
+            }
+            int first = firstUnit(counts);
+            if (first < 0) {
+                return 0;
+            }
+
+            // Either one unit of the first type goes unbundled...
+            counts[first]--;
+            long value = best(counts, key - radix[first]);
+            counts[first]++;
+
+            // ...or it is part of some bundle
+            int[] bestChoice = null;
+            int[] used = new int[counts.length];
+            for (int b = 0; b < bundles.size(); b++) {
+                long[] found = { value };
+                int[][] choice = { null };
+                fill(b, 0, 0, 0, first, counts, used, key, found, choice);
+                if (choice[0] != null) {
+                    value = found[0];
+                    bestChoice = choice[0];
+                }
+            }
+
+            memo.put(key, value);
+            if (bestChoice != null) {
+                choices.put(key, bestChoice);
+            }
+            return value;
+        }
+
+        /**
+         * Enumerates the ways to fill bundle b's positions from the remaining
+         * units that include the first type, recursing on what is left.
+         */
+        void fill(int b, int position, int minType, long paidCents, int first, int[] counts, int[] used,
+                long key, long[] found, int[][] choice) {
+            if (++steps > maxSteps) {
+                throw BUDGET_EXCEEDED;
+            }
+            int[] slots = positionSlot[b];
+            if (position == slots.length) {
+                long discount = paidCents - bundles.get(b).priceCents;
+                if (used[first] == 0 || discount <= 0) {
+                    return;
+                }
+                long nextKey = key;
+                for (int t = 0; t < counts.length; t++) {
+                    counts[t] -= used[t];
+                    nextKey -= radix[t] * used[t];
+                }
+                long value = discount + best(counts, nextKey);
+                for (int t = 0; t < counts.length; t++) {
+                    counts[t] += used[t];
+                }
+                if (value > found[0]) {
+                    found[0] = value;
+                    int[] recorded = new int[counts.length + 1];
+                    recorded[0] = b;
+                    System.arraycopy(used, 0, recorded, 1, counts.length);
+                    choice[0] = recorded;
+                }
+                return;
+            }
+            // Positions of the same slot take types in non-decreasing order to avoid repeats
+            boolean sameSlot = position > 0 && slots[position - 1] == slots[position];
+            for (int t = sameSlot ? minType : first; t < counts.length; t++) {
+                if (used[t] < counts[t] && accepts[b][slots[position]][t]) {
+                    used[t]++;
+                    fill(b, position + 1, t, paidCents + types[t].unitCents, first, counts, used, key, found, choice);
+                    used[t]--;
+                }
+            }
+        }
+
+        /** Repeatedly applies the single most valuable bundle until none saves money. */
+        Solution greedy(int[] counts) {
+            int[] remaining = counts.clone();
+            long total = 0;
+            List<String> names = new ArrayList<>();
+            while (true) {
+                long bestDiscount = 0;
+                int bestBundle = -1;
+                int[] bestUsed = null;
+                for (int b = 0; b < bundles.size(); b++) {
+                    int[] used = new int[remaining.length];
+                    long paid = greedyFill(b, remaining, used);
+                    if (paid < 0) {
+                        continue;
+                    }
+                    long discount = paid - bundles.get(b).priceCents;
+                    if (discount > bestDiscount) {
+                        bestDiscount = discount;
+                        bestBundle = b;
+                        bestUsed = used;
+                    }
+                }
+                if (bestBundle < 0) {
+                    break;
+                }
+                for (int t = 0; t < remaining.length; t++) {
+                    remaining[t] -= bestUsed[t];
+                }
+                total += bestDiscount;
+                names.add(bundles.get(bestBundle).name);
+            }
+            return new Solution(total, names, false);
+        }
+
+        /**
+         * Fills bundle b with the most expensive units that fit, most
+         * selective slot first.
+         *
+         * @return the full price of the units used, or -1 if it cannot be filled
+         */
+        long greedyFill(int b, int[] remaining, int[] used) {
+            List<Slot> slots = bundles.get(b).slots;
+            Integer[] slotOrder = new Integer[slots.size()];
+            int[] eligible = new int[slots.size()];
+            for (int s = 0; s < slots.size(); s++) {
+                slotOrder[s] = s;
+                for (int t = 0; t < remaining.length; t++) {
+                    eligible[s] += accepts[b][s][t] ? remaining[t] : 0;
+                }
+            }
+            Arrays.sort(slotOrder, (x, y) -> Integer.compare(eligible[x], eligible[y]));
+
+            long paid = 0;
+            for (int s : slotOrder) {
+                int needed = slots.get(s).count;
+                for (int t = 0; t < remaining.length && needed > 0; t++) {
+                    if (accepts[b][s][t]) {
+                        int take = Math.min(needed, remaining[t] - used[t]);
+                        used[t] += take;
+                        needed -= take;
+                        paid += take * types[t].unitCents;
+                    }
+                }
+                if (needed > 0) {
+                    return -1;
+                }
+            }
+            return paid;
+        }
+    }
+
+    /**
+     * Checks whether two drinks cost the same and fit the same slots, so
+     * swapping one for the other never changes a solution.
+     */
+    private boolean interchangeable(UnitType a, UnitType b) {
+        if (a.unitCents != b.unitCents) {
+            return false;
+        }
+        for (Bundle bundle : bundles) {
+            for (Slot slot : bundle.slots) {
+                if (slot.accepts(a) != slot.accepts(b)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int firstUnit(int[] counts) {
+        for (int t = 0; t < counts.length; t++) {
+            if (counts[t] > 0) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads bundles from a text file. Blank lines and lines starting with #
+     * are ignored.
+     *
+     * @param path the bundles file
+     * @return the bundles, in file order
+     * @throws IOException if the file cannot be read or a bundle is invalid
+     * @author harry
+     */
+    public static List<Bundle> loadBundles(Path path) throws IOException {
+        List<Bundle> bundles = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.trim().startsWith("#")) {
+                    continue;
+                }
+                try {
+                    bundles.add(Bundle.parse(line));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Invalid bundle on line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        return bundles;
+    }
+
+    /**
+     * Benchmark entry point. Solves carts of growing size and reports the
+     * best time of five runs and whether the exact search finished in its budget.
+     * Usage: BundleSolver [budget in search steps]
+     *
+     * @param args optional step budget
+     * @author harry
+     */
+    public static void main(String[] args) {
+        long budget = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_STEP_BUDGET;
+        String[] categories = { "Milk Tea", "Fruit Tea", "Brewed Tea", "Slush" };
+        List<MenuItem> menu = new ArrayList<>();
+        for (int id = 1; id <= 24; id++) {
+            menu.add(new MenuItem(id, categories[id % categories.length], "Drink " + id, 4 + (id % 6) * 0.5));
+        }
+        PricingEngine pricing = new PricingEngine(menu);
+        List<Bundle> bundles = List.of(
+                Bundle.parse("Three Milk Teas|12.00|3:CATEGORY:Milk Tea:0"),
+                Bundle.parse("Tea Pair|8.50|1:CATEGORY:Fruit Tea:0,1:CATEGORY:Brewed Tea:0"),
+                Bundle.parse("Loaded Drink|5.50|1:ALL::2"),
+                Bundle.parse("Party Four|17.00|4:ALL::0"));
+        BundleSolver solver = new BundleSolver(bundles, menu);
+
+        SplittableRandom random = new SplittableRandom(7);
+        for (int lines : new int[] { 2, 5, 10, 20, 50, 100, 200 }) {
+            List<OrderItem> cart = new ArrayList<>();
+            for (int i = 0; i < lines; i++) {
+                OrderItem item = new OrderItem(0, 0, 1 + random.nextInt(menu.size()), 1 + random.nextInt(3));
+                if (random.nextInt(3) == 0) {
+                    item.setTopping(Topping.byId(random.nextInt(Topping.count())), 2);
+                }
+                cart.add(item);
+            }
+            Solution solution = null;
+            long micros = Long.MAX_VALUE;
+            for (int run = 0; run < 5; run++) {
+                long start = System.nanoTime();
+                solution = solver.solve(cart, pricing, budget);
+                micros = Math.min(micros, (System.nanoTime() - start) / 1_000);
+            }
+            System.out.printf("%3d lines: %s saved in %,d us with %d bundles (%s)%n", lines,
+                    PricingEngine.format(solution.getDiscountCents()), micros,
+                    solution.getBundleNames().size(), solution.isOptimal() ? "optimal" : "greedy");
+        }
+    }
+}
@@ -3,9 +3,11 @@ package New_Additions;
 import javax.swing.*;
 import java.awt.*;
 import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
+import java.util.UUID;
 
 /**
  * CashierUI provids an interface for cashiers to proces orders.
@@ -37,8 +39,29 @@ public class CashierUI extends JFrame {
     /** Keeps track of current order items dispalyed. */
     private List<OrderItemDisplay> currentOrder = new ArrayList<>();
 
-    /** Stores total cost of curent order. */
-    private double totalCost = 0.0;
+    /** Stores total cost of curent order in cents. */
+    private long totalCents = 0;
+
+    /** Prices order lines, shared with the database manager. */
+    private PricingEngine pricingEngine;
+
+    /** Promotions applied to the current order as lines are added. */
+    private PromotionEngine.Cart promotionCart;
+
+    /** Best bundles for the current order, solved again as lines are added. */
+    private BundleSolver.Solution bundles;
+
+    /** Ingredients the current order needs, checked as lines are added. */
+    private RecipeMatrix.Cart stockCart;
+
+    /** Holds on the current order's ingredients so other terminals cannot sell them. */
+    private InventoryReservations.Reservation reservation;
+
+    /** Key of the current order, kept across resubmits until the order changes. */
+    private UUID orderKey;
+
+    /** Items with this many servings left or fewer show the count. */
+    private static final int LOW_STOCK_SERVINGS = 5;
 
     /** Constrctor initializes and builds UI. */
     public CashierUI() {
@@ -50,10 +73,19 @@ public class CashierUI extends JFrame {
     /** Intializ the database manager and check mode. */
     private void initializeServices() {
         try {
-            dbManager = new DatabaseManager();
-            if (dbManager.isUsingMockData()) {
-                System.out.println("Cashier UI: Using mock data mode");
-            }
+            dbManager = new DatabaseManager(true);
+            pricingEngine = dbManager.getPricingEngine();
+            stockCart = dbManager.getRecipeMatrix().newCart();
+            reservation = dbManager.getInventoryReservations().open();
+            promotionCart = dbManager.getPromotionEngine().newCart(LocalDateTime.now());
+            dbManager.startStockLedger();
+            dbManager.startReportScheduler();
+            dbManager.persistSalesCube();
+            dbManager.whenConnected(() -> {
+                if (dbManager.isUsingMockData()) {
+                    System.out.println("Cashier UI: Using mock data mode");
+                }
+            });
         } catch (Exception e) {
             JOptionPane.showMessageDialog(null,
                     "Failed to initialize database: " + e.getMessage(),
@@ -113,6 +145,8 @@ public class CashierUI extends JFrame {
                         JOptionPane.YES_NO_OPTION);
 
                 if (option == JOptionPane.YES_OPTION) {
+                    dbManager.getInventoryReservations().release(reservation);
+                    dbManager.close();
                     new LandingPage();
                     dispose();
                 } else {
@@ -133,6 +167,8 @@ public class CashierUI extends JFrame {
 
         JButton backButton = new JButton("← Back to Menu");
         backButton.addActionListener(e -> {
+            dbManager.getInventoryReservations().release(reservation);
+            dbManager.close();
             new LandingPage();
             dispose();
         });
@@ -155,6 +191,7 @@ public class CashierUI extends JFrame {
                 .toArray(String[]::new));
         menuList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         menuList.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        menuList.setCellRenderer(new StockAwareRenderer());
         JScrollPane menuScrollPane = new JScrollPane(menuList);
         leftPanel.add(menuScrollPane, BorderLayout.CENTER);
 
@@ -244,17 +281,21 @@ public class CashierUI extends JFrame {
         JPanel statusPanel = new JPanel(new BorderLayout());
         statusPanel.setBorder(BorderFactory.createEmptyBorder(10, 0, 0, 0));
 
-        String statusText = dbManager.isUsingMockData() ? "Status: Running in demo mode (mock data)"
-                : "Status: Connected to database";
-
-        JLabel statusLabel = new JLabel(statusText);
+        JLabel statusLabel = new JLabel("Status: Connecting to database...");
         statusLabel.setFont(new Font("Arial", Font.ITALIC, 12));
-        statusLabel.setForeground(dbManager.isUsingMockData() ? Color.ORANGE : Color.BLACK);
+        dbManager.whenConnected(() -> SwingUtilities.invokeLater(() -> showStatus(statusLabel)));
 
         statusPanel.add(statusLabel, BorderLayout.WEST);
         return statusPanel;
     }
 
+    /** Shows whether the till ended up on the database or on mock data. */
+    private void showStatus(JLabel statusLabel) {
+        boolean mock = dbManager.isUsingMockData();
+        statusLabel.setText(mock ? "Status: Running in demo mode (mock data)" : "Status: Connected to database");
+        statusLabel.setForeground(mock ? Color.ORANGE : Color.BLACK);
+    }
+
     /** Loads all menu items from database. */
     private void loadMenuItems() {
         try {
@@ -287,13 +328,33 @@ public class CashierUI extends JFrame {
         MenuItem item = menuItems.get(selectedIndex);
         int quantity = (int) quantityBox.getSelectedItem();
 
+        if (!stockCart.canAdd(item.getMenuItemID(), quantity)) {
+            JOptionPane.showMessageDialog(this,
+                    "Not enough stock to add " + quantity + "x " + item.getMenuItemName() + " to this order",
+                    "Inventory Error",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (!holdStock(item, quantity)) {
+            JOptionPane.showMessageDialog(this,
+                    "Another order is holding the last of the stock for " + item.getMenuItemName(),
+                    "Inventory Error",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        stockCart.add(item.getMenuItemID(), quantity);
+        orderKey = null;
+
+        currentPromotionCart().add(item.getMenuItemID(), quantity, pricingEngine.unitCents(item.getMenuItemID()));
         OrderItemDisplay orderItem = new OrderItemDisplay(item, quantity);
         currentOrder.add(orderItem);
 
+        long lineCents = pricingEngine.lineCents(item.getMenuItemID(), quantity);
         orderListModel.addElement(quantity + "x " + item.getMenuItemName() +
-                " - $" + String.format("%.2f", item.getPrice() * quantity));
+                " - " + PricingEngine.format(lineCents));
 
-        totalCost += item.getPrice() * quantity;
+        totalCents += lineCents;
+        bundles = dbManager.getBundleSolver().solve(toOrderItems(), pricingEngine);
         updateTotalDisplay();
     }
 
@@ -301,7 +362,14 @@ public class CashierUI extends JFrame {
     private void clearOrder() {
         currentOrder.clear();
         orderListModel.clear();
-        totalCost = 0.0;
+        totalCents = 0;
+        stockCart = dbManager.getRecipeMatrix().newCart();
+        dbManager.getInventoryReservations().release(reservation);
+        reservation = dbManager.getInventoryReservations().open();
+        menuList.repaint();
+        promotionCart = dbManager.getPromotionEngine().newCart(LocalDateTime.now());
+        bundles = null;
+        orderKey = null;
         updateTotalDisplay();
         customerNameField.setText("");
     }
@@ -317,30 +385,27 @@ public class CashierUI extends JFrame {
         }
 
         try {
-            /** Converts displayed items to database order items. */
-            List<OrderItem> orderItems = new ArrayList<>();
-            for (OrderItemDisplay displayItem : currentOrder) {
-                OrderItem orderItem = new OrderItem();
-                orderItem.setMenuItemID(displayItem.getMenuItem().getMenuItemID());
-                orderItem.setQuantity(displayItem.getQuantity());
-                orderItems.add(orderItem);
-            }
+            List<OrderItem> orderItems = toOrderItems();
 
             /** Creates and populate new order object. */
             Order order = new Order();
             order.setTimeOfOrder(new Timestamp(System.currentTimeMillis()));
             order.setCustomerID(null);
             order.setEmployeeID(1);
-            order.setTotalCost(totalCost);
+            order.setTotalCost(PricingEngine.toDollars(totalCents - getDiscountCents()));
             order.setOrderWeek(getCurrentWeek());
+            if (orderKey == null) {
+                orderKey = UUID.randomUUID();
+            }
+            order.setOrderKey(orderKey);
 
-            /** Sends order to database. */
-            boolean success = dbManager.createOrder(order, orderItems);
+            /** Sends order to database, which sets the final total. */
+            boolean success = dbManager.createOrder(order, orderItems, reservation);
 
             if (success) {
                 JOptionPane.showMessageDialog(this,
-                        "Order #" + order.getOrderID() + " submitted successfully!\nTotal: $" +
-                                String.format("%.2f", totalCost),
+                        "Order #" + order.getOrderID() + " submitted successfully!\nTotal: " +
+                                PricingEngine.format(PricingEngine.toCents(order.getTotalCost())),
                         "Success",
                         JOptionPane.INFORMATION_MESSAGE);
                 clearOrder();
@@ -370,7 +435,70 @@ public class CashierUI extends JFrame {
 
     /** Updates total label display on screen. */
     private void updateTotalDisplay() {
-        totalLabel.setText("Total: $" + String.format("%.2f", totalCost));
+        long discount = getDiscountCents();
+        totalLabel.setText("Total: " + PricingEngine.format(totalCents - discount)
+                + (discount > 0 ? " (saved " + PricingEngine.format(discount) + ")" : ""));
+    }
+
+    /**
+     * Holds stock for a new line, renewing the order's holds if they expired.
+     * The expiry timer can close the reservation between the check and the
+     * hold, so a hold refused for that reason is retried on a new one.
+     */
+    private boolean holdStock(MenuItem item, int quantity) {
+        InventoryReservations reservations = dbManager.getInventoryReservations();
+        OrderItem line = new OrderItem();
+        line.setMenuItemID(item.getMenuItemID());
+        line.setQuantity(quantity);
+        for (int attempt = 0; attempt < 3; attempt++) {
+            try {
+                if (reservation.isClosed()) {
+                    reservation = reservations.open();
+                    if (!currentOrder.isEmpty() && !reservations.reserve(reservation, toOrderItems())) {
+                        return false;
+                    }
+                }
+                return reservations.reserve(reservation, List.of(line));
+            } catch (IllegalStateException e) {
+                System.err.println("Reservation expired while holding stock, renewing: " + e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    /** Converts displayed items to database order items. */
+    private List<OrderItem> toOrderItems() {
+        List<OrderItem> orderItems = new ArrayList<>();
+        for (OrderItemDisplay displayItem : currentOrder) {
+            OrderItem orderItem = new OrderItem();
+            orderItem.setMenuItemID(displayItem.getMenuItem().getMenuItemID());
+            orderItem.setQuantity(displayItem.getQuantity());
+            orderItems.add(orderItem);
+        }
+        return orderItems;
+    }
+
+    /** Gets the larger of the promotion and bundle discounts, which do not stack. */
+    private long getDiscountCents() {
+        long bundleDiscount = bundles == null ? 0 : bundles.getDiscountCents();
+        return Math.max(currentPromotionCart().getDiscountCents(), bundleDiscount);
+    }
+
+    /**
+     * Gets the promotion cart for the current hour, rebuilding it from the
+     * order's lines when the hour has changed, so the discount shown is the
+     * one the order is priced with when it is submitted.
+     */
+    private PromotionEngine.Cart currentPromotionCart() {
+        LocalDateTime now = LocalDateTime.now();
+        if (promotionCart.getHour() != now.getHour()) {
+            promotionCart = dbManager.getPromotionEngine().newCart(now);
+            for (OrderItemDisplay line : currentOrder) {
+                int menuItemId = line.getMenuItem().getMenuItemID();
+                promotionCart.add(menuItemId, line.getQuantity(), pricingEngine.unitCents(menuItemId));
+            }
+        }
+        return promotionCart;
     }
 
     /** Returns current week num from calendar. */
@@ -379,6 +507,25 @@ public class CashierUI extends JFrame {
         return cal.get(Calendar.WEEK_OF_YEAR);
     }
 
+    /** Greys out sold out menu items and shows how many are left when low. */
+    private class StockAwareRenderer extends DefaultListCellRenderer {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                boolean isSelected, boolean cellHasFocus) {
+            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            int servings = dbManager.getMakeableIndex().getMakeable(menuItems.get(index).getMenuItemID());
+            if (servings == 0) {
+                setText(value + " (sold out)");
+                setForeground(Color.GRAY);
+            } else if (servings <= LOW_STOCK_SERVINGS) {
+                setText(value + " (" + servings + " left)");
+            }
+            return this;
+        }
+    }
+
     /** Helper class to show order items in UI. */
     private static class OrderItemDisplay {
         private final MenuItem menuItem;
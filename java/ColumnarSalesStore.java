@@ -0,0 +1,410 @@
+package New_Additions;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ColumnarSalesStore keeps every order item in memory as primitive columns
+ * (order ID, time, employee, menu item, quantity, revenue, order total, plus
+ * precomputed hour, weekday and category codes) so manager dashboards can
+ * group and filter sales without querying PostgreSQL.
+ *
+ * Rows are appended in commit order by one writer at a time and published
+ * through a volatile row count, so readers never block and always see a
+ * consistent prefix. The order total is stored on the first line of each
+ * order only, so summing that column counts every order once.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class ColumnarSalesStore {
+
+    /** Dimensions sales can be grouped or filtered by. */
+    public enum Dimension {
+        CATEGORY, HOUR, WEEKDAY, EMPLOYEE, MENU_ITEM
+    }
+
+    /** Units sold and revenue for one group. */
+    public static class Aggregate {
+        private final long units;
+        private final double revenue;
+        private final long lines;
+
+        Aggregate(long units, double revenue, long lines) {
+            this.units = units;
+            this.revenue = revenue;
+            this.lines = lines;
+        }
+
+        /** @return the number of drinks sold */
+        public long getUnits() {
+            return units;
+        }
+
+        /** @return the line revenue in dollars */
+        public double getRevenue() {
+            return revenue;
+        }
+
+        /** @return the number of order lines */
+        public long getLines() {
+            return lines;
+        }
+
+        @Override
+        public String toString() {
+            return units + " units, $" + String.format("%.2f", revenue);
+        }
+    }
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** The column arrays; replaced as a whole when they grow. */
+    static final class Columns {
+        final int[] orderIds;
+        final long[] times;
+        final int[] employeeIds;
+        final int[] menuItemIds;
+        final int[] quantities;
+        final double[] revenues;
+        final double[] orderTotals;
+        /** Whether each line is the first of its order, so orders are counted even when free */
+        final boolean[] firstLines;
+        final byte[] hours;
+        final byte[] weekdays;
+        final short[] categories;
+        volatile int size;
+
+        Columns(int capacity) {
+            orderIds = new int[capacity];
+            times = new long[capacity];
+            employeeIds = new int[capacity];
+            menuItemIds = new int[capacity];
+            quantities = new int[capacity];
+            revenues = new double[capacity];
+            orderTotals = new double[capacity];
+            firstLines = new boolean[capacity];
+            hours = new byte[capacity];
+            weekdays = new byte[capacity];
+            categories = new short[capacity];
+        }
+
+        Columns(Columns old, int capacity) {
+            orderIds = Arrays.copyOf(old.orderIds, capacity);
+            times = Arrays.copyOf(old.times, capacity);
+            employeeIds = Arrays.copyOf(old.employeeIds, capacity);
+            menuItemIds = Arrays.copyOf(old.menuItemIds, capacity);
+            quantities = Arrays.copyOf(old.quantities, capacity);
+            revenues = Arrays.copyOf(old.revenues, capacity);
+            orderTotals = Arrays.copyOf(old.orderTotals, capacity);
+            firstLines = Arrays.copyOf(old.firstLines, capacity);
+            hours = Arrays.copyOf(old.hours, capacity);
+            weekdays = Arrays.copyOf(old.weekdays, capacity);
+            categories = Arrays.copyOf(old.categories, capacity);
+            size = old.size;
+        }
+    }
+
+    private volatile Columns columns = new Columns(INITIAL_CAPACITY);
+    private volatile boolean timeOrdered = true;
+
+    // Dictionaries
+    private final Map<String, Short> categoryCodes = new HashMap<>();
+    private final List<String> categoryNames = new ArrayList<>();
+    private final Map<Integer, MenuItem> menuItems = new HashMap<>();
+
+    // Hour and weekday of the most recent hour seen, so appends rarely touch java.time
+    private final ZoneId zone = ZoneId.systemDefault();
+    private long hourStart = Long.MAX_VALUE;
+    private long hourEnd = Long.MIN_VALUE;
+    private byte cachedHour;
+    private byte cachedWeekday;
+
+    /**
+     * Registers or updates a menu item, used to resolve the category of
+     * appended orders and to label menu item groups.
+     *
+     * @param item the menu item
+     * @author harry
+     */
+    public synchronized void registerMenuItem(MenuItem item) {
+        menuItems.put(item.getMenuItemID(), new MenuItem(item.getMenuItemID(), item.getDrinkCategory(),
+                item.getMenuItemName(), item.getPrice()));
+        categoryCode(item.getDrinkCategory());
+    }
+
+    /**
+     * Appends one order line.
+     *
+     * @param orderId the order ID
+     * @param time the time of order in epoch milliseconds
+     * @param employeeId the employee who took the order
+     * @param menuItemId the menu item sold
+     * @param category the drink category of the menu item
+     * @param quantity the number sold
+     * @param revenue the revenue of the line in dollars
+     * @param firstLine whether this is the order's first line
+     * @param orderTotal the order total if this is the order's first line, otherwise 0
+     * @author harry
+     */
+    public synchronized void appendLine(int orderId, long time, int employeeId, int menuItemId, String category,
+            int quantity, double revenue, boolean firstLine, double orderTotal) {
+        Columns c = columns;
+        int row = c.size;
+        if (row == c.orderIds.length) {
+            c = new Columns(c, row * 2);
+            columns = c;
+        }
+        if (row > 0 && time < c.times[row - 1]) {
+            timeOrdered = false;
+        }
+        resolveHour(time);
+
+        c.orderIds[row] = orderId;
+        c.times[row] = time;
+        c.employeeIds[row] = employeeId;
+        c.menuItemIds[row] = menuItemId;
+        c.quantities[row] = quantity;
+        c.revenues[row] = revenue;
+        c.orderTotals[row] = orderTotal;
+        c.firstLines[row] = firstLine;
+        c.hours[row] = cachedHour;
+        c.weekdays[row] = cachedWeekday;
+        c.categories[row] = categoryCode(category);
+        c.size = row + 1; // publish the row
+    }
+
+    /**
+     * Appends a committed order, resolving categories from the registered
+     * menu items.
+     *
+     * @param order the committed order
+     * @param items the order's items
+     * @param chargedCents what each item was charged, from
+     *                     {@link PricingEngine#chargedLineCents(List, long)}
+     * @author harry
+     */
+    public synchronized void appendOrder(Order order, List<OrderItem> items, long[] chargedCents) {
+        double orderTotal = order.getTotalCost();
+        for (int i = 0; i < items.size(); i++) {
+            OrderItem item = items.get(i);
+            MenuItem menuItem = menuItems.get(item.getMenuItemID());
+            String category = menuItem == null ? null : menuItem.getDrinkCategory();
+            appendLine(order.getOrderID(), order.getTimeOfOrder().getTime(), order.getEmployeeID(),
+                    item.getMenuItemID(), category, item.getQuantity(), PricingEngine.toDollars(chargedCents[i]),
+                    i == 0, orderTotal);
+            orderTotal = 0.0;
+        }
+    }
+
+    /**
+     * Gets the number of order lines stored.
+     *
+     * @return the row count
+     * @author harry
+     */
+    public int size() {
+        return columns.size;
+    }
+
+    /**
+     * Groups the lines in a time range by one dimension, optionally keeping
+     * only lines whose value in another dimension matches.
+     *
+     * @param groupBy the dimension to group by
+     * @param fromMillis the inclusive start of the range
+     * @param toMillis the exclusive end of the range
+     * @param filterBy the dimension to filter on, or null for no filter
+     * @param filterValue the code to keep: category code, hour, weekday (1 = Monday),
+     *        employee ID or menu item ID
+     * @return Map of group label to aggregate, in code order
+     * @author harry
+     */
+    public Map<String, Aggregate> groupBy(Dimension groupBy, long fromMillis, long toMillis,
+            Dimension filterBy, int filterValue) {
+        Columns c = columns;
+        int size = c.size;
+        int from = timeOrdered ? lowerBound(c.times, size, fromMillis) : 0;
+        int to = timeOrdered ? lowerBound(c.times, size, toMillis) : size;
+
+        int keys = keySpace(groupBy, c, size);
+        long[] units = new long[keys];
+        double[] revenue = new double[keys];
+        long[] lines = new long[keys];
+
+        for (int row = from; row < to; row++) {
+            long time = c.times[row];
+            if (time < fromMillis || time >= toMillis) {
+                continue;
+            }
+            if (filterBy != null && valueOf(filterBy, c, row) != filterValue) {
+                continue;
+            }
+            int key = valueOf(groupBy, c, row);
+            units[key] += c.quantities[row];
+            revenue[key] += c.revenues[row];
+            lines[key]++;
+        }
+
+        Map<String, Aggregate> result = new LinkedHashMap<>();
+        for (int key = 0; key < keys; key++) {
+            if (lines[key] > 0) {
+                result.put(label(groupBy, key), new Aggregate(units[key], revenue[key], lines[key]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sums order totals in a time range; each order is counted once.
+     *
+     * @param fromMillis the inclusive start of the range
+     * @param toMillis the exclusive end of the range
+     * @return the total sales in dollars
+     * @author harry
+     */
+    public double totalSales(long fromMillis, long toMillis) {
+        Columns c = columns;
+        int size = c.size;
+        int from = timeOrdered ? lowerBound(c.times, size, fromMillis) : 0;
+        int to = timeOrdered ? lowerBound(c.times, size, toMillis) : size;
+        double total = 0.0;
+        for (int row = from; row < to; row++) {
+            long time = c.times[row];
+            if (time >= fromMillis && time < toMillis) {
+                total += c.orderTotals[row];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Looks up the code of a drink category for use as a filter value.
+     *
+     * @param category the drink category
+     * @return the category code, or -1 if the category has never been seen
+     * @author harry
+     */
+    public synchronized int getCategoryCode(String category) {
+        Short code = categoryCodes.get(category);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Gives package access to the current columns, for parallel scans.
+     */
+    Columns columns() {
+        return columns;
+    }
+
+    /**
+     * Checks whether rows are stored in time order, so ranges can be found by
+     * binary search.
+     */
+    boolean isTimeOrdered() {
+        return timeOrdered;
+    }
+
+    private short categoryCode(String category) {
+        String key = category == null ? "" : category;
+        Short code = categoryCodes.get(key);
+        if (code == null) {
+            code = (short) categoryNames.size();
+            categoryCodes.put(key, code);
+            categoryNames.add(key);
+        }
+        return code;
+    }
+
+    private void resolveHour(long time) {
+        if (time >= hourStart && time < hourEnd) {
+            return;
+        }
+        LocalDateTime hour = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), zone).truncatedTo(ChronoUnit.HOURS);
+        hourStart = hour.atZone(zone).toInstant().toEpochMilli();
+        hourEnd = hourStart + 3_600_000L;
+        cachedHour = (byte) hour.getHour();
+        cachedWeekday = (byte) hour.getDayOfWeek().getValue();
+    }
+
+    /**
+     * Reads the code of one row in a dimension.
+     */
+    static int valueOf(Dimension dimension, Columns c, int row) {
+        switch (dimension) {
+            case CATEGORY:
+                return c.categories[row];
+            case HOUR:
+                return c.hours[row];
+            case WEEKDAY:
+                return c.weekdays[row];
+            case EMPLOYEE:
+                return c.employeeIds[row];
+            default:
+                return c.menuItemIds[row];
+        }
+    }
+
+    private int keySpace(Dimension dimension, Columns c, int size) {
+        switch (dimension) {
+            case CATEGORY:
+                synchronized (this) {
+                    return categoryNames.size();
+                }
+            case HOUR:
+                return 24;
+            case WEEKDAY:
+                return 8;
+            default:
+                int max = 0;
+                int[] column = dimension == Dimension.EMPLOYEE ? c.employeeIds : c.menuItemIds;
+                for (int row = 0; row < size; row++) {
+                    max = Math.max(max, column[row]);
+                }
+                return max + 1;
+        }
+    }
+
+    private synchronized String label(Dimension dimension, int key) {
+        switch (dimension) {
+            case CATEGORY:
+                return categoryNames.get(key);
+            case HOUR:
+                return String.format("%02d:00", key);
+            case WEEKDAY:
+                return DayOfWeek.of(key).toString();
+            case EMPLOYEE:
+                return "Employee #" + key;
+            default:
+                MenuItem item = menuItems.get(key);
+                return item == null ? "Item #" + key : item.getMenuItemName();
+        }
+    }
+
+    /**
+     * Finds the first row at or after a time in a time-ordered column.
+     */
+    static int lowerBound(long[] times, int size, long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
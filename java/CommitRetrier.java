@@ -0,0 +1,191 @@
+package New_Additions;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CommitRetrier runs a database transaction again when it fails for a
+ * reason that goes away on its own when terminals contend for the same
+ * rows: a serialization failure (40001), a deadlock (40P01), a lock wait cut
+ * short by lock_timeout (55P03), or two terminals drawing the same next
+ * order ID or storing the same order key at once (23505 on orders_pkey,
+ * orderitems_pkey or orders_orderkey_key). Any other error, including a
+ * unique violation on another constraint, is thrown straight away.
+ *
+ * Attempts are separated by exponential backoff with full jitter, so
+ * terminals that collided do not collide again in step, and stop at a
+ * deadline after which the last error is thrown. Each attempt is told how
+ * much of the deadline is left, to use as its lock timeout, so a single
+ * attempt cannot wait on a lock past the deadline either.
+ *
+ * Retries and aborts (transactions given up at the deadline) are counted so
+ * contention is visible.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class CommitRetrier {
+
+    /** Default time allowed for a transaction including its retries */
+    public static final long DEFAULT_DEADLINE_MILLIS = 5_000;
+
+    private static final long BASE_BACKOFF_MILLIS = 5;
+    private static final long MAX_BACKOFF_MILLIS = 250;
+
+    /** SQLStates of failures that a fresh attempt can get past */
+    private static final Set<String> RETRYABLE_STATES = Set.of("40001", "40P01", "55P03");
+
+    /** SQLState of a unique violation, retryable only on the constraints below */
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    /** Unique constraints two terminals can collide on by drawing the same ID or storing the same key */
+    private static final Set<String> TRANSIENT_UNIQUE_CONSTRAINTS =
+            Set.of("orders_pkey", "orderitems_pkey", "orders_orderkey_key");
+
+    /** One attempt at a transaction, which must roll back on failure. */
+    @FunctionalInterface
+    public interface Transaction<T> {
+        /**
+         * Runs the transaction once.
+         *
+         * @param lockTimeoutMillis the time left before the deadline
+         * @return the result of the transaction
+         * @throws SQLException if the transaction failed and was rolled back
+         * @throws IOException if a file the transaction writes failed
+         */
+        T run(long lockTimeoutMillis) throws SQLException, IOException;
+    }
+
+    private final long deadlineMillis;
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder aborts = new LongAdder();
+
+    /**
+     * Constructs a retrier.
+     *
+     * @param deadlineMillis the time allowed for a transaction including its retries
+     * @author harry
+     */
+    public CommitRetrier(long deadlineMillis) {
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * Runs a transaction, repeating it after retryable failures until it
+     * succeeds or the deadline passes.
+     *
+     * @param transaction the transaction
+     * @return the result of the successful attempt
+     * @throws SQLException the error of the last attempt, if none succeeded
+     * @throws IOException if an attempt failed writing a file
+     * @author harry
+     */
+    public <T> T run(Transaction<T> transaction) throws SQLException, IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        for (int attempt = 0;; attempt++) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            try {
+                return transaction.run(Math.max(1, remainingMillis));
+            } catch (SQLException e) {
+                if (!isRetryable(e)) {
+                    throw e;
+                }
+                long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, 16));
+                long backoffMillis = ThreadLocalRandom.current().nextLong(ceiling + 1);
+                if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMillis) >= deadline) {
+                    aborts.increment();
+                    System.err.println("Giving up on transaction after " + attempt + " retries ("
+                            + retries.sum() + " retries and " + aborts.sum() + " aborts so far): " + e.getMessage());
+                    throw e;
+                }
+                retries.increment();
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    aborts.increment();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether a failure can be retried, looking through the chained
+     * exceptions a batch statement reports its causes with. A unique
+     * violation is only retryable when its message names one of the
+     * constraints terminals collide on.
+     *
+     * @param e the failure
+     * @return true if its SQLState, or that of a chained exception, is retryable
+     * @author harry
+     */
+    public static boolean isRetryable(SQLException e) {
+        for (SQLException next = e; next != null; next = next.getNextException()) {
+            for (Throwable cause = next; cause != null; cause = cause.getCause()) {
+                if (cause instanceof SQLException && isRetryableCause((SQLException) cause)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRetryableCause(SQLException e) {
+        String state = String.valueOf(e.getSQLState());
+        if (RETRYABLE_STATES.contains(state)) {
+            return true;
+        }
+        if (!UNIQUE_VIOLATION.equals(state) || e.getMessage() == null) {
+            return false;
+        }
+        for (String constraint : TRANSIENT_UNIQUE_CONSTRAINTS) {
+            if (e.getMessage().contains('"' + constraint + '"')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Limits how long the current transaction waits for a row lock, so a
+     * wait past the deadline fails with 55P03 instead of hanging.
+     *
+     * @param connection a connection inside a transaction
+     * @param millis the longest to wait
+     * @throws SQLException if the setting cannot be applied
+     * @author harry
+     */
+    public static void setLockTimeout(Connection connection, long millis) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("SET LOCAL lock_timeout = " + Math.max(1, millis));
+        }
+    }
+
+    /**
+     * Gets the number of attempts repeated after a retryable failure.
+     *
+     * @return the retry count
+     * @author harry
+     */
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /**
+     * Gets the number of transactions given up after retryable failures.
+     *
+     * @return the abort count
+     * @author harry
+     */
+    public long getAbortCount() {
+        return aborts.sum();
+    }
+}
@@ -0,0 +1,217 @@
+package New_Additions;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * CountMinSketch estimates how often each key was counted, in a fixed amount
+ * of memory, and keeps the top K keys by estimated count. Estimates never
+ * undercount; they overcount by at most a small fraction of the total.
+ * Sketches with the same dimensions can be merged.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class CountMinSketch {
+
+    private final int depth;
+    private final int width;
+    private final int topK;
+    private final long[][] counters;
+    private final Map<Long, Long> heavyHitters = new HashMap<>();
+    private long total;
+
+    /**
+     * Constructs an empty sketch.
+     *
+     * @param depth the number of hash rows; more rows lower the chance of a bad estimate
+     * @param width the counters per row; wider rows lower the overcount
+     * @param topK the number of heaviest keys to keep track of
+     * @author harry
+     */
+    public CountMinSketch(int depth, int width, int topK) {
+        this.depth = depth;
+        this.width = width;
+        this.topK = topK;
+        this.counters = new long[depth][width];
+    }
+
+    /**
+     * Counts a key.
+     *
+     * @param key the key, such as a menu item ID
+     * @param count how many times to count it
+     * @author harry
+     */
+    public void add(long key, long count) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            long[] counter = counters[row];
+            int column = column(key, row);
+            counter[column] += count;
+            estimate = Math.min(estimate, counter[column]);
+        }
+        total += count;
+        offer(key, estimate);
+    }
+
+    /**
+     * Estimates how often a key was counted.
+     *
+     * @param key the key
+     * @return the estimated count, never below the true count
+     * @author harry
+     */
+    public long estimate(long key) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[row][column(key, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Gets the total of all counts.
+     *
+     * @return the total count
+     * @author harry
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Gets the heaviest keys, heaviest first.
+     *
+     * @param k the maximum number of keys to return, at most the tracked top K
+     * @return List of key and estimated count pairs
+     * @author harry
+     */
+    public List<Map.Entry<Long, Long>> top(int k) {
+        List<Map.Entry<Long, Long>> entries = new ArrayList<>(heavyHitters.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        return entries.subList(0, Math.min(k, entries.size()));
+    }
+
+    /**
+     * Merges another sketch into this one. The heavy hitters of both are
+     * re-estimated against the merged counters.
+     *
+     * @param other a sketch with the same depth and width
+     * @author harry
+     */
+    public void merge(CountMinSketch other) {
+        if (other.depth != depth || other.width != width) {
+            throw new IllegalArgumentException("Cannot merge a " + other.depth + "x" + other.width
+                    + " sketch into a " + depth + "x" + width + " sketch");
+        }
+        for (int row = 0; row < depth; row++) {
+            for (int column = 0; column < width; column++) {
+                counters[row][column] += other.counters[row][column];
+            }
+        }
+        total += other.total;
+
+        Set<Long> candidates = new HashSet<>(heavyHitters.keySet());
+        candidates.addAll(other.heavyHitters.keySet());
+        heavyHitters.clear();
+        for (long key : candidates) {
+            offer(key, estimate(key));
+        }
+    }
+
+    /**
+     * Creates an independent copy of the sketch.
+     *
+     * @return the copy
+     * @author harry
+     */
+    public CountMinSketch copy() {
+        CountMinSketch copy = new CountMinSketch(depth, width, topK);
+        copy.merge(this);
+        return copy;
+    }
+
+    /**
+     * Writes the sketch to a stream.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the stream cannot be written
+     * @author harry
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(depth);
+        out.writeInt(width);
+        out.writeInt(topK);
+        out.writeLong(total);
+        for (long[] row : counters) {
+            for (long counter : row) {
+                out.writeLong(counter);
+            }
+        }
+        out.writeInt(heavyHitters.size());
+        for (long key : heavyHitters.keySet()) {
+            out.writeLong(key);
+        }
+    }
+
+    /**
+     * Reads a sketch written by {@link #writeTo}.
+     *
+     * @param in the stream to read from
+     * @return the sketch
+     * @throws IOException if the stream cannot be read
+     * @author harry
+     */
+    public static CountMinSketch readFrom(DataInputStream in) throws IOException {
+        CountMinSketch sketch = new CountMinSketch(in.readInt(), in.readInt(), in.readInt());
+        sketch.total = in.readLong();
+        for (long[] row : sketch.counters) {
+            for (int column = 0; column < row.length; column++) {
+                row[column] = in.readLong();
+            }
+        }
+        int hitters = in.readInt();
+        for (int i = 0; i < hitters; i++) {
+            long key = in.readLong();
+            sketch.heavyHitters.put(key, sketch.estimate(key));
+        }
+        return sketch;
+    }
+
+    /**
+     * Keeps a key among the heavy hitters if it is one of the top K by
+     * estimate. K is small, so the lightest entry is found by a scan.
+     */
+    private void offer(long key, long estimate) {
+        if (heavyHitters.containsKey(key) || heavyHitters.size() < topK) {
+            heavyHitters.put(key, estimate);
+            return;
+        }
+        long lightestKey = 0;
+        long lightest = Long.MAX_VALUE;
+        for (Map.Entry<Long, Long> entry : heavyHitters.entrySet()) {
+            if (entry.getValue() < lightest) {
+                lightest = entry.getValue();
+                lightestKey = entry.getKey();
+            }
+        }
+        if (estimate > lightest) {
+            heavyHitters.remove(lightestKey);
+            heavyHitters.put(key, estimate);
+        }
+    }
+
+    private int column(long key, int row) {
+        long hash = HyperLogLog.mix(key ^ (0x9E3779B97F4A7C15L * (row + 1)));
+        return (int) Long.remainderUnsigned(hash, width);
+    }
+}
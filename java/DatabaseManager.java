@@ -2,10 +2,14 @@ package New_Additions;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -18,14 +22,77 @@ import java.util.stream.Stream;
  */
 public class DatabaseManager {
 
+    /** Rows per multi-row INSERT; keeps the bind parameter count well under PostgreSQL's limit */
+    private static final int INSERT_CHUNK_ROWS = 1000;
+
+    /** Columns written for each order item, in bind order */
+    private static final String ORDER_ITEM_COLUMNS =
+            "orderitemid, orderid, menuitemid, quantity, sugarlevel, icelevel, milktype, toppings";
+
+    /** Script that brings an existing database up to the schema this class expects */
+    private static final String SCHEMA_MIGRATION = "migrations/001_order_customizations_and_keys.sql";
+
+    /** Seconds to wait for the database to accept a login before falling back to mock data */
+    private static final int LOGIN_TIMEOUT_SECONDS = 10;
+
+    /** Script that creates the table the stock ledger records its flushes in */
+    private static final String STOCK_LEDGER_MIGRATION = "migrations/002_stock_ledger.sql";
+
+    /** Minutes between saves of the sales cube */
+    private static final long CUBE_SAVE_MINUTES = 5;
+
     /** Flag indicating if database connection is established */
-    private boolean isConnected;
+    private volatile boolean isConnected;
     /** Flag indicating if system is using mock data instead of real database */
-    private boolean useMockData;
+    private volatile boolean useMockData;
+    /** Completes once the connection attempt has finished, whether it succeeded or not */
+    private final CompletableFuture<Void> connected = new CompletableFuture<>();
+    /** True while connecting in the background; the menu, inventory and recipes are then served from the snapshot */
+    private volatile boolean connecting;
     /** Active database connection */
     private Connection connection;
+    /** URL of the connected database, or null in mock data mode */
+    private String databaseUrl;
     /** Provider for mock data when database is unavailable */
     private MockDataProvider mockProvider;
+    /** Last known menu, inventory and recipes, loaded from disk at startup */
+    private volatile MenuSnapshot snapshot;
+    /** In-memory sales columns for analytics, loaded on first use */
+    private volatile ColumnarSalesStore salesColumns;
+    /** Pre-aggregated sales cube, loaded together with the sales columns */
+    private volatile SalesCube salesCube;
+    /** Guards loading of the sales views against orders committed meanwhile */
+    private final Object salesViewsLock = new Object();
+    /** Orders committed while the sales views were loading, or null when not loading */
+    private List<OrderSubmission> pendingSales;
+    /** Per-day sketches of customers, menu items and toppings, updated on every commit */
+    private SalesSketches salesSketches = new SalesSketches();
+    /** Sketches of the orders committed by this process, added to the sketch file on close */
+    private final SalesSketches unsavedSketches = new SalesSketches();
+    /** Whether this process saves the sales cube; only the configured writer does */
+    private volatile boolean savesSalesCube;
+    /** Whether the database has the stockledger table, as found by checkSchema */
+    private volatile boolean hasStockLedgerTable;
+    /** Precomputes reports during quiet hours and serves them from the report cache */
+    private ReportScheduler reportScheduler;
+    /** Current menu and topping prices, built on first use */
+    private volatile PricingEngine pricingEngine;
+    /** Compiled promotion rules, loaded on first use */
+    private volatile PromotionEngine promotionEngine;
+    /** Chooses the best bundles for an order, loaded on first use */
+    private volatile BundleSolver bundleSolver;
+    /** Servings each menu item can make from current stock, built on first use */
+    private volatile MakeableIndex makeableIndex;
+    /** Dense recipes and stock for whole-cart feasibility checks, built on first use */
+    private volatile RecipeMatrix recipeMatrix;
+    /** Ingredient holds of carts in progress, shared by every terminal in this process */
+    private static InventoryReservations sharedReservations;
+    /** In-memory stock flushed to the inventory table in batches, shared by every terminal in this process */
+    private static StockLedger sharedLedger;
+    /** Retries order transactions that hit a deadlock or serialization failure; counts are per process */
+    private static final CommitRetrier sharedRetrier = new CommitRetrier(CommitRetrier.DEFAULT_DEADLINE_MILLIS);
+    /** Keys of recently submitted orders, so resubmissions are answered without a round trip */
+    private static final RecentOrderKeys sharedOrderKeys = new RecentOrderKeys(RecentOrderKeys.DEFAULT_CAPACITY);
 
     /**
      * Constructs a new DatabaseManager instance.
@@ -35,7 +102,45 @@ public class DatabaseManager {
      * @author harry
      */
     public DatabaseManager() {
+        this(false);
+    }
+
+    /**
+     * Constructs a new DatabaseManager instance, optionally connecting on a
+     * background thread. The till connects in the background: if a menu
+     * snapshot was saved, the constructor returns at once and the menu,
+     * inventory and recipes are served from the snapshot until the
+     * connection is settled, while everything else waits for it. Without a
+     * snapshot it connects before returning, like the tools do.
+     * 
+     * @param connectInBackground true to connect on a background thread
+     * @author harry
+     */
+    public DatabaseManager(boolean connectInBackground) {
         this.mockProvider = new MockDataProvider();
+        loadSnapshot();
+        loadSalesSketches();
+        DriverManager.setLoginTimeout(LOGIN_TIMEOUT_SECONDS);
+        if (connectInBackground && snapshot != null) {
+            connecting = true;
+            Thread worker = new Thread(() -> connect(true), "database-connect");
+            worker.setDaemon(true);
+            worker.start();
+        } else {
+            connect(false);
+        }
+    }
+
+    /**
+     * Connects to the database, or falls back to mock data mode, and then
+     * completes {@link #connected}.
+     * 
+     * @param inBackground true if reads were served from the snapshot
+     *                     meanwhile and what was built from them must be
+     *                     brought up to date first
+     * @author harry
+     */
+    private void connect(boolean inBackground) {
         try {
             initializeConnection();
         } catch (SQLException e) {
@@ -44,6 +149,351 @@ public class DatabaseManager {
             this.useMockData = true;
             this.isConnected = false;
         }
+        MenuSnapshot served = snapshot;
+        MenuSnapshot fresh = null;
+        if (!useMockData) {
+            checkSchema();
+            if (inBackground) {
+                fresh = reconcileSnapshot();
+            } else {
+                reconcileSnapshotInBackground();
+            }
+        } else {
+            restoreStoreSnapshot();
+            if (inBackground) {
+                fresh = new MenuSnapshot(mockProvider.getAllMenuItems(), mockProvider.getAllInventory(),
+                        mockProvider.getAllRecipes());
+            }
+        }
+        if (inBackground) {
+            finishConnecting(fresh != null && !fresh.sameContentAs(served) ? fresh : null);
+        }
+        connected.complete(null);
+    }
+
+    /**
+     * Ends serving reads from the snapshot. What was built from the snapshot
+     * while connecting is brought up to date first, the same way a menu or
+     * stock change made through this manager is passed on: prices and the
+     * reservation ledger are updated in place, since the till keeps them,
+     * and the other views are dropped and rebuilt on next use. Views being
+     * built hold this object's lock, and the shared ledger the class lock,
+     * so none is built from the snapshot after this returns.
+     * 
+     * @param fresh the data found once connected, or null if it is the same
+     *              as the snapshot's
+     * @author harry
+     */
+    private void finishConnecting(MenuSnapshot fresh) {
+        synchronized (DatabaseManager.class) {
+            synchronized (this) {
+                if (fresh != null) {
+                    PricingEngine pricing = pricingEngine;
+                    if (pricing != null) {
+                        pricing.reload(fresh.getMenuItems());
+                    }
+                    promotionEngine = null;
+                    bundleSolver = null;
+                    makeableIndex = null;
+                    recipeMatrix = null;
+                    if (sharedReservations != null) {
+                        for (Inventory item : fresh.getInventory()) {
+                            sharedReservations.setStock(item.getIngredientID(), item.getIngredientCount());
+                        }
+                        sharedReservations.setRecipes(new RecipeBook(fresh.getRecipes(), fresh.getInventory()));
+                    }
+                }
+                connecting = false;
+            }
+        }
+    }
+
+    /**
+     * Checks for mock data mode, waiting for a background connection to
+     * settle first.
+     * 
+     * @return true if using mock data
+     * @author harry
+     */
+    private boolean usingMockData() {
+        connected.join();
+        return useMockData;
+    }
+
+    /**
+     * Starts precomputing reports in the background during quiet hours. The
+     * till calls this once; tools that only read a report do not. In mock
+     * data mode reports are still served, but not precomputed.
+     * 
+     * @author harry
+     */
+    public void startReportScheduler() {
+        whenConnected(() -> {
+            if (!useMockData) {
+                getReportScheduler().start();
+            }
+        });
+    }
+
+    /**
+     * Saves the sales cube periodically and on close, if this process is the
+     * configured writer (SALES_CUBE_WRITER=true in the .env file). Exactly
+     * one till should be configured, so two processes never overwrite each
+     * other's file; every other process builds its cube from the order
+     * history and never writes it.
+     * 
+     * @author harry
+     */
+    public void persistSalesCube() {
+        Map<String, String> env = Files.exists(Paths.get(".env")) ? loadEnvironment() : new HashMap<>();
+        if (!Boolean.parseBoolean(env.get("SALES_CUBE_WRITER"))) {
+            return;
+        }
+        savesSalesCube = true;
+        SalesCube cube = salesCube;
+        if (cube != null) {
+            cube.startPersisting(SalesCube.DEFAULT_PATH, CUBE_SAVE_MINUTES, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Creates the report scheduler with the quiet hours from the .env file
+     * (REPORT_QUIET_START and REPORT_QUIET_END), 2 to 6 by default.
+     * 
+     * @return the new report scheduler, not yet started
+     * @author harry
+     */
+    private ReportScheduler createReportScheduler() {
+        Map<String, String> env = Files.exists(Paths.get(".env")) ? loadEnvironment() : new HashMap<>();
+        int quietStart = 2;
+        int quietEnd = 6;
+        try {
+            quietStart = Integer.parseInt(env.getOrDefault("REPORT_QUIET_START", "2"));
+            quietEnd = Integer.parseInt(env.getOrDefault("REPORT_QUIET_END", "6"));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid report quiet hours, using 2 to 6: " + e.getMessage());
+            quietStart = 2;
+        }
+        return new ReportScheduler(this, quietStart, quietEnd);
+    }
+
+    /**
+     * Starts the process-wide stock ledger, replaying any deductions a crash
+     * left in its journal. The till calls this once; tools that only read or
+     * load data do not, so they never touch the till's journal. The flush
+     * interval comes from STOCK_FLUSH_MILLIS in the .env file. If the ledger
+     * cannot start, for instance because another process holds the journal,
+     * orders lock and update the inventory rows directly. When connecting in
+     * the background, the ledger starts once connected.
+     * 
+     * @author harry
+     */
+    public void startStockLedger() {
+        whenConnected(this::openStockLedger);
+    }
+
+    private void openStockLedger() {
+        synchronized (DatabaseManager.class) {
+            if (sharedLedger != null || useMockData) {
+                return;
+            }
+            if (!hasStockLedgerTable) {
+                System.err.println("Stock ledger table not found, updating inventory per order until "
+                        + STOCK_LEDGER_MIGRATION + " is run");
+                return;
+            }
+            Map<String, String> env = loadEnvironment();
+            long flushMillis = StockLedger.DEFAULT_FLUSH_MILLIS;
+            try {
+                flushMillis = Long.parseLong(env.getOrDefault("STOCK_FLUSH_MILLIS",
+                        String.valueOf(StockLedger.DEFAULT_FLUSH_MILLIS)));
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid stock flush interval, using " + flushMillis + " ms: " + e.getMessage());
+            }
+            try {
+                StockLedger ledger = new StockLedger(this, StockLedger.DEFAULT_DIR, flushMillis);
+                ledger.open();
+                ledger.start();
+                sharedLedger = ledger;
+            } catch (SQLException | IOException e) {
+                System.err.println("Error starting stock ledger, updating inventory per order: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Gets the report scheduler, which serves daily, weekly and monthly
+     * reports from its cache. It only precomputes reports once
+     * {@link #startReportScheduler()} has been called.
+     * 
+     * @return the report scheduler
+     * @author harry
+     */
+    public ReportScheduler getReportScheduler() {
+        // The scheduler's cache is named after the data source, so settle the connection first
+        connected.join();
+        synchronized (this) {
+            if (reportScheduler == null) {
+                reportScheduler = createReportScheduler();
+            }
+            return reportScheduler;
+        }
+    }
+
+    /**
+     * Checks that the database has the drink customization columns on
+     * orderitems and the unique order key on orders. They are added by
+     * {@value #SCHEMA_MIGRATION}, run once by someone allowed to change the
+     * schema; the till only reads the catalog, so starting up takes no table
+     * locks and needs no DDL rights. Also notes whether the stockledger table
+     * from {@value #STOCK_LEDGER_MIGRATION} exists.
+     * 
+     * @return true if the schema is up to date
+     * @author harry
+     */
+    private boolean checkSchema() {
+        String query = """
+                SELECT (SELECT count(*) FROM information_schema.columns
+                        WHERE table_schema = current_schema() AND table_name = 'orderitems'
+                          AND column_name IN ('sugarlevel', 'icelevel', 'milktype', 'toppings')),
+                       (SELECT count(*) FROM information_schema.columns
+                        WHERE table_schema = current_schema() AND table_name = 'orders'
+                          AND column_name = 'orderkey'),
+                       EXISTS (SELECT 1 FROM pg_indexes
+                               WHERE schemaname = current_schema() AND tablename = 'orders'
+                                 AND indexname = 'orders_orderkey_key'),
+                       EXISTS (SELECT 1 FROM information_schema.tables
+                               WHERE table_schema = current_schema() AND table_name = 'stockledger')
+                """;
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery(query)) {
+            rs.next();
+            hasStockLedgerTable = rs.getBoolean(4);
+            if (rs.getInt(1) == 4 && rs.getInt(2) == 1 && rs.getBoolean(3)) {
+                return true;
+            }
+            System.err.println("Database schema is out of date, orders cannot be saved until "
+                    + SCHEMA_MIGRATION + " is run");
+        } catch (SQLException e) {
+            System.err.println("Error checking database schema: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Restores the full mock data state saved by the last offline session, if
+     * there is one, so orders taken in mock mode survive a restart. If the
+     * menu snapshot loaded at startup is newer, its menu, inventory and
+     * recipes are kept and only the orders are restored.
+     * 
+     * @author harry
+     */
+    private void restoreStoreSnapshot() {
+        if (!Files.exists(StoreSnapshot.DEFAULT_PATH)) {
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            MenuSnapshot loaded = snapshot;
+            long menuSavedAt = loaded == null ? Long.MIN_VALUE : loaded.getSavedAt();
+            int restored = StoreSnapshot.restore(mockProvider, StoreSnapshot.DEFAULT_PATH, menuSavedAt);
+            System.out.println("Restored " + restored + " offline orders in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        } catch (IOException e) {
+            System.err.println("Error restoring store snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the full mock data state to disk. Does nothing when connected to
+     * the database, which is the source of truth in that case.
+     * 
+     * @return true if a checkpoint was written, false otherwise
+     * @author harry
+     */
+    public boolean checkpoint() {
+        if (!usingMockData()) {
+            return false;
+        }
+        try {
+            StoreSnapshot.save(mockProvider, StoreSnapshot.DEFAULT_PATH);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error saving store snapshot: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Loads the last known menu snapshot from disk, if there is one, so mock
+     * mode and query fallbacks serve the shop's real menu instead of demo data.
+     * 
+     * @author harry
+     */
+    private void loadSnapshot() {
+        if (!Files.exists(MenuSnapshot.DEFAULT_PATH)) {
+            return;
+        }
+        try {
+            snapshot = MenuSnapshot.load(MenuSnapshot.DEFAULT_PATH);
+            mockProvider.loadSnapshot(snapshot);
+            System.out.println("Loaded menu snapshot with " + snapshot.getMenuItems().size() + " menu items");
+        } catch (IOException e) {
+            System.err.println("Error loading menu snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads the sales sketches saved at the end of the last session, if any.
+     * 
+     * @author harry
+     */
+    private void loadSalesSketches() {
+        if (!Files.exists(SalesSketches.DEFAULT_PATH)) {
+            return;
+        }
+        try {
+            salesSketches = SalesSketches.load(SalesSketches.DEFAULT_PATH);
+        } catch (IOException e) {
+            System.err.println("Error loading sales sketches: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Re-reads the menu, inventory and recipes from the database on a background
+     * thread and rewrites the snapshot file if anything changed. Only the file
+     * and the snapshot reference are replaced: the mock store is not read
+     * while connected, and reloading it here would race with the terminals.
+     * The next offline start loads the new file.
+     * 
+     * @author harry
+     */
+    private void reconcileSnapshotInBackground() {
+        Thread worker = new Thread(this::reconcileSnapshot, "snapshot-reconcile");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Re-reads the menu, inventory and recipes from the database and rewrites
+     * the snapshot file if anything changed.
+     * 
+     * @return the data read, or null if it could not be read
+     * @author harry
+     */
+    private MenuSnapshot reconcileSnapshot() {
+        try {
+            MenuSnapshot fresh = new MenuSnapshot(queryMenuItems(), queryInventory(), queryRecipes());
+            if (!fresh.sameContentAs(snapshot)) {
+                fresh.save(MenuSnapshot.DEFAULT_PATH);
+                System.out.println("Menu snapshot updated");
+            }
+            snapshot = fresh;
+            return fresh;
+        } catch (SQLException | IOException e) {
+            System.err.println("Error refreshing menu snapshot: " + e.getMessage());
+            return null;
+        }
     }
 
     /**
@@ -63,6 +513,7 @@ public class DatabaseManager {
             try {
                 Class.forName("org.postgresql.Driver");
                 this.connection = DriverManager.getConnection(url, user, password);
+                this.databaseUrl = url;
                 this.isConnected = true;
                 this.useMockData = false;
                 System.out.println("Successfully connected to database: " + url);
@@ -78,6 +529,23 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Opens an additional connection with the credentials from the .env file,
+     * for tools that load or export data on several connections at once. The
+     * caller owns and must close the connection.
+     * 
+     * @return a new database connection
+     * @throws SQLException if the credentials are missing or the connection fails
+     * @author harry
+     */
+    public Connection openConnection() throws SQLException {
+        Map<String, String> env = loadEnvironment();
+        if (!env.containsKey("DB_URL") || !env.containsKey("DB_USER") || !env.containsKey("DB_PASS")) {
+            throw new SQLException("Database credentials not found in .env file");
+        }
+        return DriverManager.getConnection(env.get("DB_URL"), env.get("DB_USER"), env.get("DB_PASS"));
+    }
+
     /**
      * Checks if the database is currently connected.
      * 
@@ -89,23 +557,60 @@ public class DatabaseManager {
     }
 
     /**
-     * Checks if the system is currently using mock data.
+     * Checks if the database connection is still being made in the
+     * background.
+     * 
+     * @return true while connecting
+     * @author harry
+     */
+    public boolean isConnecting() {
+        return connecting;
+    }
+
+    /**
+     * Runs an action once the connection attempt has settled, at once if it
+     * already has. The action runs on the connecting thread otherwise.
+     * 
+     * @param action the action to run
+     * @author harry
+     */
+    public void whenConnected(Runnable action) {
+        connected.thenRun(action);
+    }
+
+    /**
+     * Checks if the system is currently using mock data, waiting for a
+     * background connection to settle first.
      * 
      * @return true if using mock data, false if using real database
      * @author harry
      */
     public boolean isUsingMockData() {
-        return useMockData;
+        return usingMockData();
+    }
+
+    /**
+     * Gets a name for where orders are read from, so data cached from one
+     * source is not served for another.
+     * 
+     * @return "mock" in mock data mode, otherwise the database URL
+     * @author harry
+     */
+    public String getDataSourceName() {
+        return usingMockData() || databaseUrl == null ? "mock" : databaseUrl;
     }
 
     /**
      * Gets the current connection status as a string.
      * 
-     * @return "Connected to Database" if connected, "Using Mock Data" otherwise
+     * @return "Connecting to Database" while connecting in the background,
+     *         "Connected to Database" if connected, "Using Mock Data" otherwise
      * @author harry
      */
     public String getConnectionStatus() {
-        if (isConnected) {
+        if (connecting) {
+            return "Connecting to Database";
+        } else if (isConnected) {
             return "Connected to Database";
         } else {
             return "Using Mock Data";
@@ -119,10 +624,26 @@ public class DatabaseManager {
      * @author harry
      */
     public List<MenuItem> getAllMenuItems() {
-        if (useMockData) {
+        if (connecting || usingMockData()) {
+            return mockProvider.getAllMenuItems();
+        }
+
+        try {
+            return queryMenuItems();
+        } catch (SQLException e) {
+            System.err.println("Error fetching menu items: " + e.getMessage());
             return mockProvider.getAllMenuItems();
         }
+    }
 
+    /**
+     * Queries all menu items from the database.
+     * 
+     * @return List of MenuItem objects ordered by name
+     * @throws SQLException if the query fails
+     * @author harry
+     */
+    private List<MenuItem> queryMenuItems() throws SQLException {
         List<MenuItem> items = new ArrayList<>();
         String query = "SELECT menuitemid, drinkcategory, menuitemname, price FROM menuitems ORDER BY menuitemname";
 
@@ -137,9 +658,6 @@ public class DatabaseManager {
                         rs.getDouble("price"));
                 items.add(item);
             }
-        } catch (SQLException e) {
-            System.err.println("Error fetching menu items: " + e.getMessage());
-            return mockProvider.getAllMenuItems();
         }
 
         return items;
@@ -152,10 +670,38 @@ public class DatabaseManager {
      * @author harry
      */
     public List<Inventory> getAllInventory() {
-        if (useMockData) {
+        if (connecting || usingMockData()) {
+            return mockProvider.getAllInventory();
+        }
+
+        try {
+            List<Inventory> items = queryInventory();
+            StockLedger ledger = sharedLedger;
+            if (ledger != null) {
+                // The ledger is ahead of the table by up to one flush
+                Map<Integer, Integer> stock = ledger.getStock();
+                for (Inventory item : items) {
+                    Integer count = stock.get(item.getIngredientID());
+                    if (count != null) {
+                        item.setIngredientCount(count);
+                    }
+                }
+            }
+            return items;
+        } catch (SQLException e) {
+            System.err.println("Error fetching inventory: " + e.getMessage());
             return mockProvider.getAllInventory();
         }
+    }
 
+    /**
+     * Queries all inventory items from the database.
+     * 
+     * @return List of Inventory objects ordered by name
+     * @throws SQLException if the query fails
+     * @author harry
+     */
+    private List<Inventory> queryInventory() throws SQLException {
         List<Inventory> items = new ArrayList<>();
         String query = "SELECT ingredientid, ingredientname, ingredientcount FROM inventory ORDER BY ingredientname";
 
@@ -169,14 +715,55 @@ public class DatabaseManager {
                         rs.getInt("ingredientcount"));
                 items.add(item);
             }
-        } catch (SQLException e) {
-            System.err.println("Error fetching inventory: " + e.getMessage());
-            return mockProvider.getAllInventory();
         }
 
         return items;
     }
 
+    /**
+     * Retrieves all recipe lines from the database or mock data.
+     * 
+     * @return List of MenuItemIngredient objects containing all recipe lines
+     * @author harry
+     */
+    public List<MenuItemIngredient> getAllRecipes() {
+        if (connecting || usingMockData()) {
+            return mockProvider.getAllRecipes();
+        }
+
+        try {
+            return queryRecipes();
+        } catch (SQLException e) {
+            System.err.println("Error fetching recipes: " + e.getMessage());
+            return mockProvider.getAllRecipes();
+        }
+    }
+
+    /**
+     * Queries all recipe lines from the MenuItemIngredients table.
+     * 
+     * @return List of MenuItemIngredient objects ordered by menu item
+     * @throws SQLException if the query fails
+     * @author harry
+     */
+    private List<MenuItemIngredient> queryRecipes() throws SQLException {
+        List<MenuItemIngredient> recipes = new ArrayList<>();
+        String query = "SELECT menuItemID, ingredientID, ingredientQty FROM MenuItemIngredients ORDER BY menuItemID, ingredientID";
+
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery(query)) {
+
+            while (rs.next()) {
+                recipes.add(new MenuItemIngredient(
+                        rs.getInt("menuItemID"),
+                        rs.getInt("ingredientID"),
+                        rs.getInt("ingredientQty")));
+            }
+        }
+
+        return recipes;
+    }
+
     /**
      * Retrieves all employees from the database or mock data.
      * 
@@ -184,7 +771,7 @@ public class DatabaseManager {
      * @author harry
      */
     public List<Employee> getAllEmployees() {
-        if (useMockData) {
+        if (usingMockData()) {
             return mockProvider.getAllEmployees();
         }
 
@@ -217,7 +804,7 @@ public class DatabaseManager {
      * @author harry
      */
     public List<Order> getAllOrders() {
-        if (useMockData) {
+        if (usingMockData()) {
             return mockProvider.getAllOrders();
         }
 
@@ -241,92 +828,926 @@ public class DatabaseManager {
             System.err.println("Error fetching orders: " + e.getMessage());
             return mockProvider.getAllOrders();
         }
-
-        return orders;
+
+        return orders;
+    }
+
+    /**
+     * Retrieves one page of order history, newest first.
+     * 
+     * @param offset the number of orders to skip
+     * @param limit  the maximum number of orders to return
+     * @return List of Order objects on the requested page
+     * @author harry
+     */
+    public List<Order> getOrdersPage(int offset, int limit) {
+        if (usingMockData()) {
+            return mockProvider.getOrdersPage(offset, limit);
+        }
+
+        List<Order> orders = new ArrayList<>();
+        String query = "SELECT orderid, timeoforder, customerid, employeeid, totalcost, orderweek FROM orders ORDER BY timeoforder DESC, orderid DESC LIMIT ? OFFSET ?";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+            pstmt.setInt(1, limit);
+            pstmt.setInt(2, offset);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    orders.add(new Order(
+                            rs.getInt("orderid"),
+                            rs.getTimestamp("timeoforder"),
+                            rs.getObject("customerid", Integer.class),
+                            rs.getInt("employeeid"),
+                            rs.getDouble("totalcost"),
+                            rs.getInt("orderweek")));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error fetching order page: " + e.getMessage());
+            return mockProvider.getOrdersPage(offset, limit);
+        }
+
+        return orders;
+    }
+
+    /**
+     * Creates a new order with associated order items. The order total is
+     * recomputed from the current prices, promotions and bundles; the total
+     * set by the caller is only an estimate.
+     * 
+     * @param order      the Order object to be created
+     * @param orderItems List of OrderItem objects for the order
+     * @return true if order creation was successful, false otherwise
+     * @author harry
+     */
+    public boolean createOrder(Order order, List<OrderItem> orderItems) {
+        return createOrder(order, orderItems, null);
+    }
+
+    /**
+     * Creates a new order whose ingredients a cart has been holding. Once the
+     * order is stored the holds become stock decrements in the reservation
+     * ledger.
+     * 
+     * If the order has a key that an earlier submission already stored, that
+     * order's ID is set on the order and true is returned without storing it
+     * again, so a terminal can safely resubmit an order whose first attempt
+     * timed out.
+     * 
+     * @param order       the Order object to be created
+     * @param orderItems  List of OrderItem objects for the order
+     * @param reservation the cart's reservation, or null if it has none
+     * @return true if order creation was successful, false otherwise
+     * @author harry
+     */
+    public boolean createOrder(Order order, List<OrderItem> orderItems,
+            InventoryReservations.Reservation reservation) {
+        UUID key = order.getOrderKey();
+        if (key != null) {
+            int claimed = claimOrderKey(order);
+            if (claimed == RecentOrderKeys.IN_FLIGHT) {
+                System.err.println("Error creating order: order " + key + " is already being submitted");
+                return false;
+            }
+            if (claimed != RecentOrderKeys.CLAIMED) {
+                releaseReservation(reservation);
+                return true;
+            }
+        }
+
+        boolean created = false;
+        try {
+            if (!priceOrder(order, orderItems)) {
+                return false;
+            }
+            if (usingMockData()) {
+                created = mockProvider.createOrder(order, orderItems);
+                if (created) {
+                    recordSale(order, orderItems, reservation);
+                }
+                return created;
+            }
+
+            StockLedger ledger = sharedLedger;
+            try {
+                boolean stored = sharedRetrier.run(
+                        lockTimeoutMillis -> storeOrder(order, orderItems, ledger, lockTimeoutMillis));
+                if (stored) {
+                    recordSale(order, orderItems, reservation);
+                } else {
+                    releaseReservation(reservation);
+                }
+                created = true;
+                return true;
+
+            } catch (SQLException | IOException e) {
+                System.err.println("Error creating order: " + e.getMessage());
+                return false;
+            }
+        } finally {
+            if (key != null) {
+                if (created) {
+                    sharedOrderKeys.complete(key, order.getOrderID());
+                } else {
+                    sharedOrderKeys.release(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Claims an order's key before storing it. A key seen recently, or in
+     * mock mode one already in the store, is answered with the stored
+     * order's ID, which is set on the order.
+     * 
+     * @param order an order with a key
+     * @return the stored order's ID, {@link RecentOrderKeys#CLAIMED} if the
+     *         key is new, or {@link RecentOrderKeys#IN_FLIGHT} if another
+     *         submission of it is being stored
+     * @author harry
+     */
+    private int claimOrderKey(Order order) {
+        UUID key = order.getOrderKey();
+        int claimed = sharedOrderKeys.claim(key);
+        if (claimed == RecentOrderKeys.CLAIMED && usingMockData()) {
+            Integer stored = mockProvider.getOrderIdByKey(key);
+            if (stored != null) {
+                sharedOrderKeys.complete(key, stored);
+                claimed = stored;
+            }
+        }
+        if (claimed > 0) {
+            order.setOrderID(claimed);
+        }
+        return claimed;
+    }
+
+    /**
+     * Records the outcome of a batch's claimed order keys: stored and
+     * duplicate orders keep their keys, the others give them up so they can
+     * be submitted again.
+     * 
+     * @param submissions the submissions whose keys were claimed
+     * @author harry
+     */
+    private void settleOrderKeys(List<OrderSubmission> submissions) {
+        for (OrderSubmission submission : submissions) {
+            UUID key = submission.getOrder().getOrderKey();
+            if (key == null) {
+                continue;
+            }
+            if (submission.getOutcome() == OrderSubmission.Outcome.CREATED
+                    || submission.getOutcome() == OrderSubmission.Outcome.DUPLICATE) {
+                sharedOrderKeys.complete(key, submission.getOrder().getOrderID());
+            } else {
+                sharedOrderKeys.release(key);
+            }
+        }
+    }
+
+    /**
+     * Releases a cart's holds after its order turned out to be stored
+     * already.
+     * 
+     * @param reservation the cart's reservation, or null if it has none
+     * @author harry
+     */
+    private void releaseReservation(InventoryReservations.Reservation reservation) {
+        synchronized (DatabaseManager.class) {
+            if (sharedReservations != null && reservation != null) {
+                sharedReservations.release(reservation);
+            }
+        }
+    }
+
+    /**
+     * Looks up the orders already stored under the keys of a batch.
+     * 
+     * @param submissions the submissions to look up
+     * @return Map of order key to stored order ID
+     * @throws SQLException if the query fails
+     * @author harry
+     */
+    private Map<UUID, Integer> queryOrderIdsByKey(List<OrderSubmission> submissions) throws SQLException {
+        Map<UUID, Integer> stored = new HashMap<>();
+        Object[] keys = submissions.stream().map(submission -> submission.getOrder().getOrderKey())
+                .filter(Objects::nonNull).toArray();
+        if (keys.length == 0) {
+            return stored;
+        }
+        String query = "SELECT orderkey, orderid FROM orders WHERE orderkey = ANY(?)";
+        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+            pstmt.setArray(1, connection.createArrayOf("uuid", keys));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    stored.put(rs.getObject("orderkey", UUID.class), rs.getInt("orderid"));
+                }
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Makes one attempt at storing an order and its items in a transaction.
+     * The order's stock is taken from the ledger or, without one, its
+     * ingredient rows are locked in ingredient ID order, checked and
+     * deducted. On failure the transaction is rolled back and any stock
+     * taken is put back, so the attempt can be repeated.
+     * 
+     * @param order             the priced order to store
+     * @param orderItems        the items of the order
+     * @param ledger            the stock ledger, or null to update the inventory rows
+     * @param lockTimeoutMillis the longest to wait for a row lock
+     * @return true if the order was stored, false if its key was already
+     *         stored, in which case the order now has that order's ID
+     * @throws SQLException if the order cannot be stored
+     * @throws IOException  if the stock journal cannot be written
+     * @author harry
+     */
+    private boolean storeOrder(Order order, List<OrderItem> orderItems, StockLedger ledger, long lockTimeoutMillis)
+            throws SQLException, IOException {
+        StockLedger.Hold hold = null;
+        try {
+            connection.setAutoCommit(false);
+            CommitRetrier.setLockTimeout(connection, lockTimeoutMillis);
+
+            // Sum the ingredients; the sorted map keeps row locks in ingredient ID order
+            RecipeBook recipes = queryRecipeBook(orderItems.stream()
+                    .map(OrderItem::getMenuItemID).collect(Collectors.toSet()));
+            SortedMap<Integer, Integer> needed = recipes.requirementsFor(orderItems);
+            if (ledger != null) {
+                hold = ledger.take(needed);
+                if (hold == null) {
+                    throw new SQLException("Insufficient inventory for this order");
+                }
+            } else {
+                Map<Integer, Integer> stock = lockInventory(needed.keySet());
+                for (Map.Entry<Integer, Integer> entry : needed.entrySet()) {
+                    int available = stock.getOrDefault(entry.getKey(), 0);
+                    if (available < entry.getValue()) {
+                        throw new SQLException("Insufficient inventory for ingredient ID: " + entry.getKey() +
+                                " (Available: " + available + ", Required: " + entry.getValue() + ")");
+                    }
+                }
+            }
+
+            // Get next available order ID
+            int orderId = getNextOrderId();
+            if (orderId == -1) {
+                throw new SQLException("Failed to generate order ID");
+            }
+
+            // Insert order with explicit orderID; a key stored before inserts nothing
+            String orderQuery = "INSERT INTO orders (orderid, timeoforder, customerid, employeeid, totalcost, orderweek, orderkey) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?) ON CONFLICT (orderkey) DO NOTHING";
+
+            try (PreparedStatement pstmt = connection.prepareStatement(orderQuery)) {
+                pstmt.setInt(1, orderId);
+                pstmt.setTimestamp(2, order.getTimeOfOrder());
+                pstmt.setObject(3, order.getCustomerID());
+                pstmt.setInt(4, order.getEmployeeID());
+                pstmt.setDouble(5, order.getTotalCost());
+                pstmt.setInt(6, order.getOrderWeek());
+                pstmt.setObject(7, order.getOrderKey(), Types.OTHER);
+
+                int rowsAffected = pstmt.executeUpdate();
+                if (rowsAffected == 0 && order.getOrderKey() != null) {
+                    if (hold != null) {
+                        hold.abort();
+                    }
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                    Integer stored = queryOrderIdsByKey(List.of(new OrderSubmission(order, orderItems)))
+                            .get(order.getOrderKey());
+                    if (stored == null) {
+                        throw new SQLException("Order key conflict but no stored order found");
+                    }
+                    order.setOrderID(stored);
+                    return false;
+                }
+                if (rowsAffected == 0) {
+                    throw new SQLException("Failed to insert order");
+                }
+                
+                // Update the order object with the generated ID
+                order.setOrderID(orderId);
+            }
+
+            // Insert order items with their customizations in one batch
+            int orderItemId = getNextOrderItemId();
+            if (orderItemId == -1) {
+                throw new SQLException("Failed to generate order item ID");
+            }
+            String itemQuery = "INSERT INTO orderitems (" + ORDER_ITEM_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+            try (PreparedStatement pstmt = connection.prepareStatement(itemQuery)) {
+                for (OrderItem item : orderItems) {
+                    item.setOrderItemID(orderItemId++);
+                    item.setOrderID(orderId);
+                    bindOrderItem(pstmt, 1, item);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+
+            // Journal the deduction for the next ledger flush, or apply it now
+            if (hold != null) {
+                hold.journal(orderId);
+            } else {
+                deductInventory(needed);
+            }
+
+            connection.commit();
+            connection.setAutoCommit(true);
+            if (hold != null) {
+                hold.commit();
+            }
+            return true;
+
+        } catch (SQLException | IOException e) {
+            if (hold != null) {
+                hold.abort();
+            }
+            order.setOrderID(0);
+            try {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            } catch (SQLException rollbackEx) {
+                System.err.println("Error rolling back transaction: " + rollbackEx.getMessage());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Creates many orders at once. All accepted orders and their items are
+     * written in one transaction with multi-row inserts, and the inventory
+     * deductions of the whole batch are summed so each ingredient row is
+     * updated once, or taken from the stock ledger and flushed with other
+     * terminals' orders when it is running. Orders that would run an
+     * ingredient out are rejected individually; the outcome of every order is
+     * recorded on its submission. Order totals are recomputed from the
+     * current prices, promotions and bundles, and orders with an unknown menu
+     * item fail without being stored. Orders whose key was already stored are
+     * marked as duplicates and given the stored order's ID.
+     * 
+     * @param submissions the orders to create, in priority order
+     * @return the number of orders created
+     * @author harry
+     */
+    public int createOrders(List<OrderSubmission> submissions) {
+        List<OrderSubmission> priced = new ArrayList<>(submissions.size());
+        for (OrderSubmission submission : submissions) {
+            if (priceOrder(submission.getOrder(), submission.getItems())) {
+                priced.add(submission);
+            } else {
+                submission.setOutcome(OrderSubmission.Outcome.FAILED, "Order contains an unknown menu item");
+            }
+        }
+
+        // Answer resubmitted orders from their keys and claim the rest
+        List<OrderSubmission> claimed = new ArrayList<>(priced.size());
+        for (OrderSubmission submission : priced) {
+            if (submission.getOrder().getOrderKey() == null) {
+                claimed.add(submission);
+                continue;
+            }
+            int existing = claimOrderKey(submission.getOrder());
+            if (existing == RecentOrderKeys.IN_FLIGHT) {
+                submission.setOutcome(OrderSubmission.Outcome.FAILED, "Order is already being submitted");
+            } else if (existing != RecentOrderKeys.CLAIMED) {
+                submission.setOutcome(OrderSubmission.Outcome.DUPLICATE, null);
+            } else {
+                claimed.add(submission);
+            }
+        }
+        submissions = claimed;
+
+        try {
+            if (usingMockData()) {
+                int created = 0;
+                for (OrderSubmission submission : submissions) {
+                    if (mockProvider.createOrder(submission.getOrder(), submission.getItems())) {
+                        submission.setOutcome(OrderSubmission.Outcome.CREATED, null);
+                        recordSale(submission.getOrder(), submission.getItems(), null);
+                        created++;
+                    } else {
+                        submission.setOutcome(OrderSubmission.Outcome.INSUFFICIENT_INVENTORY,
+                                "Insufficient inventory for this order");
+                    }
+                }
+                return created;
+            }
+
+            StockLedger ledger = sharedLedger;
+            List<OrderSubmission> toStore = submissions;
+            try {
+                List<OrderSubmission> accepted = sharedRetrier.run(
+                        lockTimeoutMillis -> storeOrders(toStore, ledger, lockTimeoutMillis));
+                for (OrderSubmission submission : accepted) {
+                    submission.setOutcome(OrderSubmission.Outcome.CREATED, null);
+                    recordSale(submission.getOrder(), submission.getItems(), null);
+                }
+                return accepted.size();
+
+            } catch (SQLException | IOException e) {
+                System.err.println("Error creating orders: " + e.getMessage());
+                return 0;
+            }
+        } finally {
+            settleOrderKeys(submissions);
+        }
+    }
+
+    /**
+     * Makes one attempt at storing a batch of orders in a single
+     * transaction. On failure the transaction is rolled back, stock taken
+     * from the ledger is put back and the orders accepted so far are marked
+     * as failed, so the attempt can be repeated from scratch.
+     * 
+     * @param submissions       the priced orders to create, in priority order
+     * @param ledger            the stock ledger, or null to update the inventory rows
+     * @param lockTimeoutMillis the longest to wait for a row lock
+     * @return the submissions stored
+     * @throws SQLException if the batch cannot be stored
+     * @throws IOException  if the stock journal cannot be written
+     * @author harry
+     */
+    private List<OrderSubmission> storeOrders(List<OrderSubmission> submissions, StockLedger ledger,
+            long lockTimeoutMillis) throws SQLException, IOException {
+        List<OrderSubmission> accepted = new ArrayList<>();
+        List<StockLedger.Hold> holds = new ArrayList<>();
+        try {
+            connection.setAutoCommit(false);
+            CommitRetrier.setLockTimeout(connection, lockTimeoutMillis);
+
+            // One query for every recipe the batch uses
+            Set<Integer> menuItemIds = new HashSet<>();
+            for (OrderSubmission submission : submissions) {
+                for (OrderItem item : submission.getItems()) {
+                    menuItemIds.add(item.getMenuItemID());
+                }
+            }
+            RecipeBook recipes = queryRecipeBook(menuItemIds);
+
+            // Orders whose key an earlier submission already stored
+            Map<UUID, Integer> storedKeys = queryOrderIdsByKey(submissions);
+
+            // Without a ledger, lock and read the stock of every ingredient the batch could touch
+            Map<Integer, Integer> stock = new HashMap<>();
+            if (ledger == null) {
+                List<OrderItem> allItems = new ArrayList<>();
+                for (OrderSubmission submission : submissions) {
+                    allItems.addAll(submission.getItems());
+                }
+                stock = lockInventory(recipes.requirementsFor(allItems).keySet());
+            }
+
+            // Accept orders while the running total of deductions fits the stock
+            SortedMap<Integer, Integer> deductions = new TreeMap<>();
+            for (OrderSubmission submission : submissions) {
+                Integer storedId = storedKeys.get(submission.getOrder().getOrderKey());
+                if (storedId != null) {
+                    submission.getOrder().setOrderID(storedId);
+                    submission.setOutcome(OrderSubmission.Outcome.DUPLICATE, null);
+                    continue;
+                }
+                SortedMap<Integer, Integer> needed = recipes.requirementsFor(submission.getItems());
+                if (ledger != null) {
+                    StockLedger.Hold hold = ledger.take(needed);
+                    if (hold == null) {
+                        submission.setOutcome(OrderSubmission.Outcome.INSUFFICIENT_INVENTORY,
+                                "Insufficient inventory for this order");
+                    } else {
+                        holds.add(hold);
+                        accepted.add(submission);
+                    }
+                    continue;
+                }
+                String shortage = null;
+                for (Map.Entry<Integer, Integer> entry : needed.entrySet()) {
+                    int available = stock.getOrDefault(entry.getKey(), 0) - deductions.getOrDefault(entry.getKey(), 0);
+                    if (available < entry.getValue()) {
+                        shortage = "Insufficient inventory for ingredient ID: " + entry.getKey() +
+                                " (Available: " + available + ", Required: " + entry.getValue() + ")";
+                        break;
+                    }
+                }
+                if (shortage != null) {
+                    submission.setOutcome(OrderSubmission.Outcome.INSUFFICIENT_INVENTORY, shortage);
+                    continue;
+                }
+                needed.forEach((id, qty) -> deductions.merge(id, qty, Integer::sum));
+                accepted.add(submission);
+            }
+
+            if (!accepted.isEmpty()) {
+                int firstOrderId = getNextOrderId();
+                int firstItemId = getNextOrderItemId();
+                if (firstOrderId == -1 || firstItemId == -1) {
+                    throw new SQLException("Failed to generate order IDs");
+                }
+                insertOrderRows(accepted, firstOrderId, firstItemId);
+                if (ledger != null) {
+                    for (int i = 0; i < holds.size(); i++) {
+                        holds.get(i).journal(accepted.get(i).getOrder().getOrderID());
+                    }
+                } else {
+                    deductInventory(deductions);
+                }
+            }
+
+            connection.commit();
+            connection.setAutoCommit(true);
+            holds.forEach(StockLedger.Hold::commit);
+            return accepted;
+
+        } catch (SQLException | IOException e) {
+            holds.forEach(StockLedger.Hold::abort);
+            try {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            } catch (SQLException rollbackEx) {
+                System.err.println("Error rolling back transaction: " + rollbackEx.getMessage());
+            }
+            for (OrderSubmission submission : accepted) {
+                submission.getOrder().setOrderID(0);
+                submission.setOutcome(OrderSubmission.Outcome.FAILED, e.getMessage());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Inserts the orders and items of a batch with multi-row INSERT statements,
+     * assigning consecutive IDs from the given starting points.
+     * 
+     * @param accepted    the submissions to insert
+     * @param firstOrderId the ID of the first order
+     * @param firstItemId  the ID of the first order item
+     * @throws SQLException if an insert fails
+     * @author harry
+     */
+    private void insertOrderRows(List<OrderSubmission> accepted, int firstOrderId, int firstItemId)
+            throws SQLException {
+        List<OrderItem> allItems = new ArrayList<>();
+        int nextItemId = firstItemId;
+        for (int i = 0; i < accepted.size(); i++) {
+            Order order = accepted.get(i).getOrder();
+            order.setOrderID(firstOrderId + i);
+            for (OrderItem item : accepted.get(i).getItems()) {
+                item.setOrderItemID(nextItemId++);
+                item.setOrderID(order.getOrderID());
+                allItems.add(item);
+            }
+        }
+
+        for (int from = 0; from < accepted.size(); from += INSERT_CHUNK_ROWS) {
+            List<OrderSubmission> chunk = accepted.subList(from, Math.min(accepted.size(), from + INSERT_CHUNK_ROWS));
+            String query = "INSERT INTO orders (orderid, timeoforder, customerid, employeeid, totalcost, orderweek, orderkey) VALUES "
+                    + String.join(", ", Collections.nCopies(chunk.size(), "(?, ?, ?, ?, ?, ?, ?)"))
+                    + " ON CONFLICT (orderkey) DO NOTHING";
+            try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+                int p = 1;
+                for (OrderSubmission submission : chunk) {
+                    Order order = submission.getOrder();
+                    pstmt.setInt(p++, order.getOrderID());
+                    pstmt.setTimestamp(p++, order.getTimeOfOrder());
+                    pstmt.setObject(p++, order.getCustomerID());
+                    pstmt.setInt(p++, order.getEmployeeID());
+                    pstmt.setDouble(p++, order.getTotalCost());
+                    pstmt.setInt(p++, order.getOrderWeek());
+                    pstmt.setObject(p++, order.getOrderKey(), Types.OTHER);
+                }
+                // A key stored meanwhile by another terminal; the retry answers it as a duplicate
+                if (pstmt.executeUpdate() < chunk.size()) {
+                    throw new SQLException("Order key stored concurrently by another submission: duplicate key "
+                            + "value violates unique constraint \"orders_orderkey_key\"", "23505");
+                }
+            }
+        }
+
+        for (int from = 0; from < allItems.size(); from += INSERT_CHUNK_ROWS) {
+            List<OrderItem> chunk = allItems.subList(from, Math.min(allItems.size(), from + INSERT_CHUNK_ROWS));
+            String query = "INSERT INTO orderitems (" + ORDER_ITEM_COLUMNS + ") VALUES "
+                    + String.join(", ", Collections.nCopies(chunk.size(), "(?, ?, ?, ?, ?, ?, ?, ?)"));
+            try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+                int p = 1;
+                for (OrderItem item : chunk) {
+                    p = bindOrderItem(pstmt, p, item);
+                }
+                pstmt.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Binds the columns of {@link #ORDER_ITEM_COLUMNS} for one order item.
+     * 
+     * @param pstmt the statement to bind
+     * @param p the index of the first parameter
+     * @param item the order item
+     * @return the index of the next parameter
+     * @throws SQLException if a parameter cannot be bound
+     * @author harry
+     */
+    private static int bindOrderItem(PreparedStatement pstmt, int p, OrderItem item) throws SQLException {
+        pstmt.setInt(p++, item.getOrderItemID());
+        pstmt.setInt(p++, item.getOrderID());
+        pstmt.setInt(p++, item.getMenuItemID());
+        pstmt.setInt(p++, item.getQuantity());
+        // A level the customer never chose is stored as NULL, not as "none"
+        if (item.hasSugarLevel()) {
+            pstmt.setShort(p++, (short) item.getSugarLevel());
+        } else {
+            pstmt.setNull(p++, Types.SMALLINT);
+        }
+        if (item.hasIceLevel()) {
+            pstmt.setShort(p++, (short) item.getIceLevel());
+        } else {
+            pstmt.setNull(p++, Types.SMALLINT);
+        }
+        pstmt.setString(p++, item.getMilkType());
+        pstmt.setBytes(p++, item.getPackedToppings());
+        return p;
+    }
+
+    /**
+     * Queries the recipes of a set of menu items, and the inventory items
+     * toppings draw from, in two round trips.
+     * 
+     * @param menuItemIds the menu items whose recipes are needed
+     * @return a RecipeBook holding those recipes and the topping ingredients
+     * @throws SQLException if the query fails
+     * @author harry
+     */
+    private RecipeBook queryRecipeBook(Collection<Integer> menuItemIds) throws SQLException {
+        List<MenuItemIngredient> lines = new ArrayList<>();
+        String query = "SELECT menuItemID, ingredientID, ingredientQty FROM MenuItemIngredients WHERE menuItemID = ANY(?)";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+            pstmt.setArray(1, connection.createArrayOf("integer", menuItemIds.toArray()));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    lines.add(new MenuItemIngredient(
+                            rs.getInt("menuItemID"),
+                            rs.getInt("ingredientID"),
+                            rs.getInt("ingredientQty")));
+                }
+            }
+        }
+
+        // The inventory rows toppings draw from, looked up by name
+        List<Inventory> toppingStock = new ArrayList<>();
+        String stockQuery = "SELECT ingredientid, ingredientname FROM inventory WHERE ingredientname = ANY(?)";
+        try (PreparedStatement pstmt = connection.prepareStatement(stockQuery)) {
+            Object[] names = Arrays.stream(Topping.values()).map(Topping::getIngredientName).toArray();
+            pstmt.setArray(1, connection.createArrayOf("text", names));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    toppingStock.add(new Inventory(rs.getInt("ingredientid"), rs.getString("ingredientname"), 0));
+                }
+            }
+        }
+
+        return new RecipeBook(lines, toppingStock);
+    }
+
+    /**
+     * Locks the inventory rows of a set of ingredients for the current
+     * transaction and reads their counts.
+     * 
+     * @param ingredientIds the ingredients to lock
+     * @return Map of ingredient ID to current count
+     * @throws SQLException if the query fails
+     * @author harry
+     */
+    private Map<Integer, Integer> lockInventory(Collection<Integer> ingredientIds) throws SQLException {
+        Map<Integer, Integer> stock = new HashMap<>();
+        String query = "SELECT ingredientid, ingredientcount FROM inventory WHERE ingredientid = ANY(?) ORDER BY ingredientid FOR UPDATE";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+            pstmt.setArray(1, connection.createArrayOf("integer", ingredientIds.toArray()));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    stock.put(rs.getInt("ingredientid"), rs.getInt("ingredientcount"));
+                }
+            }
+        }
+
+        return stock;
+    }
+
+    /**
+     * Applies summed inventory deductions with a single UPDATE that touches
+     * each ingredient row once. Callers lock the rows first with
+     * {@link #lockInventory}, so the rows are always locked in ingredient ID
+     * order.
+     * 
+     * @param deductions Map of ingredient ID to quantity to remove
+     * @throws SQLException if the update fails
+     * @author harry
+     */
+    private void deductInventory(Map<Integer, Integer> deductions) throws SQLException {
+        if (deductions.isEmpty()) {
+            return;
+        }
+        String query = "UPDATE inventory AS i SET ingredientcount = i.ingredientcount - d.qty " +
+                "FROM unnest(?::int[], ?::int[]) AS d(id, qty) WHERE i.ingredientid = d.id";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+            pstmt.setArray(1, connection.createArrayOf("integer", deductions.keySet().toArray()));
+            pstmt.setArray(2, connection.createArrayOf("integer", deductions.values().toArray()));
+            int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected != deductions.size()) {
+                throw new SQLException("Ingredient not found while updating inventory");
+            }
+        }
+    }
+
+    /**
+     * Gets the pricing engine shared by the cashier screen and order commits,
+     * building it from the menu on first use.
+     * 
+     * @return the pricing engine
+     * @author harry
+     */
+    public PricingEngine getPricingEngine() {
+        PricingEngine engine = pricingEngine;
+        if (engine == null) {
+            synchronized (this) {
+                engine = pricingEngine;
+                if (engine == null) {
+                    engine = new PricingEngine(getAllMenuItems());
+                    pricingEngine = engine;
+                }
+            }
+        }
+        return engine;
     }
 
     /**
-     * Creates a new order with associated order items.
+     * Gets the promotion engine shared by the cashier screen and order
+     * commits, loading the rules file on first use. Without a rules file no
+     * promotions apply.
      * 
-     * @param order      the Order object to be created
-     * @param orderItems List of OrderItem objects for the order
-     * @return true if order creation was successful, false otherwise
+     * @return the promotion engine
      * @author harry
      */
-    public boolean createOrder(Order order, List<OrderItem> orderItems) {
-        if (useMockData) {
-            return mockProvider.createOrder(order, orderItems);
+    public PromotionEngine getPromotionEngine() {
+        PromotionEngine engine = promotionEngine;
+        if (engine == null) {
+            synchronized (this) {
+                engine = promotionEngine;
+                if (engine == null) {
+                    List<PromotionEngine.Rule> rules = new ArrayList<>();
+                    if (Files.exists(PromotionEngine.DEFAULT_PATH)) {
+                        try {
+                            rules = PromotionEngine.loadRules(PromotionEngine.DEFAULT_PATH);
+                            System.out.println("Loaded " + rules.size() + " promotion rules");
+                        } catch (IOException e) {
+                            System.err.println("Error loading promotion rules: " + e.getMessage());
+                        }
+                    }
+                    engine = new PromotionEngine(rules, getAllMenuItems());
+                    promotionEngine = engine;
+                }
+            }
         }
+        return engine;
+    }
 
-        try {
-            connection.setAutoCommit(false);
-
-            // NEW: Validate inventory before processing
-            if (!validateInventoryForOrder(orderItems)) {
-                throw new SQLException("Insufficient inventory for this order");
+    /**
+     * Gets the bundle solver shared by the cashier screen and order commits,
+     * loading the bundles file on first use. Without a bundles file no
+     * bundles apply.
+     * 
+     * @return the bundle solver
+     * @author harry
+     */
+    public BundleSolver getBundleSolver() {
+        BundleSolver solver = bundleSolver;
+        if (solver == null) {
+            synchronized (this) {
+                solver = bundleSolver;
+                if (solver == null) {
+                    List<BundleSolver.Bundle> bundles = new ArrayList<>();
+                    if (Files.exists(BundleSolver.DEFAULT_PATH)) {
+                        try {
+                            bundles = BundleSolver.loadBundles(BundleSolver.DEFAULT_PATH);
+                            System.out.println("Loaded " + bundles.size() + " bundles");
+                        } catch (IOException e) {
+                            System.err.println("Error loading bundles: " + e.getMessage());
+                        }
+                    }
+                    solver = new BundleSolver(bundles, getAllMenuItems());
+                    bundleSolver = solver;
+                }
             }
+        }
+        return solver;
+    }
 
-            // Get next available order ID
-            int orderId = getNextOrderId();
-            if (orderId == -1) {
-                throw new SQLException("Failed to generate order ID");
+    /**
+     * Gets the number of servings each menu item can make from current
+     * stock, building the index from the recipes and inventory on first use.
+     * It is kept up to date as orders are committed and stock is changed
+     * through this manager.
+     * 
+     * @return the makeable index
+     * @author harry
+     */
+    public MakeableIndex getMakeableIndex() {
+        MakeableIndex index = makeableIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = makeableIndex;
+                if (index == null) {
+                    List<Inventory> inventory = getAllInventory();
+                    index = new MakeableIndex(new RecipeBook(getAllRecipes(), inventory), inventory);
+                    makeableIndex = index;
+                }
             }
+        }
+        return index;
+    }
 
-            // Insert order with explicit orderID
-            String orderQuery = "INSERT INTO orders (orderid, timeoforder, customerid, employeeid, totalcost, orderweek) VALUES (?, ?, ?, ?, ?, ?)";
-
-            try (PreparedStatement pstmt = connection.prepareStatement(orderQuery)) {
-                pstmt.setInt(1, orderId);
-                pstmt.setTimestamp(2, order.getTimeOfOrder());
-                pstmt.setObject(3, order.getCustomerID());
-                pstmt.setInt(4, order.getEmployeeID());
-                pstmt.setDouble(5, order.getTotalCost());
-                pstmt.setInt(6, order.getOrderWeek());
+    /**
+     * Gets the retrier order commits run through, whose retry and abort
+     * counts show how much terminals contend for the same rows.
+     * 
+     * @return the commit retrier
+     * @author harry
+     */
+    public CommitRetrier getCommitRetrier() {
+        return sharedRetrier;
+    }
 
-                int rowsAffected = pstmt.executeUpdate();
-                if (rowsAffected == 0) {
-                    throw new SQLException("Failed to insert order");
-                }
-                
-                // Update the order object with the generated ID
-                order.setOrderID(orderId);
+    /**
+     * Gets the ledger of ingredient holds for carts in progress, building it
+     * from the recipes and inventory on first use. It is shared by every
+     * DatabaseManager in the process, so cashier windows open side by side
+     * see each other's holds.
+     * 
+     * @return the reservation ledger
+     * @author harry
+     */
+    public InventoryReservations getInventoryReservations() {
+        synchronized (DatabaseManager.class) {
+            if (sharedReservations == null) {
+                List<Inventory> inventory = getAllInventory();
+                sharedReservations = new InventoryReservations(new RecipeBook(getAllRecipes(), inventory), inventory,
+                        InventoryReservations.DEFAULT_TTL_MILLIS);
+                sharedReservations.start();
             }
+            return sharedReservations;
+        }
+    }
 
-            // Insert order items
-            String itemQuery = "INSERT INTO orderitems (orderitemid, orderid, menuitemid, quantity) VALUES (?, ?, ?, ?)";
-            try (PreparedStatement pstmt = connection.prepareStatement(itemQuery)) {
-                for (OrderItem item : orderItems) {
-                    int orderItemId = getNextOrderItemId();
-                    if (orderItemId == -1) {
-                        throw new SQLException("Failed to generate order item ID");
-                    }
-                    
-                    pstmt.setInt(1, orderItemId);
-                    pstmt.setInt(2, orderId);
-                    pstmt.setInt(3, item.getMenuItemID());
-                    pstmt.setInt(4, item.getQuantity());
-                    pstmt.addBatch();
+    /**
+     * Gets the dense recipe matrix used to check whether a cart can be made,
+     * building it from the recipes and inventory on first use. Its stock is
+     * kept up to date like the makeable index.
+     * 
+     * @return the recipe matrix
+     * @author harry
+     */
+    public RecipeMatrix getRecipeMatrix() {
+        RecipeMatrix matrix = recipeMatrix;
+        if (matrix == null) {
+            synchronized (this) {
+                matrix = recipeMatrix;
+                if (matrix == null) {
+                    List<Inventory> inventory = getAllInventory();
+                    matrix = new RecipeMatrix(new RecipeBook(getAllRecipes(), inventory), inventory);
+                    recipeMatrix = matrix;
                 }
-                pstmt.executeBatch();
-            }
-
-            // NEW: Update inventory after successful order creation
-            if (!updateInventoryForOrder(orderItems)) {
-                throw new SQLException("Failed to update inventory");
             }
+        }
+        return matrix;
+    }
 
-            connection.commit();
-            connection.setAutoCommit(true);
+    /**
+     * Sets an order's total to the price of its items less the larger of the
+     * promotion discount and the best bundle discount; the two never stack.
+     * 
+     * @param order      the order to price
+     * @param orderItems the items of the order
+     * @return true if every item could be priced, false otherwise
+     * @author harry
+     */
+    private boolean priceOrder(Order order, List<OrderItem> orderItems) {
+        try {
+            PricingEngine pricing = getPricingEngine();
+            LocalDateTime time = order.getTimeOfOrder() != null ? order.getTimeOfOrder().toLocalDateTime()
+                    : LocalDateTime.now();
+            long discount = Math.max(getPromotionEngine().discountCents(orderItems, pricing, time),
+                    getBundleSolver().solve(orderItems, pricing).getDiscountCents());
+            long totalCents = pricing.orderCents(orderItems) - discount;
+            order.setTotalCost(PricingEngine.toDollars(totalCents));
             return true;
-
-        } catch (SQLException e) {
-            try {
-                connection.rollback();
-                connection.setAutoCommit(true);
-            } catch (SQLException rollbackEx) {
-                System.err.println("Error rolling back transaction: " + rollbackEx.getMessage());
-            }
-            System.err.println("Error creating order: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error pricing order: " + e.getMessage());
             return false;
         }
     }
@@ -339,8 +1760,12 @@ public class DatabaseManager {
      * @author harry
      */
     public boolean addMenuItem(MenuItem item) {
-        if (useMockData) {
-            return mockProvider.addMenuItem(item);
+        if (usingMockData()) {
+            boolean added = mockProvider.addMenuItem(item);
+            if (added) {
+                registerNewMenuItem(item);
+            }
+            return added;
         }
 
         // First, get the next available menu item ID
@@ -359,6 +1784,10 @@ public class DatabaseManager {
             pstmt.setDouble(4, item.getPrice());
 
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                item.setMenuItemID(nextId);
+                registerNewMenuItem(item);
+            }
             return rowsAffected > 0;
 
         } catch (SQLException e) {
@@ -367,6 +1796,25 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Prices a new menu item and refreshes the promotions and bundles so
+     * category promotions and bundles cover it.
+     * 
+     * @param item the menu item just added
+     * @author harry
+     */
+    private void registerNewMenuItem(MenuItem item) {
+        if (pricingEngine != null) {
+            pricingEngine.setPrice(item.getMenuItemID(), item.getPrice());
+        }
+        if (promotionEngine != null) {
+            promotionEngine.compile(getAllMenuItems());
+        }
+        if (bundleSolver != null) {
+            bundleSolver.setMenu(getAllMenuItems());
+        }
+    }
+
     /**
      * Gets the next available menu item ID by finding the maximum existing ID and
      * adding 1.
@@ -400,8 +1848,12 @@ public class DatabaseManager {
      * @author harry
      */
     public boolean updateMenuItemPrice(int itemId, double newPrice) {
-        if (useMockData) {
-            return mockProvider.updateMenuItemPrice(itemId, newPrice);
+        if (usingMockData()) {
+            boolean updated = mockProvider.updateMenuItemPrice(itemId, newPrice);
+            if (updated) {
+                registerPriceChange(itemId, newPrice);
+            }
+            return updated;
         }
 
         String query = "UPDATE menuitems SET price = ? WHERE menuitemid = ?";
@@ -411,6 +1863,9 @@ public class DatabaseManager {
             pstmt.setInt(2, itemId);
 
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                registerPriceChange(itemId, newPrice);
+            }
             return rowsAffected > 0;
 
         } catch (SQLException e) {
@@ -427,8 +1882,12 @@ public class DatabaseManager {
      * @author harry
      */
     public boolean addInventoryItem(Inventory item) {
-        if (useMockData) {
-            return mockProvider.addInventoryItem(item);
+        if (usingMockData()) {
+            boolean added = mockProvider.addInventoryItem(item);
+            if (added) {
+                registerNewInventoryItem(item);
+            }
+            return added;
         }
 
         // First, get the next available inventory item ID
@@ -446,6 +1905,14 @@ public class DatabaseManager {
             pstmt.setInt(3, item.getIngredientCount());
 
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                item.setIngredientID(nextId);
+                StockLedger ledger = sharedLedger;
+                if (ledger != null) {
+                    ledger.setStock(nextId, item.getIngredientCount());
+                }
+                registerNewInventoryItem(item);
+            }
             return rowsAffected > 0;
 
         } catch (SQLException e) {
@@ -533,8 +2000,19 @@ public class DatabaseManager {
      * @author harry
      */
     public boolean updateInventoryQuantity(int itemId, int newQuantity) {
-        if (useMockData) {
-            return mockProvider.updateInventoryQuantity(itemId, newQuantity);
+        if (usingMockData()) {
+            boolean updated = mockProvider.updateInventoryQuantity(itemId, newQuantity);
+            if (updated) {
+                registerStockChange(itemId, newQuantity);
+            }
+            return updated;
+        }
+
+        // Write out queued deductions first so they are not applied on top of the new count
+        StockLedger ledger = sharedLedger;
+        if (ledger != null && !ledger.flush()) {
+            System.err.println("Error updating inventory quantity: queued deductions could not be written");
+            return false;
         }
 
         String query = "UPDATE inventory SET ingredientcount = ? WHERE ingredientid = ?";
@@ -544,6 +2022,12 @@ public class DatabaseManager {
             pstmt.setInt(2, itemId);
 
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                if (ledger != null) {
+                    ledger.setStock(itemId, newQuantity);
+                }
+                registerStockChange(itemId, newQuantity);
+            }
             return rowsAffected > 0;
 
         } catch (SQLException e) {
@@ -552,6 +2036,48 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Drops the stock views that map toppings to inventory, since a new item
+     * may stock a topping, and adds the item to the reservation ledger.
+     * 
+     * @param item the inventory item just added
+     * @author harry
+     */
+    private void registerNewInventoryItem(Inventory item) {
+        makeableIndex = null;
+        recipeMatrix = null;
+        synchronized (DatabaseManager.class) {
+            if (sharedReservations != null) {
+                sharedReservations.setStock(item.getIngredientID(), item.getIngredientCount());
+                sharedReservations.setRecipes(new RecipeBook(getAllRecipes(), getAllInventory()));
+            }
+        }
+    }
+
+    /**
+     * Passes a stock correction on to the makeable index, recipe matrix and
+     * reservation ledger.
+     * 
+     * @param itemId      the ID of the inventory item
+     * @param newQuantity the new quantity
+     * @author harry
+     */
+    private void registerStockChange(int itemId, int newQuantity) {
+        MakeableIndex index = makeableIndex;
+        if (index != null) {
+            index.setStock(itemId, newQuantity);
+        }
+        RecipeMatrix matrix = recipeMatrix;
+        if (matrix != null) {
+            matrix.setStock(itemId, newQuantity);
+        }
+        synchronized (DatabaseManager.class) {
+            if (sharedReservations != null) {
+                sharedReservations.setStock(itemId, newQuantity);
+            }
+        }
+    }
+
     /**
      * Adds a new employee to the database or mock data.
      * 
@@ -560,7 +2086,7 @@ public class DatabaseManager {
      * @author harry
      */
     public boolean addEmployee(Employee employee) {
-        if (useMockData) {
+        if (usingMockData()) {
             return mockProvider.addEmployee(employee);
         }
 
@@ -620,7 +2146,7 @@ public class DatabaseManager {
      * @author harry
      */
     public boolean updateEmployee(Employee employee) {
-        if (useMockData) {
+        if (usingMockData()) {
             return mockProvider.updateEmployee(employee);
         }
 
@@ -649,7 +2175,7 @@ public class DatabaseManager {
      * @author harry
      */
     public boolean deleteEmployee(int employeeId) {
-        if (useMockData) {
+        if (usingMockData()) {
             return mockProvider.deleteEmployee(employeeId);
         }
 
@@ -674,7 +2200,7 @@ public class DatabaseManager {
      * @author harry
      */
     public Map<String, Integer> getProductUsageData() {
-        if (useMockData) {
+        if (usingMockData()) {
             return mockProvider.getProductUsageData();
         }
 
@@ -712,7 +2238,7 @@ public class DatabaseManager {
      * @author harry
      */
     public double getTotalSales(java.sql.Date startDate, java.sql.Date endDate) {
-        if (useMockData) {
+        if (usingMockData()) {
             return mockProvider.getTotalSales(startDate, endDate);
         }
 
@@ -735,6 +2261,346 @@ public class DatabaseManager {
         return 0.0;
     }
 
+    /**
+     * Gets the highest order ID and the number of orders in a time range.
+     * A report computed over the range is out of date once either changes.
+     * 
+     * @param from the inclusive start of the range
+     * @param to   the exclusive end of the range
+     * @return the highest order ID (0 if none) and the order count
+     * @throws SQLException if the query fails
+     * @author harry
+     */
+    public long[] getOrderWatermark(Timestamp from, Timestamp to) throws SQLException {
+        if (usingMockData()) {
+            long maxOrderId = 0;
+            long count = 0;
+            for (Order order : mockProvider.getOrdersBetween(from, to)) {
+                maxOrderId = Math.max(maxOrderId, order.getOrderID());
+                count++;
+            }
+            return new long[] { maxOrderId, count };
+        }
+
+        String query = "SELECT COALESCE(MAX(orderid), 0), COUNT(*) FROM orders WHERE timeoforder >= ? AND timeoforder < ?";
+        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+            pstmt.setTimestamp(1, from);
+            pstmt.setTimestamp(2, to);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return new long[] { rs.getLong(1), rs.getLong(2) };
+            }
+        }
+    }
+
+    /**
+     * Streams every order item in a time range, joined with its order and menu
+     * item, to a visitor. Rows are read through a server-side cursor on a
+     * separate connection and handed over in one reused OrderLine, so memory
+     * use does not grow with the size of the range.
+     * 
+     * @param from     the inclusive start of the range
+     * @param to       the exclusive end of the range
+     * @param category only stream this drink category, ignoring case, or null for all
+     * @param visitor  receives each row in order of time
+     * @return the number of rows streamed
+     * @throws SQLException if the query fails
+     * @throws IOException  if the visitor fails
+     * @author harry
+     */
+    public long streamOrderLines(Timestamp from, Timestamp to, String category, OrderLine.Visitor visitor)
+            throws SQLException, IOException {
+        OrderLine line = new OrderLine();
+        long rows = 0;
+
+        if (usingMockData()) {
+            for (Order order : mockProvider.getOrdersBetween(from, to)) {
+                for (OrderItem item : mockProvider.getOrderItemsForOrder(order.getOrderID())) {
+                    MenuItem menuItem = mockProvider.getMenuItem(item.getMenuItemID());
+                    String itemCategory = menuItem == null ? null : menuItem.getDrinkCategory();
+                    if (category != null && !category.equalsIgnoreCase(itemCategory)) {
+                        continue;
+                    }
+                    line.orderID = order.getOrderID();
+                    line.timeOfOrder = order.getTimeOfOrder().getTime();
+                    line.employeeID = order.getEmployeeID();
+                    line.customerID = order.getCustomerID();
+                    line.totalCost = order.getTotalCost();
+                    line.orderItemID = item.getOrderItemID();
+                    line.menuItemID = item.getMenuItemID();
+                    line.menuItemName = menuItem == null ? null : menuItem.getMenuItemName();
+                    line.drinkCategory = itemCategory;
+                    line.quantity = item.getQuantity();
+                    line.item.setOrderItemID(item.getOrderItemID());
+                    line.item.setMenuItemID(item.getMenuItemID());
+                    line.item.setQuantity(item.getQuantity());
+                    line.item.setPackedToppings(item.getPackedToppings());
+                    visitor.visit(line);
+                    rows++;
+                }
+            }
+            return rows;
+        }
+
+        String query = """
+                SELECT o.orderid, o.timeoforder, o.employeeid, o.customerid, o.totalcost,
+                       oi.orderitemid, oi.menuitemid, m.menuitemname, m.drinkcategory, oi.quantity,
+                       oi.toppings
+                FROM orders o
+                JOIN orderitems oi ON oi.orderid = o.orderid
+                JOIN menuitems m ON m.menuitemid = oi.menuitemid
+                WHERE o.timeoforder >= ? AND o.timeoforder < ?
+                  AND (?::text IS NULL OR lower(m.drinkcategory) = lower(?))
+                ORDER BY o.timeoforder, o.orderid, oi.orderitemid
+                """;
+
+        // A cursor only streams inside a transaction, so use a connection of our own
+        try (Connection streamConnection = openConnection()) {
+            streamConnection.setAutoCommit(false);
+            streamConnection.setReadOnly(true);
+
+            try (PreparedStatement pstmt = streamConnection.prepareStatement(query,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                pstmt.setFetchSize(5000);
+                pstmt.setTimestamp(1, from);
+                pstmt.setTimestamp(2, to);
+                pstmt.setString(3, category);
+                pstmt.setString(4, category);
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        line.orderID = rs.getInt(1);
+                        line.timeOfOrder = rs.getTimestamp(2).getTime();
+                        line.employeeID = rs.getInt(3);
+                        int customerId = rs.getInt(4);
+                        line.customerID = rs.wasNull() ? null : customerId;
+                        line.totalCost = rs.getDouble(5);
+                        line.orderItemID = rs.getInt(6);
+                        line.menuItemID = rs.getInt(7);
+                        line.menuItemName = rs.getString(8);
+                        line.drinkCategory = rs.getString(9);
+                        line.quantity = rs.getInt(10);
+                        line.item.setOrderItemID(line.orderItemID);
+                        line.item.setMenuItemID(line.menuItemID);
+                        line.item.setQuantity(line.quantity);
+                        line.item.setPackedToppings(rs.getBytes(11));
+                        visitor.visit(line);
+                        rows++;
+                    }
+                }
+            }
+            streamConnection.commit();
+        }
+
+        return rows;
+    }
+
+    /**
+     * Gets the in-memory sales columns used by manager analytics. They are
+     * loaded from every order on first use and then kept current by appending
+     * each order as it is committed.
+     * 
+     * @return the sales columns, or null if they could not be loaded
+     * @author harry
+     */
+    public ColumnarSalesStore getSalesColumns() {
+        return loadSalesViews() ? salesColumns : null;
+    }
+
+    /**
+     * Gets the sales cube used for drill-downs and heatmaps. It is built from
+     * the order history on first use and then updated as orders are
+     * committed.
+     * 
+     * @return the sales cube, or null if it could not be loaded
+     * @author harry
+     */
+    public SalesCube getSalesCube() {
+        return loadSalesViews() ? salesCube : null;
+    }
+
+    /**
+     * Loads the sales columns and the sales cube with a single pass over the
+     * order history, unless they are already loaded. The cube is rebuilt
+     * from the database rather than restored from its file: the file only
+     * holds what its writer saw, not the orders other terminals stored.
+     * 
+     * @return true if the views are loaded, false if loading failed
+     * @author harry
+     */
+    private boolean loadSalesViews() {
+        if (salesColumns != null) {
+            return true;
+        }
+        // Settle the connection before taking the lock that finishConnecting needs
+        connected.join();
+        synchronized (this) {
+            if (salesColumns != null) {
+                return true;
+            }
+            synchronized (salesViewsLock) {
+                pendingSales = new ArrayList<>();
+            }
+            ColumnarSalesStore columns = new ColumnarSalesStore();
+            SalesCube cube = new SalesCube();
+            for (MenuItem item : getAllMenuItems()) {
+                columns.registerMenuItem(item);
+                cube.registerMenuItem(item);
+            }
+
+            // Lines arrive grouped by order; each order is added once its lines are complete
+            int[] lastOrderId = { Integer.MIN_VALUE };
+            int[] maxOrderId = { Integer.MIN_VALUE };
+            Order[] streamed = { null };
+            List<OrderItem> streamedItems = new ArrayList<>();
+            try {
+                long start = System.currentTimeMillis();
+                Timestamp end = Timestamp.valueOf("9999-12-31 00:00:00");
+                long rows = streamOrderLines(new Timestamp(0L), end, null, line -> {
+                    if (line.getOrderID() != lastOrderId[0]) {
+                        addToSalesViews(streamed[0], streamedItems, columns, cube);
+                        streamed[0] = new Order(line.getOrderID(), new Timestamp(line.getTimeOfOrder()),
+                                line.getCustomerID(), line.getEmployeeID(), line.getTotalCost(), 0);
+                        streamedItems.clear();
+                    }
+                    lastOrderId[0] = line.getOrderID();
+                    maxOrderId[0] = Math.max(maxOrderId[0], line.getOrderID());
+                    OrderItem item = new OrderItem(line.getOrderItemID(), line.getOrderID(), line.getMenuItemID(),
+                            line.getQuantity());
+                    item.setPackedToppings(line.getOrderItem().getPackedToppings());
+                    streamedItems.add(item);
+                });
+                addToSalesViews(streamed[0], streamedItems, columns, cube);
+                System.out.println("Loaded " + rows + " order lines into sales views in "
+                        + (System.currentTimeMillis() - start) + " ms");
+            } catch (SQLException | IOException e) {
+                System.err.println("Error loading sales views: " + e.getMessage());
+                synchronized (salesViewsLock) {
+                    pendingSales = null;
+                }
+                return false;
+            }
+
+            // Apply orders committed during the load that the stream did not include. The stream
+            // is in time order, so its last order need not have the highest ID
+            synchronized (salesViewsLock) {
+                for (OrderSubmission sale : pendingSales) {
+                    if (sale.getOrder().getOrderID() > maxOrderId[0]) {
+                        long[] charged = chargedLineCents(sale.getOrder(), sale.getItems());
+                        columns.appendOrder(sale.getOrder(), sale.getItems(), charged);
+                        cube.record(sale.getOrder(), sale.getItems(), charged);
+                    }
+                }
+                pendingSales = null;
+                salesCube = cube;
+                salesColumns = columns;
+            }
+            if (savesSalesCube) {
+                cube.startPersisting(SalesCube.DEFAULT_PATH, CUBE_SAVE_MINUTES, TimeUnit.MINUTES);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Adds one streamed order to the sales columns and the cube.
+     * 
+     * @param order   the order, or null before the first line
+     * @param items   the order's items
+     * @param columns the sales columns being loaded
+     * @param cube    the sales cube being loaded
+     * @author harry
+     */
+    private void addToSalesViews(Order order, List<OrderItem> items, ColumnarSalesStore columns, SalesCube cube) {
+        if (order == null) {
+            return;
+        }
+        long[] charged = chargedLineCents(order, items);
+        columns.appendOrder(order, items, charged);
+        cube.record(order, items, charged);
+    }
+
+    /**
+     * Works out what each line of a committed order was charged, with the
+     * order's promotion or bundle discount spread across its lines.
+     * 
+     * @param order the committed order
+     * @param items the items of the order
+     * @return the charged cents of each item
+     * @author harry
+     */
+    private long[] chargedLineCents(Order order, List<OrderItem> items) {
+        return getPricingEngine().chargedLineCents(items, PricingEngine.toCents(order.getTotalCost()));
+    }
+
+    /**
+     * Records a committed order: its stock comes off the makeable counts, the
+     * recipe matrix and the reservation ledger, it goes into the sales
+     * sketches, and it is added to the sales columns and cube, or queued if
+     * they are still loading.
+     * 
+     * @param order       the committed order
+     * @param orderItems  the items of the order
+     * @param reservation the holds to convert into decrements, or null
+     * @author harry
+     */
+    private void recordSale(Order order, List<OrderItem> orderItems,
+            InventoryReservations.Reservation reservation) {
+        synchronized (DatabaseManager.class) {
+            if (sharedReservations != null
+                    && (reservation == null || !sharedReservations.commit(reservation))) {
+                sharedReservations.recordOrder(orderItems);
+            }
+        }
+        MakeableIndex index = makeableIndex;
+        if (index != null) {
+            index.recordOrder(orderItems);
+        }
+        RecipeMatrix matrix = recipeMatrix;
+        if (matrix != null) {
+            matrix.recordOrder(orderItems);
+        }
+        salesSketches.record(order, orderItems);
+        unsavedSketches.record(order, orderItems);
+        long[] charged = chargedLineCents(order, orderItems);
+        synchronized (salesViewsLock) {
+            if (salesColumns != null) {
+                salesColumns.appendOrder(order, orderItems, charged);
+                salesCube.record(order, orderItems, charged);
+            } else if (pendingSales != null) {
+                pendingSales.add(new OrderSubmission(order, new ArrayList<>(orderItems)));
+            }
+        }
+    }
+
+    /**
+     * Gets the per-day sketches of distinct customers, best-selling menu
+     * items and popular toppings.
+     * 
+     * @return the sales sketches
+     * @author harry
+     */
+    public SalesSketches getSalesSketches() {
+        return salesSketches;
+    }
+
+    /**
+     * Passes a menu price change on to the pricing engine so later orders
+     * are priced, and valued in the sales columns and cube, at the new
+     * price. The views take each line's value from the pricing engine, so
+     * they need no update and no menu reload here.
+     * 
+     * @param itemId   the ID of the menu item
+     * @param newPrice the new price
+     * @author harry
+     */
+    private void registerPriceChange(int itemId, double newPrice) {
+        PricingEngine pricing = pricingEngine;
+        if (pricing != null) {
+            pricing.setPrice(itemId, newPrice);
+        }
+    }
+
     /**
      * Closes the database connection.
      * This method is expected by ManagerUI.
@@ -746,12 +2612,38 @@ public class DatabaseManager {
     }
 
     /**
-     * Closes the database connection.
+     * Closes the database connection, saves the sales cube if this process
+     * owns it and adds the sketches of this session's orders to the sketch
+     * file. In mock data mode the offline state is checkpointed to disk as well;
+     * otherwise queued stock deductions are flushed.
      * 
      * @author harry
      */
     public void close() {
-        if (connection != null && !useMockData) {
+        ReportScheduler scheduler;
+        synchronized (this) {
+            scheduler = reportScheduler;
+        }
+        if (scheduler != null) {
+            scheduler.stop();
+        }
+        StockLedger ledger = sharedLedger;
+        if (ledger != null && !usingMockData()) {
+            ledger.flush();
+        }
+        if (usingMockData()) {
+            checkpoint();
+        }
+        SalesCube cube = salesCube;
+        if (cube != null && savesSalesCube) {
+            cube.stopPersisting(SalesCube.DEFAULT_PATH);
+        }
+        try {
+            unsavedSketches.flushTo(SalesSketches.DEFAULT_PATH);
+        } catch (IOException e) {
+            System.err.println("Error saving sales sketches: " + e.getMessage());
+        }
+        if (connection != null && !usingMockData()) {
             try {
                 connection.close();
             } catch (SQLException e) {
@@ -792,44 +2684,38 @@ public class DatabaseManager {
 
     /**
      * Validates if there's sufficient inventory for an order before processing.
+     * Recipe and topping requirements are summed per ingredient, so the
+     * check costs the same few queries however many drinks the order has.
      * 
      * @param orderItems List of OrderItem objects to validate
      * @return true if sufficient inventory exists, false otherwise
      * @author harry
      */
     public boolean validateInventoryForOrder(List<OrderItem> orderItems) {
-        if (useMockData) {
+        if (usingMockData()) {
             return mockProvider.validateInventoryForOrder(orderItems);
         }
 
         try {
-            for (OrderItem orderItem : orderItems) {
-                // Get all ingredients needed for this menu item
-                String checkQuery = "SELECT i.ingredientID, i.ingredientCount, mi.ingredientQty " +
-                                   "FROM inventory i " +
-                                   "INNER JOIN MenuItemIngredients mi ON i.ingredientID = mi.ingredientID " +
-                                   "WHERE mi.menuItemID = ?";
-                
-                try (PreparedStatement stmt = connection.prepareStatement(checkQuery)) {
-                    stmt.setInt(1, orderItem.getMenuItemID());
-                    
-                    try (ResultSet rs = stmt.executeQuery()) {
-                        while (rs.next()) {
-                            int available = rs.getInt("ingredientCount");
-                            int requiredPerDrink = rs.getInt("ingredientQty");
-                            int totalRequired = requiredPerDrink * orderItem.getQuantity();
-                            
-                            if (available < totalRequired) {
-                                System.err.println("Insufficient inventory for ingredient ID: " + rs.getInt("ingredientID") + 
-                                                 " (Available: " + available + ", Required: " + totalRequired + ")");
-                                return false;
-                            }
-                        }
-                    }
+            RecipeBook recipes = queryRecipeBook(orderItems.stream()
+                    .map(OrderItem::getMenuItemID).collect(Collectors.toSet()));
+            Map<Integer, Integer> needed = recipes.requirementsFor(orderItems);
+            if (needed.isEmpty()) {
+                return true;
+            }
+
+            // Inside createOrder's transaction this also holds the rows until commit
+            Map<Integer, Integer> stock = lockInventory(needed.keySet());
+            for (Map.Entry<Integer, Integer> entry : needed.entrySet()) {
+                int available = stock.getOrDefault(entry.getKey(), 0);
+                if (available < entry.getValue()) {
+                    System.err.println("Insufficient inventory for ingredient ID: " + entry.getKey() +
+                            " (Available: " + available + ", Required: " + entry.getValue() + ")");
+                    return false;
                 }
             }
             return true;
-            
+
         } catch (SQLException e) {
             System.err.println("Error validating inventory: " + e.getMessage());
             return false;
@@ -837,51 +2723,25 @@ public class DatabaseManager {
     }
 
     /**
-     * Updates inventory by decrementing ingredient quantities when an order is placed.
+     * Updates inventory by decrementing ingredient quantities when an order is
+     * placed. The drinks' recipes and toppings are summed per ingredient and
+     * applied with a single UPDATE.
      * 
      * @param orderItems List of OrderItem objects from the completed order
      * @return true if inventory update was successful, false otherwise
      * @author harry
      */
     public boolean updateInventoryForOrder(List<OrderItem> orderItems) {
-        if (useMockData) {
+        if (usingMockData()) {
             return mockProvider.updateInventoryForOrder(orderItems);
         }
 
         try {
-            for (OrderItem orderItem : orderItems) {
-                // Get required ingredients for this menu item from MenuItemIngredients table
-                String ingredientQuery = "SELECT ingredientID, ingredientQty FROM MenuItemIngredients WHERE menuItemID = ?";
-                
-                try (PreparedStatement ingredientStmt = connection.prepareStatement(ingredientQuery)) {
-                    ingredientStmt.setInt(1, orderItem.getMenuItemID());
-                    
-                    try (ResultSet rs = ingredientStmt.executeQuery()) {
-                        while (rs.next()) {
-                            int ingredientID = rs.getInt("ingredientID");
-                            int requiredPerDrink = rs.getInt("ingredientQty");
-                            int totalNeeded = requiredPerDrink * orderItem.getQuantity();
-                            
-                            // Update inventory by decrementing
-                            String updateQuery = "UPDATE inventory SET ingredientCount = ingredientCount - ? WHERE ingredientID = ?";
-                            try (PreparedStatement updateStmt = connection.prepareStatement(updateQuery)) {
-                                updateStmt.setInt(1, totalNeeded);
-                                updateStmt.setInt(2, ingredientID);
-                                
-                                int rowsAffected = updateStmt.executeUpdate();
-                                if (rowsAffected == 0) {
-                                    throw new SQLException("Ingredient not found: " + ingredientID);
-                                }
-                                
-                                System.out.println("Updated inventory: Ingredient " + ingredientID + 
-                                                 " decremented by " + totalNeeded);
-                            }
-                        }
-                    }
-                }
-            }
+            RecipeBook recipes = queryRecipeBook(orderItems.stream()
+                    .map(OrderItem::getMenuItemID).collect(Collectors.toSet()));
+            deductInventory(recipes.requirementsFor(orderItems));
             return true;
-            
+
         } catch (SQLException e) {
             System.err.println("Error updating inventory: " + e.getMessage());
             return false;
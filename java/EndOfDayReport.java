@@ -0,0 +1,370 @@
+package New_Additions;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * EndOfDayReport produces the closing (Z) report. Total sales, product
+ * usage, ingredient usage, per-employee sales, category and hourly
+ * breakdowns are all computed from a single pass over the day's order
+ * lines: each registered accumulator sees every line of that one stream
+ * instead of running its own query.
+ *
+ * Every section is a map of additive values, so reports for several days
+ * can be summed with {@link #merge}.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class EndOfDayReport {
+
+    /** Directory report files are written to */
+    public static final Path REPORT_DIR = Paths.get("z_reports");
+
+    /**
+     * Computes one section of the report from the stream of order lines.
+     */
+    public interface Accumulator {
+        /**
+         * Gets the title of the section this accumulator fills.
+         *
+         * @return the section title
+         */
+        String getSection();
+
+        /**
+         * Adds one order line; the line object is reused for the next row.
+         *
+         * @param line the current order line
+         */
+        void accept(OrderLine line);
+
+        /**
+         * Gets the section's values once every line has been seen.
+         *
+         * @return Map of row label to value
+         */
+        Map<String, Double> getResult();
+    }
+
+    private final DatabaseManager dbManager;
+    private final List<Supplier<Accumulator>> accumulators = new ArrayList<>();
+
+    /**
+     * Constructs a report engine with the standard sections registered.
+     *
+     * @param dbManager the DatabaseManager to read orders from
+     * @author harry
+     */
+    public EndOfDayReport(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+        register(TotalSales::new);
+        register(() -> new SumByKey("Product Usage", line -> line.getMenuItemName(), line -> line.getQuantity()));
+        register(() -> new IngredientUsage(dbManager));
+        register(() -> new EmployeeSales(dbManager));
+        register(() -> new SumByKey("Category Units", line -> line.getDrinkCategory(), line -> line.getQuantity()));
+        register(() -> new SumByKey("Hourly Units",
+                line -> String.format("%02d:00", new Timestamp(line.getTimeOfOrder()).toLocalDateTime().getHour()),
+                line -> line.getQuantity()));
+    }
+
+    /**
+     * Registers another section. The supplier is called once per run, so
+     * accumulators can keep their state in fields.
+     *
+     * @param accumulator creates a fresh accumulator for each run
+     * @author harry
+     */
+    public void register(Supplier<Accumulator> accumulator) {
+        accumulators.add(accumulator);
+    }
+
+    /**
+     * Runs every registered section over one day.
+     *
+     * @param day the business day
+     * @return Map of section title to its values, in registration order
+     * @throws SQLException if the orders cannot be read
+     * @throws IOException if a section fails
+     * @author harry
+     */
+    public Map<String, Map<String, Double>> run(LocalDate day) throws SQLException, IOException {
+        return run(day, day);
+    }
+
+    /**
+     * Runs every registered section over a range of days with one scan.
+     *
+     * @param from the first day, inclusive
+     * @param to the last day, inclusive
+     * @return Map of section title to its values, in registration order
+     * @throws SQLException if the orders cannot be read
+     * @throws IOException if a section fails
+     * @author harry
+     */
+    public Map<String, Map<String, Double>> run(LocalDate from, LocalDate to) throws SQLException, IOException {
+        return run(Timestamp.valueOf(from.atStartOfDay()), Timestamp.valueOf(to.plusDays(1).atStartOfDay()));
+    }
+
+    /**
+     * Runs every registered section over the orders in a time range with one
+     * scan.
+     *
+     * @param from the inclusive start of the range
+     * @param to the exclusive end of the range
+     * @return Map of section title to its values, in registration order
+     * @throws SQLException if the orders cannot be read
+     * @throws IOException if a section fails
+     * @author harry
+     */
+    public Map<String, Map<String, Double>> run(Timestamp from, Timestamp to) throws SQLException, IOException {
+        List<Accumulator> active = new ArrayList<>(accumulators.size());
+        for (Supplier<Accumulator> supplier : accumulators) {
+            active.add(supplier.get());
+        }
+
+        dbManager.streamOrderLines(from, to, null, line -> {
+            for (Accumulator accumulator : active) {
+                accumulator.accept(line);
+            }
+        });
+
+        Map<String, Map<String, Double>> sections = new LinkedHashMap<>();
+        for (Accumulator accumulator : active) {
+            sections.put(accumulator.getSection(), accumulator.getResult());
+        }
+        return sections;
+    }
+
+    /**
+     * Adds the values of one report into another, section by section and
+     * row by row.
+     *
+     * @param into the report to add to
+     * @param from the report to add
+     * @author harry
+     */
+    public static void merge(Map<String, Map<String, Double>> into, Map<String, Map<String, Double>> from) {
+        for (Map.Entry<String, Map<String, Double>> section : from.entrySet()) {
+            Map<String, Double> target = into.computeIfAbsent(section.getKey(), k -> new LinkedHashMap<>());
+            section.getValue().forEach((key, value) -> target.merge(key, value, Double::sum));
+        }
+    }
+
+    /**
+     * Writes a report as a plain text file.
+     *
+     * @param file the file to write; it is replaced if it exists
+     * @param title the report heading
+     * @param sections the report, as returned by {@link #run}
+     * @throws IOException if the file cannot be written
+     * @author harry
+     */
+    public static void write(Path file, String title, Map<String, Map<String, Double>> sections)
+            throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(title);
+            writer.newLine();
+            writer.write("Generated " + LocalDateTime.now().withNano(0));
+            writer.newLine();
+            for (Map.Entry<String, Map<String, Double>> section : sections.entrySet()) {
+                writer.newLine();
+                writer.write("== " + section.getKey() + " ==");
+                writer.newLine();
+                for (Map.Entry<String, Double> row : section.getValue().entrySet()) {
+                    double value = row.getValue();
+                    String formatted = value == Math.rint(value) ? String.format("%,.0f", value)
+                            : String.format("%,.2f", value);
+                    writer.write(String.format("%-32s %14s", row.getKey(), formatted));
+                    writer.newLine();
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts orders and sums order totals; each order is counted on its
+     * first line only.
+     */
+    private static class TotalSales implements Accumulator {
+        private int lastOrderId = Integer.MIN_VALUE;
+        private double orders;
+        private double drinks;
+        private double sales;
+
+        @Override
+        public String getSection() {
+            return "Total Sales";
+        }
+
+        @Override
+        public void accept(OrderLine line) {
+            if (line.getOrderID() != lastOrderId) {
+                lastOrderId = line.getOrderID();
+                orders++;
+                sales += line.getTotalCost();
+            }
+            drinks += line.getQuantity();
+        }
+
+        @Override
+        public Map<String, Double> getResult() {
+            Map<String, Double> result = new LinkedHashMap<>();
+            result.put("Orders", orders);
+            result.put("Drinks", drinks);
+            result.put("Sales", Math.round(sales * 100) / 100.0);
+            return result;
+        }
+    }
+
+    /**
+     * Sums a value per key, sorted by key.
+     */
+    private static class SumByKey implements Accumulator {
+        private final String section;
+        private final Function<OrderLine, String> key;
+        private final ToDoubleFunction<OrderLine> value;
+        private final Map<String, Double> sums = new TreeMap<>();
+
+        SumByKey(String section, Function<OrderLine, String> key,
+                ToDoubleFunction<OrderLine> value) {
+            this.section = section;
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String getSection() {
+            return section;
+        }
+
+        @Override
+        public void accept(OrderLine line) {
+            String label = key.apply(line);
+            sums.merge(label == null ? "Unknown" : label, value.applyAsDouble(line), Double::sum);
+        }
+
+        @Override
+        public Map<String, Double> getResult() {
+            return sums;
+        }
+    }
+
+    /**
+     * Turns drinks sold into ingredient quantities through the recipes and
+     * the ingredients their toppings draw from.
+     */
+    private static class IngredientUsage implements Accumulator {
+        private final RecipeBook recipes;
+        private final Map<Integer, String> ingredientNames = new HashMap<>();
+        private final Map<Integer, Double> usage = new TreeMap<>();
+
+        IngredientUsage(DatabaseManager dbManager) {
+            List<Inventory> inventory = dbManager.getAllInventory();
+            this.recipes = new RecipeBook(dbManager.getAllRecipes(), inventory);
+            for (Inventory item : inventory) {
+                ingredientNames.put(item.getIngredientID(), item.getIngredientName());
+            }
+        }
+
+        @Override
+        public String getSection() {
+            return "Ingredient Usage";
+        }
+
+        @Override
+        public void accept(OrderLine line) {
+            recipes.requirementsFor(List.of(line.getOrderItem()))
+                    .forEach((id, qty) -> usage.merge(id, (double) qty, Double::sum));
+        }
+
+        @Override
+        public Map<String, Double> getResult() {
+            Map<String, Double> result = new TreeMap<>();
+            usage.forEach((id, qty) -> result.merge(ingredientNames.getOrDefault(id, "Ingredient #" + id),
+                    qty, Double::sum));
+            return result;
+        }
+    }
+
+    /**
+     * Sums order totals per employee.
+     */
+    private static class EmployeeSales implements Accumulator {
+        private final Map<Integer, String> employeeNames = new HashMap<>();
+        private final Map<String, Double> sales = new TreeMap<>();
+        private int lastOrderId = Integer.MIN_VALUE;
+
+        EmployeeSales(DatabaseManager dbManager) {
+            for (Employee employee : dbManager.getAllEmployees()) {
+                employeeNames.put(employee.getEmployeeID(), employee.getEmployeeName());
+            }
+        }
+
+        @Override
+        public String getSection() {
+            return "Employee Sales";
+        }
+
+        @Override
+        public void accept(OrderLine line) {
+            if (line.getOrderID() == lastOrderId) {
+                return;
+            }
+            lastOrderId = line.getOrderID();
+            String name = employeeNames.getOrDefault(line.getEmployeeID(), "Employee #" + line.getEmployeeID());
+            sales.merge(name, line.getTotalCost(), Double::sum);
+        }
+
+        @Override
+        public Map<String, Double> getResult() {
+            sales.replaceAll((name, total) -> Math.round(total * 100) / 100.0);
+            return sales;
+        }
+    }
+
+    /**
+     * Command line entry point. Writes z_reports/z-report-DATE.txt.
+     * Usage: EndOfDayReport [date]
+     *
+     * @param args optional ISO date, today by default
+     * @author harry
+     */
+    public static void main(String[] args) {
+        LocalDate day = args.length > 0 ? LocalDate.parse(args[0]) : LocalDate.now();
+        DatabaseManager dbManager = new DatabaseManager();
+        try {
+            long start = System.nanoTime();
+            Map<String, Map<String, Double>> report = new EndOfDayReport(dbManager).run(day);
+            Path file = REPORT_DIR.resolve("z-report-" + day + ".txt");
+            write(file, "Z Report for " + day, report);
+            System.out.printf("Wrote %s in %d ms%n", file, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | SQLException e) {
+            System.err.println("End of day report failed: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            dbManager.close();
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package New_Additions;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * InventoryReservations lets carts in progress hold the ingredients they
+ * need, so two terminals cannot both sell the last portions of an
+ * ingredient. A cart opens a {@link Reservation}, adds holds to it as lines
+ * are added, and either releases it when the order is cleared or commits it
+ * when the order is stored, which turns the holds into stock decrements.
+ *
+ * The ledger is split into lock stripes by ingredient ID. A reservation
+ * locks only the stripes of the ingredients it touches, always in ascending
+ * stripe order, so terminals working on different ingredients never wait
+ * for each other and the all-or-nothing check cannot deadlock.
+ *
+ * Reservations that are neither committed nor released, for example from a
+ * terminal that crashed, expire after a time to live. Expiry is driven by a
+ * hashed timer wheel with one slot per second, so reclaiming holds costs
+ * nothing per reservation until its slot comes round.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class InventoryReservations {
+
+    /** Default time a reservation lives after its last hold */
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final int STRIPES = 16;
+    private static final long TICK_MILLIS = 1_000;
+    private static final int WHEEL_SLOTS = 512;
+
+    /** One lock stripe: stock and reserved quantity of its ingredients. */
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        /** Ingredient ID to {stock, reserved} */
+        final Map<Integer, int[]> ledger = new HashMap<>();
+
+        int[] entry(int ingredientId) {
+            return ledger.computeIfAbsent(ingredientId, k -> new int[2]);
+        }
+    }
+
+    /** The holds of one cart. */
+    public final class Reservation {
+        /** Ingredient ID to quantity held; guarded by this reservation's monitor */
+        private final Map<Integer, Integer> held = new HashMap<>();
+        private volatile long expiresAt;
+        private boolean closed;
+        private boolean scheduled;
+
+        private Reservation() {
+        }
+
+        /**
+         * Gets the quantities held.
+         *
+         * @return Map of ingredient ID to quantity held
+         * @author harry
+         */
+        public synchronized Map<Integer, Integer> getHeld() {
+            return new HashMap<>(held);
+        }
+
+        /**
+         * Checks whether the reservation was committed, released or expired.
+         *
+         * @return true if it no longer holds anything
+         * @author harry
+         */
+        public synchronized boolean isClosed() {
+            return closed;
+        }
+    }
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ConcurrentLinkedQueue<Reservation>[] wheel = new ConcurrentLinkedQueue[WHEEL_SLOTS];
+    private final long ttlMillis;
+    private volatile RecipeBook recipes;
+    private long lastTick;
+    private ScheduledExecutorService timer;
+
+    /**
+     * Constructs a ledger over the current stock.
+     *
+     * @param recipes the recipes, with toppings mapped to inventory items
+     * @param inventory the current inventory
+     * @param ttlMillis how long a reservation lives after its last hold
+     * @author harry
+     */
+    public InventoryReservations(RecipeBook recipes, Collection<Inventory> inventory, long ttlMillis) {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+        for (int i = 0; i < WHEEL_SLOTS; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        for (Inventory item : inventory) {
+            stripeOf(item.getIngredientID()).entry(item.getIngredientID())[0] = item.getIngredientCount();
+        }
+        this.recipes = recipes;
+        this.ttlMillis = ttlMillis;
+        this.lastTick = System.currentTimeMillis() / TICK_MILLIS;
+    }
+
+    /**
+     * Starts the timer that reclaims expired reservations.
+     *
+     * @author harry
+     */
+    public synchronized void start() {
+        if (timer != null) {
+            return;
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reservation-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(() -> expire(System.currentTimeMillis()), TICK_MILLIS, TICK_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the expiry timer.
+     *
+     * @author harry
+     */
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.shutdown();
+            timer = null;
+        }
+    }
+
+    /**
+     * Replaces the recipes used to work out what a line needs, for example
+     * after a new inventory item starts stocking a topping.
+     *
+     * @param recipes the new recipes
+     * @author harry
+     */
+    public void setRecipes(RecipeBook recipes) {
+        this.recipes = recipes;
+    }
+
+    /**
+     * Opens an empty reservation for a new cart.
+     *
+     * @return the reservation
+     * @author harry
+     */
+    public Reservation open() {
+        return new Reservation();
+    }
+
+    /**
+     * Holds the ingredients for more order items, all or nothing, and
+     * extends the reservation's time to live.
+     *
+     * @param reservation the cart's reservation
+     * @param orderItems the items being added
+     * @return true if everything was held, false if some ingredient is
+     *         short once other carts' holds are counted
+     * @author harry
+     */
+    public boolean reserve(Reservation reservation, List<OrderItem> orderItems) {
+        Map<Integer, Integer> needed = recipes.requirementsFor(orderItems);
+        synchronized (reservation) {
+            if (reservation.closed) {
+                throw new IllegalStateException("Reservation is closed");
+            }
+            int[] locked = lockStripes(needed.keySet());
+            try {
+                for (Map.Entry<Integer, Integer> entry : needed.entrySet()) {
+                    int[] ledger = stripeOf(entry.getKey()).entry(entry.getKey());
+                    if (ledger[0] - ledger[1] < entry.getValue()) {
+                        return false;
+                    }
+                }
+                for (Map.Entry<Integer, Integer> entry : needed.entrySet()) {
+                    stripeOf(entry.getKey()).entry(entry.getKey())[1] += entry.getValue();
+                    reservation.held.merge(entry.getKey(), entry.getValue(), Integer::sum);
+                }
+            } finally {
+                unlockStripes(locked);
+            }
+            reservation.expiresAt = System.currentTimeMillis() + ttlMillis;
+            if (!reservation.scheduled) {
+                reservation.scheduled = true;
+                wheel[slotOf(reservation.expiresAt)].add(reservation);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Gives back everything a reservation holds. Does nothing if it is
+     * already closed.
+     *
+     * @param reservation the reservation to release
+     * @author harry
+     */
+    public void release(Reservation reservation) {
+        close(reservation, false);
+    }
+
+    /**
+     * Turns a reservation's holds into stock decrements once its order is
+     * stored. Does nothing if it is already closed.
+     *
+     * @param reservation the reservation of the stored order
+     * @return true if the holds were converted, false if the reservation had
+     *         expired or was already closed
+     * @author harry
+     */
+    public boolean commit(Reservation reservation) {
+        return close(reservation, true);
+    }
+
+    private boolean close(Reservation reservation, boolean consume) {
+        synchronized (reservation) {
+            if (reservation.closed) {
+                return false;
+            }
+            reservation.closed = true;
+            int[] locked = lockStripes(reservation.held.keySet());
+            try {
+                for (Map.Entry<Integer, Integer> entry : reservation.held.entrySet()) {
+                    int[] ledger = stripeOf(entry.getKey()).entry(entry.getKey());
+                    ledger[1] -= entry.getValue();
+                    if (consume) {
+                        ledger[0] -= entry.getValue();
+                    }
+                }
+            } finally {
+                unlockStripes(locked);
+            }
+            reservation.held.clear();
+            return true;
+        }
+    }
+
+    /**
+     * Removes the stock used by an order stored without a reservation.
+     *
+     * @param orderItems the items of the order
+     * @author harry
+     */
+    public void recordOrder(List<OrderItem> orderItems) {
+        Map<Integer, Integer> used = recipes.requirementsFor(orderItems);
+        int[] locked = lockStripes(used.keySet());
+        try {
+            for (Map.Entry<Integer, Integer> entry : used.entrySet()) {
+                stripeOf(entry.getKey()).entry(entry.getKey())[0] -= entry.getValue();
+            }
+        } finally {
+            unlockStripes(locked);
+        }
+    }
+
+    /**
+     * Sets the stock of one ingredient, for example after a manager
+     * corrects a count. Existing holds are kept.
+     *
+     * @param ingredientId the ingredient ID
+     * @param count the new stock
+     * @author harry
+     */
+    public void setStock(int ingredientId, int count) {
+        Stripe stripe = stripeOf(ingredientId);
+        stripe.lock.lock();
+        try {
+            stripe.entry(ingredientId)[0] = count;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the stock of an ingredient not held by any cart.
+     *
+     * @param ingredientId the ingredient ID
+     * @return the stock less all holds
+     * @author harry
+     */
+    public int getAvailable(int ingredientId) {
+        Stripe stripe = stripeOf(ingredientId);
+        stripe.lock.lock();
+        try {
+            int[] ledger = stripe.ledger.get(ingredientId);
+            return ledger == null ? 0 : ledger[0] - ledger[1];
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Advances the timer wheel to a time, releasing every reservation whose
+     * time to live has passed. Reservations extended since they were
+     * scheduled move to the slot of their new expiry.
+     *
+     * @param now the current time in milliseconds
+     * @author harry
+     */
+    synchronized void expire(long now) {
+        long tick = now / TICK_MILLIS;
+        // After a long pause every slot is due once; no need to go round again
+        long from = Math.max(lastTick + 1, tick - WHEEL_SLOTS + 1);
+        for (long t = from; t <= tick; t++) {
+            ConcurrentLinkedQueue<Reservation> slot = wheel[(int) (t % WHEEL_SLOTS)];
+            for (int pending = slot.size(); pending > 0; pending--) {
+                Reservation reservation = slot.poll();
+                if (reservation == null) {
+                    break;
+                }
+                synchronized (reservation) {
+                    if (reservation.closed) {
+                        continue;
+                    }
+                    if (reservation.expiresAt > now) {
+                        wheel[slotOf(reservation.expiresAt)].add(reservation);
+                        continue;
+                    }
+                }
+                release(reservation);
+            }
+        }
+        lastTick = Math.max(lastTick, tick);
+    }
+
+    private static int slotOf(long time) {
+        return (int) ((time / TICK_MILLIS) % WHEEL_SLOTS);
+    }
+
+    private Stripe stripeOf(int ingredientId) {
+        return stripes[stripeIndex(ingredientId)];
+    }
+
+    private static int stripeIndex(int ingredientId) {
+        int h = ingredientId * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    /** Locks the stripes of a set of ingredients in ascending order. */
+    private int[] lockStripes(Collection<Integer> ingredientIds) {
+        boolean[] needed = new boolean[STRIPES];
+        int count = 0;
+        for (int id : ingredientIds) {
+            int index = stripeIndex(id);
+            if (!needed[index]) {
+                needed[index] = true;
+                count++;
+            }
+        }
+        int[] locked = new int[count];
+        for (int i = 0, n = 0; i < STRIPES; i++) {
+            if (needed[i]) {
+                stripes[i].lock.lock();
+                locked[n++] = i;
+            }
+        }
+        return locked;
+    }
+
+    private void unlockStripes(int[] locked) {
+        for (int i = locked.length - 1; i >= 0; i--) {
+            stripes[locked[i]].lock.unlock();
+        }
+    }
+}
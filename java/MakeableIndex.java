@@ -0,0 +1,113 @@
+package New_Additions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MakeableIndex keeps, for every menu item with a recipe, how many servings
+ * the current stock can make: the minimum over its ingredients of stock
+ * divided by the quantity per drink. A reverse index from ingredient to the
+ * menu items that use it means a stock change only recomputes the items
+ * that use the changed ingredients, instead of rejoining every recipe.
+ *
+ * Writers are serialized; readers such as the cashier screen read the
+ * current counts without locking. The counts are a guide for the cashier;
+ * the stock check when an order is committed is still authoritative.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class MakeableIndex {
+
+    /** Servings reported for menu items without a recipe */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private final RecipeBook recipes;
+    private final Map<Integer, List<Integer>> menuItemsByIngredient = new HashMap<>();
+    private final Map<Integer, Integer> stock = new HashMap<>();
+    private final Map<Integer, Integer> makeable = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an index over a set of recipes and the current stock.
+     *
+     * @param recipes the recipes, with toppings mapped to inventory items
+     * @param inventory the current inventory
+     * @author harry
+     */
+    public MakeableIndex(RecipeBook recipes, Collection<Inventory> inventory) {
+        this.recipes = recipes;
+        for (Inventory item : inventory) {
+            stock.put(item.getIngredientID(), item.getIngredientCount());
+        }
+        for (MenuItemIngredient line : recipes.getAllLines()) {
+            List<Integer> users = menuItemsByIngredient.computeIfAbsent(line.getIngredientID(), k -> new ArrayList<>());
+            if (!users.contains(line.getMenuItemID())) {
+                users.add(line.getMenuItemID());
+            }
+            makeable.putIfAbsent(line.getMenuItemID(), 0);
+        }
+        for (Integer menuItemId : makeable.keySet()) {
+            makeable.put(menuItemId, compute(menuItemId));
+        }
+    }
+
+    /**
+     * Gets how many servings of a menu item the stock can make.
+     *
+     * @param menuItemId the menu item ID
+     * @return the number of servings, or {@link #UNLIMITED} if the item has no recipe
+     * @author harry
+     */
+    public int getMakeable(int menuItemId) {
+        return makeable.getOrDefault(menuItemId, UNLIMITED);
+    }
+
+    /**
+     * Sets the stock of one ingredient, for example after a manager
+     * corrects a count.
+     *
+     * @param ingredientId the ingredient ID
+     * @param count the new stock
+     * @author harry
+     */
+    public synchronized void setStock(int ingredientId, int count) {
+        stock.put(ingredientId, count);
+        refresh(ingredientId);
+    }
+
+    /**
+     * Removes the stock used by a committed order.
+     *
+     * @param orderItems the items of the order
+     * @author harry
+     */
+    public synchronized void recordOrder(List<OrderItem> orderItems) {
+        for (Map.Entry<Integer, Integer> entry : recipes.requirementsFor(orderItems).entrySet()) {
+            stock.merge(entry.getKey(), -entry.getValue(), Integer::sum);
+            refresh(entry.getKey());
+        }
+    }
+
+    /** Recomputes the menu items that use one ingredient. */
+    private void refresh(int ingredientId) {
+        for (int menuItemId : menuItemsByIngredient.getOrDefault(ingredientId, List.of())) {
+            makeable.put(menuItemId, compute(menuItemId));
+        }
+    }
+
+    private int compute(int menuItemId) {
+        int servings = UNLIMITED;
+        for (MenuItemIngredient line : recipes.getRecipe(menuItemId)) {
+            if (line.getIngredientQty() > 0) {
+                int available = Math.max(0, stock.getOrDefault(line.getIngredientID(), 0));
+                servings = Math.min(servings, available / line.getIngredientQty());
+            }
+        }
+        return servings;
+    }
+}
@@ -0,0 +1,137 @@
+package New_Additions;
+
+/**
+ * MenuItemIngredient model class representing one recipe line of a menu item.
+ * Based on the MenuItemIngredients table schema.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class MenuItemIngredient {
+    private int menuItemID;
+    private int ingredientID;
+    private int ingredientQty;
+
+    /**
+     * Default constructor for MenuItemIngredient.
+     *
+     * @author harry
+     */
+    public MenuItemIngredient() {
+    }
+
+    /**
+     * Constructs a new recipe line with specified parameters.
+     *
+     * @param menuItemID the ID of the menu item this line belongs to
+     * @param ingredientID the ID of the inventory item used
+     * @param ingredientQty the quantity of the ingredient used per drink
+     * @author harry
+     */
+    public MenuItemIngredient(int menuItemID, int ingredientID, int ingredientQty) {
+        this.menuItemID = menuItemID;
+        this.ingredientID = ingredientID;
+        this.ingredientQty = ingredientQty;
+    }
+
+    /**
+     * Gets the menu item ID.
+     *
+     * @return the menu item ID
+     * @author harry
+     */
+    public int getMenuItemID() {
+        return menuItemID;
+    }
+
+    /**
+     * Sets the menu item ID.
+     *
+     * @param menuItemID the menu item ID to set
+     * @author harry
+     */
+    public void setMenuItemID(int menuItemID) {
+        this.menuItemID = menuItemID;
+    }
+
+    /**
+     * Gets the ingredient ID.
+     *
+     * @return the ingredient ID
+     * @author harry
+     */
+    public int getIngredientID() {
+        return ingredientID;
+    }
+
+    /**
+     * Sets the ingredient ID.
+     *
+     * @param ingredientID the ingredient ID to set
+     * @author harry
+     */
+    public void setIngredientID(int ingredientID) {
+        this.ingredientID = ingredientID;
+    }
+
+    /**
+     * Gets the quantity of the ingredient used per drink.
+     *
+     * @return the ingredient quantity
+     * @author harry
+     */
+    public int getIngredientQty() {
+        return ingredientQty;
+    }
+
+    /**
+     * Sets the quantity of the ingredient used per drink.
+     *
+     * @param ingredientQty the ingredient quantity to set
+     * @author harry
+     */
+    public void setIngredientQty(int ingredientQty) {
+        this.ingredientQty = ingredientQty;
+    }
+
+    /**
+     * Returns a string representation of the recipe line.
+     *
+     * @return a formatted string containing the menu item, ingredient and quantity
+     * @author harry
+     */
+    @Override
+    public String toString() {
+        return "Item #" + menuItemID + " uses " + ingredientQty + "x Ingredient #" + ingredientID;
+    }
+
+    /**
+     * Compares this recipe line with another object for equality. Two lines are
+     * equal if they link the same menu item and ingredient.
+     *
+     * @param obj the object to compare with
+     * @return true if the objects are equal, false otherwise
+     * @author harry
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        MenuItemIngredient other = (MenuItemIngredient) obj;
+        return menuItemID == other.menuItemID && ingredientID == other.ingredientID;
+    }
+
+    /**
+     * Returns a hash code for this recipe line.
+     *
+     * @return a hash code value for this object
+     * @author harry
+     */
+    @Override
+    public int hashCode() {
+        return 31 * Integer.hashCode(menuItemID) + Integer.hashCode(ingredientID);
+    }
+}
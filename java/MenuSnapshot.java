@@ -0,0 +1,293 @@
+package New_Additions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * MenuSnapshot holds the last known menu, recipe and inventory data and
+ * persists it to a compact, versioned binary file. The file is memory-mapped
+ * when read so the till can start with the shop's real menu before the
+ * database has answered, or when it cannot be reached at all.
+ *
+ * File layout (big-endian): magic, version, saved-at millis, payload length,
+ * CRC32 of the payload, then the menu, inventory and recipe sections, each
+ * prefixed with its record count.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class MenuSnapshot {
+    /** Default location of the snapshot file, next to the .env file */
+    public static final Path DEFAULT_PATH = Paths.get("menu_snapshot.bin");
+
+    private static final int MAGIC = 0x424F4241; // "BOBA"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 2 + 8 + 4 + 4;
+
+    private final long savedAt;
+    private final long checksum;
+    private final List<MenuItem> menuItems;
+    private final List<Inventory> inventory;
+    private final List<MenuItemIngredient> recipes;
+
+    /**
+     * Constructs a new snapshot of the given data, stamped with the current time.
+     *
+     * @param menuItems the menu items to capture
+     * @param inventory the inventory items to capture
+     * @param recipes the recipe lines to capture
+     * @author harry
+     */
+    public MenuSnapshot(List<MenuItem> menuItems, List<Inventory> inventory, List<MenuItemIngredient> recipes) {
+        this(System.currentTimeMillis(), -1, menuItems, inventory, recipes);
+    }
+
+    private MenuSnapshot(long savedAt, long checksum, List<MenuItem> menuItems, List<Inventory> inventory,
+            List<MenuItemIngredient> recipes) {
+        this.savedAt = savedAt;
+        this.checksum = checksum;
+        this.menuItems = new ArrayList<>(menuItems);
+        this.inventory = new ArrayList<>(inventory);
+        this.recipes = new ArrayList<>(recipes);
+    }
+
+    /**
+     * Gets the time this snapshot was taken.
+     *
+     * @return the snapshot time in epoch milliseconds
+     * @author harry
+     */
+    public long getSavedAt() {
+        return savedAt;
+    }
+
+    /**
+     * Retrieves the menu items captured in this snapshot.
+     *
+     * @return List of MenuItem objects
+     * @author harry
+     */
+    public List<MenuItem> getMenuItems() {
+        return new ArrayList<>(menuItems);
+    }
+
+    /**
+     * Retrieves the inventory items captured in this snapshot.
+     *
+     * @return List of Inventory objects
+     * @author harry
+     */
+    public List<Inventory> getInventory() {
+        return new ArrayList<>(inventory);
+    }
+
+    /**
+     * Retrieves the recipe lines captured in this snapshot.
+     *
+     * @return List of MenuItemIngredient objects
+     * @author harry
+     */
+    public List<MenuItemIngredient> getRecipes() {
+        return new ArrayList<>(recipes);
+    }
+
+    /**
+     * Checks whether this snapshot holds the same data as another one, without
+     * comparing the time they were taken.
+     *
+     * @param other the snapshot to compare with
+     * @return true if both snapshots would be written with the same payload
+     * @author harry
+     */
+    public boolean sameContentAs(MenuSnapshot other) {
+        try {
+            return other != null && checksum() == other.checksum();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes this snapshot to disk. The file is written to a temporary sibling
+     * first and then moved into place, so a crash never leaves a torn snapshot.
+     *
+     * @param path the file to write
+     * @throws IOException if the file cannot be written
+     * @author harry
+     */
+    public void save(Path path) throws IOException {
+        byte[] payload = encodePayload();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        header.putLong(savedAt);
+        header.putInt(payload.length);
+        header.putInt((int) crc.getValue());
+        header.flip();
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer body = ByteBuffer.wrap(payload);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (body.hasRemaining()) {
+                channel.write(body);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot by memory-mapping the given file.
+     *
+     * @param path the snapshot file to read
+     * @return the decoded snapshot
+     * @throws IOException if the file is missing, corrupt or from a newer version
+     * @author harry
+     */
+    public static MenuSnapshot load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Snapshot file is truncated: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a menu snapshot: " + path);
+            }
+            short version = buffer.getShort();
+            if (version > VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            long savedAt = buffer.getLong();
+            int length = buffer.getInt();
+            int expectedCrc = buffer.getInt();
+            if (buffer.remaining() != length) {
+                throw new IOException("Snapshot payload length mismatch: " + path);
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice());
+            if ((int) crc.getValue() != expectedCrc) {
+                throw new IOException("Snapshot checksum mismatch: " + path);
+            }
+
+            List<MenuItem> menuItems = new ArrayList<>();
+            int menuCount = buffer.getInt();
+            for (int i = 0; i < menuCount; i++) {
+                int id = buffer.getInt();
+                String category = readString(buffer);
+                String name = readString(buffer);
+                double price = buffer.getDouble();
+                menuItems.add(new MenuItem(id, category, name, price));
+            }
+
+            List<Inventory> inventory = new ArrayList<>();
+            int inventoryCount = buffer.getInt();
+            for (int i = 0; i < inventoryCount; i++) {
+                int id = buffer.getInt();
+                String name = readString(buffer);
+                int count = buffer.getInt();
+                inventory.add(new Inventory(id, name, count));
+            }
+
+            List<MenuItemIngredient> recipes = new ArrayList<>();
+            int recipeCount = buffer.getInt();
+            for (int i = 0; i < recipeCount; i++) {
+                recipes.add(new MenuItemIngredient(buffer.getInt(), buffer.getInt(), buffer.getInt()));
+            }
+
+            return new MenuSnapshot(savedAt, crc.getValue(), menuItems, inventory, recipes);
+        }
+    }
+
+    /**
+     * Computes the CRC32 of the encoded payload, reusing the value read from disk
+     * when there is one.
+     */
+    private long checksum() throws IOException {
+        if (checksum >= 0) {
+            return checksum;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(encodePayload());
+        return crc.getValue();
+    }
+
+    /**
+     * Encodes the menu, inventory and recipe sections.
+     */
+    private byte[] encodePayload() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(menuItems.size());
+            for (MenuItem item : menuItems) {
+                out.writeInt(item.getMenuItemID());
+                writeString(out, item.getDrinkCategory());
+                writeString(out, item.getMenuItemName());
+                out.writeDouble(item.getPrice());
+            }
+
+            out.writeInt(inventory.size());
+            for (Inventory item : inventory) {
+                out.writeInt(item.getIngredientID());
+                writeString(out, item.getIngredientName());
+                out.writeInt(item.getIngredientCount());
+            }
+
+            out.writeInt(recipes.size());
+            for (MenuItemIngredient line : recipes) {
+                out.writeInt(line.getMenuItemID());
+                out.writeInt(line.getIngredientID());
+                out.writeInt(line.getIngredientQty());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string; null is written as length -1.
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutputStream, String)}.
+     */
+    static String readString(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
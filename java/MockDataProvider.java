@@ -1,29 +1,57 @@
 package New_Additions;
 
 import java.sql.Timestamp;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * MockDataProvider provides mock data for testing and development purposes.
  * This class simulates database operations when a real database connection
  * is not available.
  * 
+ * Data is kept in concurrent primary-key maps with atomic ID counters, plus
+ * secondary indexes on name, category and order time, so several terminals
+ * can share one provider and lookups do not scan whole tables. Orders deduct
+ * their recipe ingredients with a lock-striped check-and-decrement, so stock
+ * outs and contention show up in local mode the same way they do in production.
+ * 
  * @author harry
  * @version 1.0
  * @since 2024
  */
 public class MockDataProvider {
-    private List<MenuItem> menuItems;
-    private List<Inventory> inventory;
-    private List<Employee> employees;
-    private List<Order> orders;
-    private List<OrderItem> orderItems;
-
-    private int nextMenuItemId = 1;
-    private int nextInventoryId = 1;
-    private int nextEmployeeId = 1;
-    private int nextOrderId = 1;
-    private int nextOrderItemId = 1;
+    private final Map<Integer, MenuItem> menuItems = new ConcurrentSkipListMap<>();
+    private final Map<Integer, Inventory> inventory = new ConcurrentSkipListMap<>();
+    private final Map<Integer, Employee> employees = new ConcurrentSkipListMap<>();
+    private final Map<Integer, Order> orders = new ConcurrentHashMap<>();
+    private final Map<Integer, OrderItem> orderItems = new ConcurrentHashMap<>();
+    private volatile RecipeBook recipeBook = new RecipeBook(List.of());
+
+    // Secondary indexes
+    private final Map<String, Integer> menuItemsByName = new ConcurrentHashMap<>();
+    private final Map<String, Set<Integer>> menuItemsByCategory = new ConcurrentHashMap<>();
+    private final Map<String, Integer> inventoryByName = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, Set<Integer>> ordersByTime = new ConcurrentSkipListMap<>();
+    private final Map<Integer, List<OrderItem>> itemsByOrder = new ConcurrentHashMap<>();
+    private final Map<UUID, Integer> ordersByKey = new ConcurrentHashMap<>();
+
+    private final AtomicInteger nextMenuItemId = new AtomicInteger(1);
+    private final AtomicInteger nextInventoryId = new AtomicInteger(1);
+    private final AtomicInteger nextEmployeeId = new AtomicInteger(1);
+    private final AtomicInteger nextOrderId = new AtomicInteger(1);
+    private final AtomicInteger nextOrderItemId = new AtomicInteger(1);
+
+    /** Number of lock stripes guarding ingredient counts (power of two) */
+    private static final int STOCK_STRIPES = 16;
+    private final ReentrantLock[] stockLocks = new ReentrantLock[STOCK_STRIPES];
+    private final LongAdder stockOuts = new LongAdder();
+    private final LongAdder stockLockContention = new LongAdder();
 
     /**
      * Constructs a new MockDataProvider and initializes mock data.
@@ -31,6 +59,9 @@ public class MockDataProvider {
      * @author harry
      */
     public MockDataProvider() {
+        for (int i = 0; i < STOCK_STRIPES; i++) {
+            stockLocks[i] = new ReentrantLock();
+        }
         initializeMockData();
     }
 
@@ -42,6 +73,7 @@ public class MockDataProvider {
     private void initializeMockData() {
         initializeMenuItems();
         initializeInventory();
+        initializeRecipes();
         initializeEmployees();
         initializeOrders();
     }
@@ -52,37 +84,35 @@ public class MockDataProvider {
      * @author harry
      */
     private void initializeMenuItems() {
-        menuItems = new ArrayList<>();
-
         // Milk Tea category
-        menuItems.add(new MenuItem(nextMenuItemId++, "Milk Tea", "Classic Milk Tea", 4.50));
-        menuItems.add(new MenuItem(nextMenuItemId++, "Milk Tea", "Taro Milk Tea", 5.00));
-        menuItems.add(new MenuItem(nextMenuItemId++, "Milk Tea", "Thai Milk Tea", 4.75));
-        menuItems.add(new MenuItem(nextMenuItemId++, "Milk Tea", "Matcha Milk Tea", 5.25));
-        menuItems.add(new MenuItem(nextMenuItemId++, "Milk Tea", "Honeydew Milk Tea", 4.75));
+        putMenuItem(new MenuItem(nextMenuItemId.getAndIncrement(), "Milk Tea", "Classic Milk Tea", 4.50));
+        putMenuItem(new MenuItem(nextMenuItemId.getAndIncrement(), "Milk Tea", "Taro Milk Tea", 5.00));
+        putMenuItem(new MenuItem(nextMenuItemId.getAndIncrement(), "Milk Tea", "Thai Milk Tea", 4.75));
+        putMenuItem(new MenuItem(nextMenuItemId.getAndIncrement(), "Milk Tea", "Matcha Milk Tea", 5.25));
+        putMenuItem(new MenuItem(nextMenuItemId.getAndIncrement(), "Milk Tea", "Honeydew Milk Tea", 4.75));
 
         // Fruit Tea category
-        menuItems.add(new MenuItem(nextMenuItemId++, "Fruit Tea", "Passion Fruit Tea", 4.25));
-        menuItems.add(new MenuItem(nextMenuItemId++, "Fruit Tea", "Mango Green Tea", 4.50));
-        menuItems.add(new MenuItem(nextMenuItemId++, "Fruit Tea", "Lychee Black Tea", 4.25));
-        menuItems.add(new MenuItem(nextMenuItemId++, "Fruit Tea", "Peach Oolong Tea", 4.75));
-        menuItems.add(new MenuItem(nextMenuItemId++, "Fruit Tea", "Strawberry Tea", 4.50));
+        putMenuItem(new MenuItem(nextMenuItemId.getAndIncrement(), "Fruit Tea", "Passion Fruit Tea", 4.25));
+        putMenuItem(new MenuItem(nextMenuItemId.getAndIncrement(), "Fruit Tea", "Mango Green Tea", 4.50));
+        putMenuItem(new MenuItem(nextMenuItemId.getAndIncrement(), "Fruit Tea", "Lychee Black Tea", 4.25));
+        putMenuItem(new MenuItem(nextMenuItemId.getAndIncrement(), "Fruit Tea", "Peach Oolong Tea", 4.75));
+        putMenuItem(new MenuItem(nextMenuItemId.getAndIncrement(), "Fruit Tea", "Strawberry Tea", 4.50));
 
         // Coffee category
-        menuItems.add(new MenuItem(nextMenuItemId++, "Coffee", "Iced Coffee", 3.75));
-        menuItems.add(new MenuItem(nextMenuItemId++, "Coffee", "Coffee Milk Tea", 5.00));
-        menuItems.add(new MenuItem(nextMenuItemId++, "Coffee", "Caramel Macchiato", 5.50));
+        putMenuItem(new MenuItem(nextMenuItemId.getAndIncrement(), "Coffee", "Iced Coffee", 3.75));
+        putMenuItem(new MenuItem(nextMenuItemId.getAndIncrement(), "Coffee", "Coffee Milk Tea", 5.00));
+        putMenuItem(new MenuItem(nextMenuItemId.getAndIncrement(), "Coffee", "Caramel Macchiato", 5.50));
 
         // Smoothie category
-        menuItems.add(new MenuItem(nextMenuItemId++, "Smoothie", "Mango Smoothie", 5.25));
-        menuItems.add(new MenuItem(nextMenuItemId++, "Smoothie", "Avocado Smoothie", 5.50));
-        menuItems.add(new MenuItem(nextMenuItemId++, "Smoothie", "Taro Smoothie", 5.25));
+        putMenuItem(new MenuItem(nextMenuItemId.getAndIncrement(), "Smoothie", "Mango Smoothie", 5.25));
+        putMenuItem(new MenuItem(nextMenuItemId.getAndIncrement(), "Smoothie", "Avocado Smoothie", 5.50));
+        putMenuItem(new MenuItem(nextMenuItemId.getAndIncrement(), "Smoothie", "Taro Smoothie", 5.25));
 
         // Specialty category
-        menuItems.add(new MenuItem(nextMenuItemId++, "Specialty", "Brown Sugar Boba", 6.00));
-        menuItems.add(new MenuItem(nextMenuItemId++, "Specialty", "Cheese Foam Tea", 5.75));
-        menuItems.add(new MenuItem(nextMenuItemId++, "Specialty", "Dirty Boba", 6.25));
-        menuItems.add(new MenuItem(nextMenuItemId++, "Specialty", "Seasonal Special", 6.50));
+        putMenuItem(new MenuItem(nextMenuItemId.getAndIncrement(), "Specialty", "Brown Sugar Boba", 6.00));
+        putMenuItem(new MenuItem(nextMenuItemId.getAndIncrement(), "Specialty", "Cheese Foam Tea", 5.75));
+        putMenuItem(new MenuItem(nextMenuItemId.getAndIncrement(), "Specialty", "Dirty Boba", 6.25));
+        putMenuItem(new MenuItem(nextMenuItemId.getAndIncrement(), "Specialty", "Seasonal Special", 6.50));
     }
 
     /**
@@ -91,51 +121,110 @@ public class MockDataProvider {
      * @author harry
      */
     private void initializeInventory() {
-        inventory = new ArrayList<>();
-
         // Tea bases
-        inventory.add(new Inventory(nextInventoryId++, "Black Tea", 150));
-        inventory.add(new Inventory(nextInventoryId++, "Green Tea", 120));
-        inventory.add(new Inventory(nextInventoryId++, "Oolong Tea", 100));
-        inventory.add(new Inventory(nextInventoryId++, "White Tea", 80));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Black Tea", 150));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Green Tea", 120));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Oolong Tea", 100));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "White Tea", 80));
 
         // Milk and dairy
-        inventory.add(new Inventory(nextInventoryId++, "Whole Milk", 200));
-        inventory.add(new Inventory(nextInventoryId++, "Almond Milk", 75));
-        inventory.add(new Inventory(nextInventoryId++, "Coconut Milk", 60));
-        inventory.add(new Inventory(nextInventoryId++, "Oat Milk", 45));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Whole Milk", 200));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Almond Milk", 75));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Coconut Milk", 60));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Oat Milk", 45));
 
         // Sweeteners
-        inventory.add(new Inventory(nextInventoryId++, "Cane Sugar", 300));
-        inventory.add(new Inventory(nextInventoryId++, "Brown Sugar", 150));
-        inventory.add(new Inventory(nextInventoryId++, "Honey", 80));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Cane Sugar", 300));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Brown Sugar", 150));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Honey", 80));
 
         // Fruits and flavors
-        inventory.add(new Inventory(nextInventoryId++, "Mango Syrup", 90));
-        inventory.add(new Inventory(nextInventoryId++, "Strawberry Syrup", 85));
-        inventory.add(new Inventory(nextInventoryId++, "Passion Fruit Syrup", 70));
-        inventory.add(new Inventory(nextInventoryId++, "Lychee Syrup", 65));
-        inventory.add(new Inventory(nextInventoryId++, "Taro Powder", 110));
-        inventory.add(new Inventory(nextInventoryId++, "Matcha Powder", 95));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Mango Syrup", 90));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Strawberry Syrup", 85));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Passion Fruit Syrup", 70));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Lychee Syrup", 65));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Taro Powder", 110));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Matcha Powder", 95));
 
         // Toppings
-        inventory.add(new Inventory(nextInventoryId++, "Tapioca Pearls (Boba)", 500));
-        inventory.add(new Inventory(nextInventoryId++, "Lychee Jelly", 200));
-        inventory.add(new Inventory(nextInventoryId++, "Grass Jelly", 180));
-        inventory.add(new Inventory(nextInventoryId++, "Pudding", 150));
-        inventory.add(new Inventory(nextInventoryId++, "Aloe Vera", 120));
-        inventory.add(new Inventory(nextInventoryId++, "Red Bean", 100));
-        inventory.add(new Inventory(nextInventoryId++, "Popping Boba (Mango)", 300));
-        inventory.add(new Inventory(nextInventoryId++, "Popping Boba (Strawberry)", 280));
-        inventory.add(new Inventory(nextInventoryId++, "Crystal Boba", 250));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Tapioca Pearls (Boba)", 500));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Lychee Jelly", 200));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Grass Jelly", 180));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Pudding", 150));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Aloe Vera", 120));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Red Bean", 100));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Popping Boba (Mango)", 300));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Popping Boba (Strawberry)", 280));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Crystal Boba", 250));
 
         // Supplies
-        inventory.add(new Inventory(nextInventoryId++, "Plastic Cups (16oz)", 1000));
-        inventory.add(new Inventory(nextInventoryId++, "Plastic Cups (20oz)", 800));
-        inventory.add(new Inventory(nextInventoryId++, "Plastic Lids", 1200));
-        inventory.add(new Inventory(nextInventoryId++, "Straws", 2000));
-        inventory.add(new Inventory(nextInventoryId++, "Cup Sleeves", 500));
-        inventory.add(new Inventory(nextInventoryId++, "Napkins", 800));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Plastic Cups (16oz)", 1000));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Plastic Cups (20oz)", 800));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Plastic Lids", 1200));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Straws", 2000));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Cup Sleeves", 500));
+        putInventoryItem(new Inventory(nextInventoryId.getAndIncrement(), "Napkins", 800));
+    }
+
+    /**
+     * Initializes mock recipes linking the demo menu to the demo inventory.
+     * Every drink also uses a cup, a lid and a straw.
+     * 
+     * @author harry
+     */
+    private void initializeRecipes() {
+        List<MenuItemIngredient> lines = new ArrayList<>();
+
+        addRecipe(lines, "Classic Milk Tea", "Black Tea", "Whole Milk", "Cane Sugar", "Tapioca Pearls (Boba)");
+        addRecipe(lines, "Taro Milk Tea", "Taro Powder", "Whole Milk", "Cane Sugar", "Tapioca Pearls (Boba)");
+        addRecipe(lines, "Thai Milk Tea", "Black Tea", "Whole Milk", "Cane Sugar");
+        addRecipe(lines, "Matcha Milk Tea", "Matcha Powder", "Whole Milk", "Cane Sugar");
+        addRecipe(lines, "Honeydew Milk Tea", "Green Tea", "Whole Milk", "Cane Sugar");
+
+        addRecipe(lines, "Passion Fruit Tea", "Green Tea", "Passion Fruit Syrup", "Cane Sugar");
+        addRecipe(lines, "Mango Green Tea", "Green Tea", "Mango Syrup", "Cane Sugar");
+        addRecipe(lines, "Lychee Black Tea", "Black Tea", "Lychee Syrup", "Lychee Jelly");
+        addRecipe(lines, "Peach Oolong Tea", "Oolong Tea", "Honey");
+        addRecipe(lines, "Strawberry Tea", "White Tea", "Strawberry Syrup", "Cane Sugar");
+
+        addRecipe(lines, "Iced Coffee", "Whole Milk", "Cane Sugar");
+        addRecipe(lines, "Coffee Milk Tea", "Black Tea", "Whole Milk", "Cane Sugar");
+        addRecipe(lines, "Caramel Macchiato", "Whole Milk", "Brown Sugar");
+
+        addRecipe(lines, "Mango Smoothie", "Mango Syrup", "Whole Milk");
+        addRecipe(lines, "Avocado Smoothie", "Whole Milk", "Honey");
+        addRecipe(lines, "Taro Smoothie", "Taro Powder", "Whole Milk");
+
+        addRecipe(lines, "Brown Sugar Boba", "Brown Sugar", "Whole Milk", "Tapioca Pearls (Boba)");
+        addRecipe(lines, "Cheese Foam Tea", "Oolong Tea", "Whole Milk", "Cane Sugar");
+        addRecipe(lines, "Dirty Boba", "Brown Sugar", "Oat Milk", "Tapioca Pearls (Boba)");
+        addRecipe(lines, "Seasonal Special", "White Tea", "Strawberry Syrup", "Crystal Boba");
+
+        recipeBook = new RecipeBook(lines, inventory.values());
+    }
+
+    /**
+     * Adds one portion of each named ingredient, plus the cup, lid and straw,
+     * to a demo menu item's recipe.
+     * 
+     * @param lines the recipe lines being built
+     * @param menuItemName the name of the menu item
+     * @param ingredientNames the names of the ingredients it uses
+     * @author harry
+     */
+    private void addRecipe(List<MenuItemIngredient> lines, String menuItemName, String... ingredientNames) {
+        MenuItem item = getMenuItemByName(menuItemName);
+        if (item == null) {
+            return;
+        }
+        List<String> names = new ArrayList<>(Arrays.asList(ingredientNames));
+        names.addAll(List.of("Plastic Cups (16oz)", "Plastic Lids", "Straws"));
+        for (String name : names) {
+            Inventory ingredient = getInventoryItemByName(name);
+            if (ingredient != null) {
+                lines.add(new MenuItemIngredient(item.getMenuItemID(), ingredient.getIngredientID(), 1));
+            }
+        }
     }
 
     /**
@@ -144,16 +233,14 @@ public class MockDataProvider {
      * @author harry
      */
     private void initializeEmployees() {
-        employees = new ArrayList<>();
-
-        employees.add(new Employee(nextEmployeeId++, "John Smith", "Manager", 160));
-        employees.add(new Employee(nextEmployeeId++, "Sarah Johnson", "Assistant Manager", 140));
-        employees.add(new Employee(nextEmployeeId++, "Mike Chen", "Cashier", 120));
-        employees.add(new Employee(nextEmployeeId++, "Emily Davis", "Cashier", 100));
-        employees.add(new Employee(nextEmployeeId++, "Alex Rodriguez", "Barista", 110));
-        employees.add(new Employee(nextEmployeeId++, "Lisa Wang", "Barista", 95));
-        employees.add(new Employee(nextEmployeeId++, "David Kim", "Part-time Cashier", 60));
-        employees.add(new Employee(nextEmployeeId++, "Jennifer Lee", "Part-time Barista", 45));
+        putEmployee(new Employee(nextEmployeeId.getAndIncrement(), "John Smith", "Manager", 160));
+        putEmployee(new Employee(nextEmployeeId.getAndIncrement(), "Sarah Johnson", "Assistant Manager", 140));
+        putEmployee(new Employee(nextEmployeeId.getAndIncrement(), "Mike Chen", "Cashier", 120));
+        putEmployee(new Employee(nextEmployeeId.getAndIncrement(), "Emily Davis", "Cashier", 100));
+        putEmployee(new Employee(nextEmployeeId.getAndIncrement(), "Alex Rodriguez", "Barista", 110));
+        putEmployee(new Employee(nextEmployeeId.getAndIncrement(), "Lisa Wang", "Barista", 95));
+        putEmployee(new Employee(nextEmployeeId.getAndIncrement(), "David Kim", "Part-time Cashier", 60));
+        putEmployee(new Employee(nextEmployeeId.getAndIncrement(), "Jennifer Lee", "Part-time Barista", 45));
     }
 
     /**
@@ -162,26 +249,181 @@ public class MockDataProvider {
      * @author harry
      */
     private void initializeOrders() {
-        orders = new ArrayList<>();
-        orderItems = new ArrayList<>();
-
         // Sample orders for demonstration
         long currentTime = System.currentTimeMillis();
 
         // Order 1
-        Order order1 = new Order(nextOrderId++, new Timestamp(currentTime - 3600000), null, 3, 9.50, getCurrentWeek());
-        orders.add(order1);
-        orderItems.add(new OrderItem(nextOrderItemId++, order1.getOrderID(), 1, 2)); // 2x Classic Milk Tea
+        createOrder(new Order(0, new Timestamp(currentTime - 3600000), null, 3, 9.50, getCurrentWeek()),
+                List.of(new OrderItem(0, 0, 1, 2))); // 2x Classic Milk Tea
 
         // Order 2
-        Order order2 = new Order(nextOrderId++, new Timestamp(currentTime - 1800000), null, 4, 5.25, getCurrentWeek());
-        orders.add(order2);
-        orderItems.add(new OrderItem(nextOrderItemId++, order2.getOrderID(), 14, 1)); // 1x Mango Smoothie
+        createOrder(new Order(0, new Timestamp(currentTime - 1800000), null, 4, 5.25, getCurrentWeek()),
+                List.of(new OrderItem(0, 0, 14, 1))); // 1x Mango Smoothie
 
         // Order 3
-        Order order3 = new Order(nextOrderId++, new Timestamp(currentTime - 900000), null, 3, 12.00, getCurrentWeek());
-        orders.add(order3);
-        orderItems.add(new OrderItem(nextOrderItemId++, order3.getOrderID(), 17, 2)); // 2x Brown Sugar Boba
+        createOrder(new Order(0, new Timestamp(currentTime - 900000), null, 3, 12.00, getCurrentWeek()),
+                List.of(new OrderItem(0, 0, 17, 2))); // 2x Brown Sugar Boba
+    }
+
+    /**
+     * Stores a menu item and adds it to the name and category indexes.
+     * 
+     * @param item the MenuItem object to store
+     * @author harry
+     */
+    private void putMenuItem(MenuItem item) {
+        menuItems.put(item.getMenuItemID(), item);
+        menuItemsByName.put(indexKey(item.getMenuItemName()), item.getMenuItemID());
+        menuItemsByCategory.computeIfAbsent(indexKey(item.getDrinkCategory()), k -> ConcurrentHashMap.newKeySet())
+                .add(item.getMenuItemID());
+    }
+
+    /**
+     * Stores an inventory item and adds it to the name index.
+     * 
+     * @param item the Inventory object to store
+     * @author harry
+     */
+    private void putInventoryItem(Inventory item) {
+        inventory.put(item.getIngredientID(), item);
+        inventoryByName.put(indexKey(item.getIngredientName()), item.getIngredientID());
+    }
+
+    /**
+     * Stores an employee.
+     * 
+     * @param employee the Employee object to store
+     * @author harry
+     */
+    private void putEmployee(Employee employee) {
+        employees.put(employee.getEmployeeID(), employee);
+    }
+
+    /**
+     * Stores an order with its items and adds them to the time and order indexes.
+     * IDs must already be assigned.
+     * 
+     * @param order the Order object to store
+     * @param items the order's items
+     * @author harry
+     */
+    private void putOrder(Order order, List<OrderItem> items) {
+        List<OrderItem> stored = List.copyOf(items);
+        for (OrderItem item : stored) {
+            orderItems.put(item.getOrderItemID(), item);
+        }
+        itemsByOrder.put(order.getOrderID(), stored);
+        orders.put(order.getOrderID(), order);
+        if (order.getOrderKey() != null) {
+            ordersByKey.put(order.getOrderKey(), order.getOrderID());
+        }
+        ordersByTime.computeIfAbsent(order.getTimeOfOrder().getTime(), k -> ConcurrentHashMap.newKeySet())
+                .add(order.getOrderID());
+    }
+
+    /**
+     * Normalizes a name or category for index lookups.
+     * 
+     * @param value the raw name
+     * @return the index key
+     * @author harry
+     */
+    private static String indexKey(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Moves an ID counter past every ID already in use.
+     * 
+     * @param counter the counter to advance
+     * @param ids the IDs currently in use
+     * @author harry
+     */
+    private static void advancePast(AtomicInteger counter, Collection<Integer> ids) {
+        int max = ids.stream().mapToInt(Integer::intValue).max().orElse(0);
+        counter.accumulateAndGet(max + 1, Math::max);
+    }
+
+    /**
+     * Replaces the demo menu and inventory with the shop's last known data from
+     * a snapshot. The demo orders refer to the demo menu, so they are dropped.
+     * 
+     * @param snapshot the snapshot to load
+     * @author harry
+     */
+    public synchronized void loadSnapshot(MenuSnapshot snapshot) {
+        menuItems.clear();
+        menuItemsByName.clear();
+        menuItemsByCategory.clear();
+        inventory.clear();
+        inventoryByName.clear();
+        clearOrders();
+
+        snapshot.getMenuItems().forEach(this::putMenuItem);
+        snapshot.getInventory().forEach(this::putInventoryItem);
+        recipeBook = new RecipeBook(snapshot.getRecipes(), inventory.values());
+
+        advancePast(nextMenuItemId, menuItems.keySet());
+        advancePast(nextInventoryId, inventory.keySet());
+    }
+
+    /**
+     * Removes every order and order item, keeping the menu and inventory.
+     * 
+     * @author harry
+     */
+    public synchronized void clearOrders() {
+        orders.clear();
+        orderItems.clear();
+        ordersByTime.clear();
+        itemsByOrder.clear();
+        ordersByKey.clear();
+    }
+
+    /**
+     * Replaces all employees, for example when restoring a store snapshot.
+     * 
+     * @param restored the employees to keep
+     * @author harry
+     */
+    public synchronized void replaceEmployees(List<Employee> restored) {
+        employees.clear();
+        restored.forEach(this::putEmployee);
+        advancePast(nextEmployeeId, employees.keySet());
+    }
+
+    /**
+     * Moves every ID counter past the IDs already stored, after orders were
+     * imported with {@link #importOrder(Order, List)}.
+     * 
+     * @author harry
+     */
+    public void syncIdCounters() {
+        advancePast(nextMenuItemId, menuItems.keySet());
+        advancePast(nextInventoryId, inventory.keySet());
+        advancePast(nextEmployeeId, employees.keySet());
+        advancePast(nextOrderId, orders.keySet());
+        advancePast(nextOrderItemId, orderItems.keySet());
+    }
+
+    /**
+     * Retrieves all mock recipe lines.
+     * 
+     * @return List of MenuItemIngredient objects containing all recipe lines
+     * @author harry
+     */
+    public List<MenuItemIngredient> getAllRecipes() {
+        return new ArrayList<>(recipeBook.getAllLines());
+    }
+
+    /**
+     * Gets the recipes used for inventory deduction.
+     * 
+     * @return the current RecipeBook
+     * @author harry
+     */
+    public RecipeBook getRecipeBook() {
+        return recipeBook;
     }
 
     /**
@@ -191,7 +433,49 @@ public class MockDataProvider {
      * @author harry
      */
     public List<MenuItem> getAllMenuItems() {
-        return new ArrayList<>(menuItems);
+        return new ArrayList<>(menuItems.values());
+    }
+
+    /**
+     * Looks up a menu item by its ID.
+     * 
+     * @param menuItemId the ID of the menu item
+     * @return the MenuItem, or null if there is none with that ID
+     * @author harry
+     */
+    public MenuItem getMenuItem(int menuItemId) {
+        return menuItems.get(menuItemId);
+    }
+
+    /**
+     * Looks up a menu item by its name, ignoring case.
+     * 
+     * @param name the menu item name
+     * @return the MenuItem, or null if there is none with that name
+     * @author harry
+     */
+    public MenuItem getMenuItemByName(String name) {
+        Integer id = menuItemsByName.get(indexKey(name));
+        return id == null ? null : menuItems.get(id);
+    }
+
+    /**
+     * Retrieves all menu items in a drink category, ignoring case.
+     * 
+     * @param category the drink category
+     * @return List of MenuItem objects in the category, ordered by ID
+     * @author harry
+     */
+    public List<MenuItem> getMenuItemsByCategory(String category) {
+        Set<Integer> ids = menuItemsByCategory.getOrDefault(indexKey(category), Set.of());
+        List<MenuItem> items = new ArrayList<>();
+        for (Integer id : new TreeSet<>(ids)) {
+            MenuItem item = menuItems.get(id);
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        return items;
     }
 
     /**
@@ -202,8 +486,8 @@ public class MockDataProvider {
      * @author harry
      */
     public boolean addMenuItem(MenuItem item) {
-        item.setMenuItemID(nextMenuItemId++);
-        menuItems.add(item);
+        item.setMenuItemID(nextMenuItemId.getAndIncrement());
+        putMenuItem(item);
         return true;
     }
 
@@ -216,13 +500,12 @@ public class MockDataProvider {
      * @author harry
      */
     public boolean updateMenuItemPrice(int menuItemId, double newPrice) {
-        for (MenuItem item : menuItems) {
-            if (item.getMenuItemID() == menuItemId) {
-                item.setPrice(newPrice);
-                return true;
-            }
+        MenuItem item = menuItems.get(menuItemId);
+        if (item == null) {
+            return false;
         }
-        return false;
+        item.setPrice(newPrice);
+        return true;
     }
 
     /**
@@ -232,7 +515,19 @@ public class MockDataProvider {
      * @author harry
      */
     public List<Inventory> getAllInventory() {
-        return new ArrayList<>(inventory);
+        return new ArrayList<>(inventory.values());
+    }
+
+    /**
+     * Looks up an inventory item by its name, ignoring case.
+     * 
+     * @param name the ingredient name
+     * @return the Inventory item, or null if there is none with that name
+     * @author harry
+     */
+    public Inventory getInventoryItemByName(String name) {
+        Integer id = inventoryByName.get(indexKey(name));
+        return id == null ? null : inventory.get(id);
     }
 
     /**
@@ -243,8 +538,10 @@ public class MockDataProvider {
      * @author harry
      */
     public boolean addInventoryItem(Inventory item) {
-        item.setIngredientID(nextInventoryId++);
-        inventory.add(item);
+        item.setIngredientID(nextInventoryId.getAndIncrement());
+        putInventoryItem(item);
+        // A new item may be the stock of a topping
+        recipeBook = new RecipeBook(recipeBook.getAllLines(), inventory.values());
         return true;
     }
 
@@ -257,13 +554,18 @@ public class MockDataProvider {
      * @author harry
      */
     public boolean updateInventoryQuantity(int ingredientId, int newQuantity) {
-        for (Inventory item : inventory) {
-            if (item.getIngredientID() == ingredientId) {
-                item.setIngredientCount(newQuantity);
-                return true;
-            }
+        Inventory item = inventory.get(ingredientId);
+        if (item == null) {
+            return false;
         }
-        return false;
+        ReentrantLock lock = stockLocks[stripeOf(ingredientId)];
+        lock.lock();
+        try {
+            item.setIngredientCount(newQuantity);
+        } finally {
+            lock.unlock();
+        }
+        return true;
     }
 
     /**
@@ -273,7 +575,7 @@ public class MockDataProvider {
      * @author harry
      */
     public List<Employee> getAllEmployees() {
-        return new ArrayList<>(employees);
+        return new ArrayList<>(employees.values());
     }
 
     /**
@@ -284,8 +586,8 @@ public class MockDataProvider {
      * @author harry
      */
     public boolean addEmployee(Employee employee) {
-        employee.setEmployeeID(nextEmployeeId++);
-        employees.add(employee);
+        employee.setEmployeeID(nextEmployeeId.getAndIncrement());
+        putEmployee(employee);
         return true;
     }
 
@@ -297,13 +599,7 @@ public class MockDataProvider {
      * @author harry
      */
     public boolean updateEmployee(Employee employee) {
-        for (int i = 0; i < employees.size(); i++) {
-            if (employees.get(i).getEmployeeID() == employee.getEmployeeID()) {
-                employees.set(i, employee);
-                return true;
-            }
-        }
-        return false;
+        return employees.replace(employee.getEmployeeID(), employee) != null;
     }
 
     /**
@@ -314,42 +610,116 @@ public class MockDataProvider {
      * @author harry
      */
     public boolean deleteEmployee(int employeeId) {
-        return employees.removeIf(emp -> emp.getEmployeeID() == employeeId);
+        return employees.remove(employeeId) != null;
     }
 
     /**
-     * Retrieves all mock orders.
+     * Retrieves all mock orders, newest first.
      * 
      * @return List of Order objects containing all mock orders
      * @author harry
      */
     public List<Order> getAllOrders() {
-        return new ArrayList<>(orders);
+        return collectOrders(ordersByTime.descendingMap());
+    }
+
+    /**
+     * Retrieves the orders placed in a time range using the order time index.
+     * 
+     * @param from the inclusive start of the range
+     * @param to the exclusive end of the range
+     * @return List of Order objects ordered by time of order
+     * @author harry
+     */
+    public List<Order> getOrdersBetween(Timestamp from, Timestamp to) {
+        return collectOrders(ordersByTime.subMap(from.getTime(), true, to.getTime(), false));
+    }
+
+    /**
+     * Retrieves one page of order history, newest first.
+     * 
+     * @param offset the number of orders to skip
+     * @param limit the maximum number of orders to return
+     * @return List of Order objects on the requested page
+     * @author harry
+     */
+    public List<Order> getOrdersPage(int offset, int limit) {
+        List<Order> page = new ArrayList<>(limit);
+        int skipped = 0;
+        for (Set<Integer> ids : ordersByTime.descendingMap().values()) {
+            for (Integer id : ids) {
+                if (skipped < offset) {
+                    skipped++;
+                    continue;
+                }
+                Order order = orders.get(id);
+                if (order != null) {
+                    page.add(order);
+                    if (page.size() == limit) {
+                        return page;
+                    }
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Retrieves the items of one order.
+     * 
+     * @param orderId the ID of the order
+     * @return List of OrderItem objects, empty if the order does not exist
+     * @author harry
+     */
+    public List<OrderItem> getOrderItemsForOrder(int orderId) {
+        return itemsByOrder.getOrDefault(orderId, List.of());
     }
 
     /**
-     * Retrieves product usage data for charts and analytics.
+     * Resolves the order IDs of a slice of the time index to orders.
+     * 
+     * @param slice the part of the time index to read
+     * @return List of Order objects in the slice's iteration order
+     * @author harry
+     */
+    private List<Order> collectOrders(ConcurrentNavigableMap<Long, Set<Integer>> slice) {
+        List<Order> result = new ArrayList<>();
+        for (Set<Integer> ids : slice.values()) {
+            for (Integer id : ids) {
+                Order order = orders.get(id);
+                if (order != null) {
+                    result.add(order);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves product usage data for charts and analytics. Like the database
+     * query, only orders from the last 30 days are counted.
      * 
      * @return Map with product names as keys and usage counts as values
      * @author harry
      */
     public Map<String, Integer> getProductUsageData() {
-        Map<String, Integer> usage = new HashMap<>();
+        Timestamp from = Timestamp.valueOf(LocalDate.now().minusDays(30).atStartOfDay());
+        Timestamp to = new Timestamp(Long.MAX_VALUE);
 
         // Calculate usage based on order items
         Map<Integer, Integer> itemCounts = new HashMap<>();
-        for (OrderItem item : orderItems) {
-            itemCounts.put(item.getMenuItemID(),
-                    itemCounts.getOrDefault(item.getMenuItemID(), 0) + item.getQuantity());
+        for (Order order : getOrdersBetween(from, to)) {
+            for (OrderItem item : getOrderItemsForOrder(order.getOrderID())) {
+                itemCounts.merge(item.getMenuItemID(), item.getQuantity(), Integer::sum);
+            }
         }
 
         // Map to menu item names
+        Map<String, Integer> usage = new HashMap<>();
         for (Map.Entry<Integer, Integer> entry : itemCounts.entrySet()) {
-            for (MenuItem item : menuItems) {
-                if (item.getMenuItemID() == entry.getKey()) {
-                    usage.put(item.getMenuItemName(), entry.getValue());
-                    break;
-                }
+            MenuItem item = menuItems.get(entry.getKey());
+            if (item != null) {
+                usage.put(item.getMenuItemName(), entry.getValue());
             }
         }
 
@@ -357,7 +727,8 @@ public class MockDataProvider {
     }
 
     /**
-     * Calculates total sales for a given date range using mock data.
+     * Calculates total sales for a given date range using mock data. Both dates
+     * are inclusive, matching the database's BETWEEN on DATE(timeoforder).
      * 
      * @param startDate the start date for sales calculation
      * @param endDate the end date for sales calculation
@@ -365,14 +736,12 @@ public class MockDataProvider {
      * @author harry
      */
     public double getTotalSales(java.sql.Date startDate, java.sql.Date endDate) {
-        double total = 0.0;
+        Timestamp from = Timestamp.valueOf(startDate.toLocalDate().atStartOfDay());
+        Timestamp to = Timestamp.valueOf(endDate.toLocalDate().plusDays(1).atStartOfDay());
 
-        for (Order order : orders) {
-            java.sql.Date orderDate = new java.sql.Date(order.getTimeOfOrder().getTime());
-            if ((orderDate.equals(startDate) || orderDate.after(startDate)) &&
-                    (orderDate.equals(endDate) || orderDate.before(endDate))) {
-                total += order.getTotalCost();
-            }
+        double total = 0.0;
+        for (Order order : getOrdersBetween(from, to)) {
+            total += order.getTotalCost();
         }
 
         return total;
@@ -383,22 +752,72 @@ public class MockDataProvider {
      * 
      * @param order the Order object to be created
      * @param items List of OrderItem objects for the order
-     * @return always true for mock data operations
+     * @return true if the order was created, false if there was not enough stock
      * @author harry
      */
     public boolean createOrder(Order order, List<OrderItem> items) {
-        order.setOrderID(nextOrderId++);
-        orders.add(order);
+        if (!consumeIngredients(recipeBook.requirementsFor(items), true)) {
+            return false;
+        }
+        if (order.getTimeOfOrder() == null) {
+            order.setTimeOfOrder(new Timestamp(System.currentTimeMillis()));
+        }
+        order.setOrderID(nextOrderId.getAndIncrement());
 
         for (OrderItem item : items) {
-            item.setOrderItemID(nextOrderItemId++);
+            item.setOrderItemID(nextOrderItemId.getAndIncrement());
             item.setOrderID(order.getOrderID());
-            orderItems.add(item);
         }
+        putOrder(order, items);
 
         return true;
     }
 
+    /**
+     * Looks up an order stored with an order key.
+     * 
+     * @param orderKey the order key
+     * @return the order ID, or null if no stored order has that key
+     * @author harry
+     */
+    public Integer getOrderIdByKey(UUID orderKey) {
+        return ordersByKey.get(orderKey);
+    }
+
+    /**
+     * Reserves a contiguous block of order IDs for a bulk import.
+     * 
+     * @param count the number of IDs to reserve
+     * @return the first reserved ID
+     * @author harry
+     */
+    public int reserveOrderIds(int count) {
+        return nextOrderId.getAndAdd(count);
+    }
+
+    /**
+     * Reserves a contiguous block of order item IDs for a bulk import.
+     * 
+     * @param count the number of IDs to reserve
+     * @return the first reserved ID
+     * @author harry
+     */
+    public int reserveOrderItemIds(int count) {
+        return nextOrderItemId.getAndAdd(count);
+    }
+
+    /**
+     * Stores a historical order whose IDs were already assigned, for example
+     * from {@link #reserveOrderIds(int)}. Inventory is not touched.
+     * 
+     * @param order the Order object to store
+     * @param items the order's items, already linked to the order
+     * @author harry
+     */
+    public void importOrder(Order order, List<OrderItem> items) {
+        putOrder(order, items);
+    }
+
     /**
      * Gets the next available ID for a specified table.
      * 
@@ -409,15 +828,15 @@ public class MockDataProvider {
     public int getNextId(String table) {
         switch (table.toLowerCase()) {
             case "menuitems":
-                return nextMenuItemId;
+                return nextMenuItemId.get();
             case "inventory":
-                return nextInventoryId;
+                return nextInventoryId.get();
             case "employees":
-                return nextEmployeeId;
+                return nextEmployeeId.get();
             case "orders":
-                return nextOrderId;
+                return nextOrderId.get();
             case "orderitems":
-                return nextOrderItemId;
+                return nextOrderItemId.get();
             default:
                 return 1;
         }
@@ -442,9 +861,7 @@ public class MockDataProvider {
      * @author harry
      */
     public boolean validateInventoryForOrder(List<OrderItem> orderItems) {
-        // In mock mode, always return true for simplicity
-        // In a real implementation, you would check against mock inventory data
-        return true;
+        return consumeIngredients(recipeBook.requirementsFor(orderItems), false);
     }
 
     /**
@@ -455,9 +872,86 @@ public class MockDataProvider {
      * @author harry
      */
     public boolean updateInventoryForOrder(List<OrderItem> orderItems) {
-        // In mock mode, always return true for simplicity
-        // In a real implementation, you would update mock inventory data
-        System.out.println("Mock: Inventory updated for " + orderItems.size() + " order items");
-        return true;
+        return consumeIngredients(recipeBook.requirementsFor(orderItems), true);
+    }
+
+    /**
+     * Checks, and optionally decrements, the stock of every needed ingredient as
+     * one atomic step. The lock stripes covering the ingredients are taken in
+     * ascending order so concurrent orders cannot deadlock.
+     * 
+     * @param needed Map of ingredient ID to quantity needed
+     * @param apply true to decrement the stock, false to only check it
+     * @return true if every ingredient had enough stock, false otherwise
+     * @author harry
+     */
+    private boolean consumeIngredients(Map<Integer, Integer> needed, boolean apply) {
+        int[] stripes = needed.keySet().stream().mapToInt(MockDataProvider::stripeOf).distinct().sorted().toArray();
+        int locked = 0;
+        try {
+            for (int stripe : stripes) {
+                ReentrantLock lock = stockLocks[stripe];
+                if (!lock.tryLock()) {
+                    stockLockContention.increment();
+                    lock.lock();
+                }
+                locked++;
+            }
+
+            for (Map.Entry<Integer, Integer> entry : needed.entrySet()) {
+                Inventory item = inventory.get(entry.getKey());
+                int available = item == null ? 0 : item.getIngredientCount();
+                if (available < entry.getValue()) {
+                    stockOuts.increment();
+                    System.err.println("Insufficient inventory for ingredient ID: " + entry.getKey() +
+                            " (Available: " + available + ", Required: " + entry.getValue() + ")");
+                    return false;
+                }
+            }
+
+            if (apply) {
+                for (Map.Entry<Integer, Integer> entry : needed.entrySet()) {
+                    Inventory item = inventory.get(entry.getKey());
+                    item.setIngredientCount(item.getIngredientCount() - entry.getValue());
+                }
+            }
+            return true;
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                stockLocks[stripes[i]].unlock();
+            }
+        }
+    }
+
+    /**
+     * Maps an ingredient ID to the lock stripe guarding its count.
+     * 
+     * @param ingredientId the ingredient ID
+     * @return the stripe index
+     * @author harry
+     */
+    private static int stripeOf(int ingredientId) {
+        return ingredientId & (STOCK_STRIPES - 1);
+    }
+
+    /**
+     * Gets the number of orders or checks rejected for insufficient stock.
+     * 
+     * @return the stock-out count since startup
+     * @author harry
+     */
+    public long getStockOutCount() {
+        return stockOuts.sum();
+    }
+
+    /**
+     * Gets the number of times an order had to wait for another terminal
+     * holding the same ingredient lock stripe.
+     * 
+     * @return the contended lock acquisition count since startup
+     * @author harry
+     */
+    public long getStockLockContentionCount() {
+        return stockLockContention.sum();
     }
 }
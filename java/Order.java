@@ -1,6 +1,7 @@
 package New_Additions;
 
 import java.sql.Timestamp;
+import java.util.UUID;
 
 /**
  * Order model class representing customer orders in the boba shop.
@@ -36,6 +37,9 @@ public class Order {
     /** The week number for reporting and analytics purposes */
     private int orderWeek;
 
+    /** Key generated by the terminal that identifies this order across resubmissions (null if none) */
+    private UUID orderKey;
+
     // Constructors
     /**
      * Default constructor for Order.
@@ -182,6 +186,25 @@ public class Order {
         this.orderWeek = orderWeek;
     }
 
+    /**
+     * Gets the order key.
+     * 
+     * @return the key identifying this order across resubmissions, or null
+     */
+    public UUID getOrderKey() {
+        return orderKey;
+    }
+
+    /**
+     * Sets the order key. Submitting an order again with the same key
+     * returns the order already stored instead of storing a second one.
+     * 
+     * @param orderKey the key to set for this order, or null for none
+     */
+    public void setOrderKey(UUID orderKey) {
+        this.orderKey = orderKey;
+    }
+
     /**
      * Returns a string representation of this Order.
      * 
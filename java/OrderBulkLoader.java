@@ -0,0 +1,456 @@
+package New_Additions;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * OrderBulkLoader imports historical orders and order items from CSV files
+ * into PostgreSQL through the COPY protocol, which is orders of magnitude
+ * faster than calling createOrder per order.
+ *
+ * The input is first split into one chunk per ISO week. Chunks are then
+ * loaded in parallel, each on its own connection and in its own transaction,
+ * which also records the chunk in a bulkload_progress table. A rerun after a
+ * crash therefore skips every committed chunk and loads each chunk exactly
+ * once. Secondary indexes on orders and orderitems are dropped before the
+ * load and rebuilt after it; their definitions are kept in the work directory
+ * so an interrupted run can still rebuild them.
+ *
+ * Expected columns (a header line is optional):
+ * orders: orderid, timeoforder, customerid, employeeid, totalcost, orderweek;
+ * order items: orderitemid, orderid, menuitemid, quantity.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class OrderBulkLoader {
+
+    private static final String ORDERS_COPY = "COPY orders (orderid, timeoforder, customerid, employeeid, totalcost, orderweek) FROM STDIN WITH (FORMAT csv)";
+    private static final String ITEMS_COPY = "COPY orderitems (orderitemid, orderid, menuitemid, quantity) FROM STDIN WITH (FORMAT csv)";
+
+    private final DatabaseManager dbManager;
+    private final Path workDir;
+    private final int threads;
+
+    private final AtomicLong rowsLoaded = new AtomicLong();
+    private final AtomicInteger chunksLoaded = new AtomicInteger();
+    private long startNanos;
+
+    /**
+     * Constructs a new bulk loader.
+     *
+     * @param dbManager the DatabaseManager whose credentials are used
+     * @param workDir the directory for chunk files and saved index definitions
+     * @param threads the number of chunks loaded at once
+     * @author harry
+     */
+    public OrderBulkLoader(DatabaseManager dbManager, Path workDir, int threads) {
+        this.dbManager = dbManager;
+        this.workDir = workDir;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Loads the given files, resuming a previous run where it stopped.
+     *
+     * @param ordersCsv the orders file
+     * @param orderItemsCsv the order items file
+     * @return the number of rows loaded by this run
+     * @throws IOException if the input or work files cannot be read or written
+     * @throws SQLException if the database rejects the load
+     * @throws InterruptedException if interrupted while waiting for chunks
+     * @author harry
+     */
+    public long load(Path ordersCsv, Path orderItemsCsv) throws IOException, SQLException, InterruptedException {
+        if (dbManager.isUsingMockData()) {
+            throw new SQLException("Bulk loading needs a database connection");
+        }
+        Files.createDirectories(workDir.resolve("chunks"));
+        startNanos = System.nanoTime();
+
+        List<String> chunks = partition(ordersCsv, orderItemsCsv);
+        Set<String> done = readProgress();
+        List<String> pending = new ArrayList<>();
+        for (String chunk : chunks) {
+            if (!done.contains(chunk)) {
+                pending.add(chunk);
+            }
+        }
+        System.out.println("Bulk load: " + chunks.size() + " weekly chunks, " + done.size()
+                + " already loaded, " + pending.size() + " to go");
+
+        dropSecondaryIndexes();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (String chunk : pending) {
+                futures.add(pool.submit(() -> {
+                    loadChunk(chunk);
+                    report(chunk, pending.size());
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new SQLException("Bulk load failed: " + cause.getMessage(), cause);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        rebuildSecondaryIndexes();
+        System.out.printf("Bulk load finished: %,d rows in %.1f s%n", rowsLoaded.get(), elapsedSeconds());
+        return rowsLoaded.get();
+    }
+
+    /**
+     * Splits the input into one orders file and one items file per ISO week.
+     * A finished split is reused on restart.
+     *
+     * @return the chunk keys, oldest week first
+     */
+    private List<String> partition(Path ordersCsv, Path orderItemsCsv) throws IOException {
+        Path manifest = workDir.resolve("chunks.done");
+        if (Files.exists(manifest)) {
+            return Files.readAllLines(manifest, StandardCharsets.UTF_8);
+        }
+
+        Map<Integer, String> weekOfOrder = new HashMap<>();
+        Map<String, BufferedWriter> writers = new TreeMap<>();
+        try {
+            try (BufferedReader reader = Files.newBufferedReader(ordersCsv, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split(",", 3);
+                    if (fields.length < 3 || !isNumber(fields[0])) {
+                        continue; // header or blank line
+                    }
+                    String chunk = weekKey(fields[1]);
+                    weekOfOrder.put(Integer.parseInt(fields[0].trim()), chunk);
+                    writerFor(writers, chunk, "orders").write(line);
+                    writerFor(writers, chunk, "orders").newLine();
+                }
+            }
+
+            int orphans = 0;
+            try (BufferedReader reader = Files.newBufferedReader(orderItemsCsv, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split(",", 3);
+                    if (fields.length < 3 || !isNumber(fields[1])) {
+                        continue;
+                    }
+                    String chunk = weekOfOrder.get(Integer.parseInt(fields[1].trim()));
+                    if (chunk == null) {
+                        orphans++;
+                        continue;
+                    }
+                    writerFor(writers, chunk, "items").write(line);
+                    writerFor(writers, chunk, "items").newLine();
+                }
+            }
+            if (orphans > 0) {
+                System.err.println("Skipped " + orphans + " order items whose order is not in " + ordersCsv);
+            }
+        } finally {
+            for (BufferedWriter writer : writers.values()) {
+                writer.close();
+            }
+        }
+
+        List<String> chunks = new ArrayList<>(new TreeSet<>(weekOfOrder.values()));
+        Files.write(manifest, chunks, StandardCharsets.UTF_8);
+        return chunks;
+    }
+
+    /**
+     * Loads one weekly chunk and records it as done, in a single transaction.
+     */
+    private void loadChunk(String chunk) throws SQLException, IOException {
+        try (Connection conn = dbManager.openConnection()) {
+            conn.setAutoCommit(false);
+            long rows = 0;
+
+            try (BufferedReader orders = Files.newBufferedReader(chunkFile(chunk, "orders"), StandardCharsets.UTF_8)) {
+                rows += copyIn(conn, ORDERS_COPY, orders);
+            }
+            Path items = chunkFile(chunk, "items");
+            if (Files.exists(items)) {
+                try (BufferedReader reader = Files.newBufferedReader(items, StandardCharsets.UTF_8)) {
+                    rows += copyIn(conn, ITEMS_COPY, reader);
+                }
+            }
+
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO bulkload_progress (chunk, rowsloaded) VALUES (?, ?)")) {
+                pstmt.setString(1, chunk);
+                pstmt.setLong(2, rows);
+                pstmt.executeUpdate();
+            }
+            conn.commit();
+            rowsLoaded.addAndGet(rows);
+        }
+    }
+
+    /**
+     * Runs a COPY ... FROM STDIN through the PostgreSQL driver's CopyManager.
+     * The driver is looked up by name, like DatabaseManager loads
+     * org.postgresql.Driver, so it is only needed at run time and not to
+     * compile the till.
+     *
+     * @return the number of rows copied
+     */
+    private static long copyIn(Connection conn, String sql, Reader reader) throws SQLException, IOException {
+        Object copyManager;
+        Method copyIn;
+        try {
+            Class<?> pgConnection = Class.forName("org.postgresql.PGConnection");
+            Method getCopyApi = pgConnection.getMethod("getCopyAPI");
+            copyIn = getCopyApi.getReturnType().getMethod("copyIn", String.class, Reader.class);
+            copyManager = getCopyApi.invoke(conn.unwrap(pgConnection));
+        } catch (ReflectiveOperationException e) {
+            throw new SQLException("PostgreSQL driver with COPY support not found: " + e, e);
+        }
+        try {
+            return (Long) copyIn.invoke(copyManager, sql, reader);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new SQLException("COPY failed: " + cause, cause);
+        } catch (IllegalAccessException e) {
+            throw new SQLException("COPY failed: " + e, e);
+        }
+    }
+
+    /**
+     * Reads the chunks committed by earlier runs, creating the progress table
+     * on first use.
+     */
+    private Set<String> readProgress() throws SQLException {
+        Set<String> done = new HashSet<>();
+        try (Connection conn = dbManager.openConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS bulkload_progress (chunk text PRIMARY KEY, "
+                    + "rowsloaded bigint NOT NULL, loadedat timestamptz NOT NULL DEFAULT now())");
+            try (ResultSet rs = stmt.executeQuery("SELECT chunk FROM bulkload_progress")) {
+                while (rs.next()) {
+                    done.add(rs.getString(1));
+                }
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Drops the non-unique, non-constraint indexes on orders and orderitems in
+     * the current schema, saving their definitions first. Unique indexes such
+     * as orders_orderkey_key stay, since tills insert with ON CONFLICT on them
+     * and duplicates loaded meanwhile would make the rebuild fail. On a
+     * restart the saved definitions are kept.
+     */
+    private void dropSecondaryIndexes() throws SQLException, IOException {
+        Path saved = workDir.resolve("deferred_indexes.sql");
+        List<String> names = new ArrayList<>();
+        List<String> definitions = new ArrayList<>();
+
+        String query = "SELECT i.indexname, i.indexdef FROM pg_indexes i "
+                + "JOIN pg_index x ON x.indexrelid = format('%I.%I', i.schemaname, i.indexname)::regclass "
+                + "WHERE i.schemaname = current_schema() AND i.tablename IN ('orders', 'orderitems') "
+                + "AND NOT x.indisunique "
+                + "AND NOT EXISTS (SELECT 1 FROM pg_constraint c WHERE c.conindid = x.indexrelid)";
+        try (Connection conn = dbManager.openConnection();
+                Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery(query)) {
+                while (rs.next()) {
+                    names.add(rs.getString("indexname"));
+                    definitions.add(rs.getString("indexdef"));
+                }
+            }
+            if (names.isEmpty()) {
+                return;
+            }
+
+            List<String> toSave = new ArrayList<>();
+            if (Files.exists(saved)) {
+                toSave.addAll(Files.readAllLines(saved, StandardCharsets.UTF_8));
+            }
+            toSave.addAll(definitions);
+            Files.write(saved, toSave, StandardCharsets.UTF_8);
+
+            for (String name : names) {
+                stmt.execute("DROP INDEX IF EXISTS \"" + name + "\"");
+            }
+            System.out.println("Deferred " + names.size() + " indexes until the load completes");
+        }
+    }
+
+    /**
+     * Recreates the indexes dropped before the load, in parallel, then
+     * refreshes planner statistics.
+     */
+    private void rebuildSecondaryIndexes() throws SQLException, IOException, InterruptedException {
+        Path saved = workDir.resolve("deferred_indexes.sql");
+        List<String> definitions = Files.exists(saved)
+                ? Files.readAllLines(saved, StandardCharsets.UTF_8)
+                : List.of();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (String definition : definitions) {
+                String idempotent = definition.replaceFirst("INDEX ", "INDEX IF NOT EXISTS ");
+                futures.add(pool.submit(() -> {
+                    try (Connection conn = dbManager.openConnection();
+                            Statement stmt = conn.createStatement()) {
+                        stmt.execute(idempotent);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new SQLException("Index rebuild failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        Files.deleteIfExists(saved);
+
+        try (Connection conn = dbManager.openConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("ANALYZE orders");
+            stmt.execute("ANALYZE orderitems");
+        }
+        if (!definitions.isEmpty()) {
+            System.out.println("Rebuilt " + definitions.size() + " indexes");
+        }
+    }
+
+    /**
+     * Prints progress and throughput after a chunk completes.
+     */
+    private void report(String chunk, int total) {
+        int loaded = chunksLoaded.incrementAndGet();
+        double seconds = elapsedSeconds();
+        System.out.printf("[%d/%d] %s loaded, %,d rows so far, %,.0f rows/s%n",
+                loaded, total, chunk, rowsLoaded.get(), rowsLoaded.get() / Math.max(seconds, 0.001));
+    }
+
+    private double elapsedSeconds() {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+
+    private BufferedWriter writerFor(Map<String, BufferedWriter> writers, String chunk, String kind)
+            throws IOException {
+        String key = chunk + "." + kind;
+        BufferedWriter writer = writers.get(key);
+        if (writer == null) {
+            writer = Files.newBufferedWriter(chunkFile(chunk, kind), StandardCharsets.UTF_8);
+            writers.put(key, writer);
+        }
+        return writer;
+    }
+
+    private Path chunkFile(String chunk, String kind) {
+        return workDir.resolve("chunks").resolve(chunk + "." + kind + ".csv");
+    }
+
+    /**
+     * Maps a timeoforder value such as "2024-02-13 14:05:00" to its ISO week,
+     * e.g. "2024-W07".
+     */
+    private static String weekKey(String timestamp) {
+        String value = timestamp.trim();
+        if (value.startsWith("\"")) {
+            value = value.substring(1);
+        }
+        LocalDate date = LocalDate.parse(value.substring(0, 10));
+        return String.format("%d-W%02d", date.get(IsoFields.WEEK_BASED_YEAR), date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+    }
+
+    private static boolean isNumber(String value) {
+        String trimmed = value.trim();
+        if (trimmed.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < trimmed.length(); i++) {
+            if (!Character.isDigit(trimmed.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Command line entry point.
+     * Usage: OrderBulkLoader orders.csv orderitems.csv [threads] [workDir]
+     *
+     * @param args the input files, optional thread count and work directory
+     * @author harry
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: OrderBulkLoader orders.csv orderitems.csv [threads] [workDir]");
+            System.exit(2);
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        Path workDir = Paths.get(args.length > 3 ? args[3] : "bulkload");
+
+        DatabaseManager dbManager = new DatabaseManager();
+        try {
+            new OrderBulkLoader(dbManager, workDir, threads).load(Paths.get(args[0]), Paths.get(args[1]));
+        } catch (IOException | SQLException e) {
+            System.err.println("Bulk load failed: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            dbManager.close();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package New_Additions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * OrderCsvExporter writes orders joined with their order items to a CSV file
+ * for accounting. Rows are streamed from {@link DatabaseManager#streamOrderLines}
+ * and encoded straight into a direct buffer that is written to a FileChannel,
+ * so memory use stays constant however large the export is and the bytes go
+ * to the file without an extra heap copy.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class OrderCsvExporter {
+
+    private static final String HEADER = "orderid,timeoforder,employeeid,customerid,totalcost,"
+            + "orderitemid,menuitemid,menuitemname,drinkcategory,quantity\n";
+
+    /** Size of the direct write buffer */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Upper bound on one encoded row, so the buffer is flushed before it can overflow */
+    private static final int MAX_ROW_BYTES = 4096;
+
+    private final DatabaseManager dbManager;
+
+    /**
+     * Constructs a new exporter.
+     *
+     * @param dbManager the DatabaseManager to read orders from
+     * @author harry
+     */
+    public OrderCsvExporter(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    /**
+     * Exports every order item placed between two dates, both inclusive.
+     *
+     * @param file the CSV file to write; it is replaced if it exists
+     * @param startDate the first day to export
+     * @param endDate the last day to export
+     * @param category only export this drink category, ignoring case, or null for all
+     * @return the number of rows written
+     * @throws IOException if the file cannot be written
+     * @throws SQLException if the orders cannot be read
+     * @author harry
+     */
+    public long export(Path file, LocalDate startDate, LocalDate endDate, String category)
+            throws IOException, SQLException {
+        Timestamp from = Timestamp.valueOf(startDate.atStartOfDay());
+        Timestamp to = Timestamp.valueOf(endDate.plusDays(1).atStartOfDay());
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            RowEncoder encoder = new RowEncoder(channel);
+            encoder.putAscii(HEADER);
+            long rows = dbManager.streamOrderLines(from, to, category, encoder::encode);
+            encoder.flush();
+            channel.force(false);
+            return rows;
+        }
+    }
+
+    /**
+     * Encodes OrderLines as CSV bytes into a reusable direct buffer. Menu item
+     * names and categories are encoded once per menu item, and the
+     * "yyyy-MM-dd HH:" part of timestamps once per hour.
+     */
+    private static class RowEncoder {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final Map<Integer, byte[]> menuFields = new HashMap<>();
+        private final ZoneId zone = ZoneId.systemDefault();
+
+        private long hourStart = Long.MAX_VALUE;
+        private long hourEnd = Long.MIN_VALUE;
+        private final byte[] hourPrefix = new byte[14];
+
+        RowEncoder(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void encode(OrderLine line) throws IOException {
+            if (buffer.remaining() < MAX_ROW_BYTES) {
+                flush();
+            }
+            putInt(line.getOrderID());
+            buffer.put((byte) ',');
+            putTimestamp(line.getTimeOfOrder());
+            buffer.put((byte) ',');
+            putInt(line.getEmployeeID());
+            buffer.put((byte) ',');
+            if (line.getCustomerID() != null) {
+                putInt(line.getCustomerID());
+            }
+            buffer.put((byte) ',');
+            putCents(Math.round(line.getTotalCost() * 100));
+            buffer.put((byte) ',');
+            putInt(line.getOrderItemID());
+            buffer.put((byte) ',');
+            putInt(line.getMenuItemID());
+            buffer.put((byte) ',');
+            buffer.put(menuFields.computeIfAbsent(line.getMenuItemID(),
+                    id -> encodeMenuFields(line.getMenuItemName(), line.getDrinkCategory())));
+            buffer.put((byte) ',');
+            putInt(line.getQuantity());
+            buffer.put((byte) '\n');
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void putAscii(String text) {
+            buffer.put(text.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        private void putInt(long value) {
+            if (value < 0) {
+                buffer.put((byte) '-');
+                value = -value;
+            }
+            if (value >= 10) {
+                putInt(value / 10);
+            }
+            buffer.put((byte) ('0' + value % 10));
+        }
+
+        private void putCents(long cents) {
+            if (cents < 0) {
+                buffer.put((byte) '-');
+                cents = -cents;
+            }
+            putInt(cents / 100);
+            buffer.put((byte) '.');
+            buffer.put((byte) ('0' + (cents / 10) % 10));
+            buffer.put((byte) ('0' + cents % 10));
+        }
+
+        private void putTimestamp(long millis) {
+            if (millis < hourStart || millis >= hourEnd) {
+                // Start the hour from this instant's own fields: on the fall-back day a local hour
+                // occurs twice, and converting it back to an instant would pick the first one
+                LocalDateTime hour = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zone);
+                hourStart = millis - hour.getMinute() * 60_000L - hour.getSecond() * 1000L
+                        - hour.getNano() / 1_000_000;
+                hourEnd = hourStart + 3_600_000L;
+                ZoneOffsetTransition transition = zone.getRules().nextTransition(Instant.ofEpochMilli(hourStart));
+                if (transition != null) {
+                    hourEnd = Math.min(hourEnd, transition.toEpochSecond() * 1000);
+                }
+                byte[] prefix = String.format("%04d-%02d-%02d %02d:", hour.getYear(), hour.getMonthValue(),
+                        hour.getDayOfMonth(), hour.getHour()).getBytes(StandardCharsets.US_ASCII);
+                System.arraycopy(prefix, 0, hourPrefix, 0, hourPrefix.length);
+            }
+            int seconds = (int) ((millis - hourStart) / 1000);
+            buffer.put(hourPrefix);
+            putTwoDigits(seconds / 60);
+            buffer.put((byte) ':');
+            putTwoDigits(seconds % 60);
+        }
+
+        private void putTwoDigits(int value) {
+            buffer.put((byte) ('0' + value / 10));
+            buffer.put((byte) ('0' + value % 10));
+        }
+
+        private static byte[] encodeMenuFields(String name, String category) {
+            return (quote(name) + "," + quote(category)).getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static String quote(String value) {
+            if (value == null) {
+                return "";
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+
+    /**
+     * Command line entry point.
+     * Usage: OrderCsvExporter output.csv startDate endDate [category]
+     *
+     * @param args the output file, ISO start and end dates, optional category
+     * @author harry
+     */
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: OrderCsvExporter output.csv startDate endDate [category]");
+            System.exit(2);
+        }
+        DatabaseManager dbManager = new DatabaseManager();
+        try {
+            long start = System.nanoTime();
+            long rows = new OrderCsvExporter(dbManager).export(Paths.get(args[0]),
+                    LocalDate.parse(args[1]), LocalDate.parse(args[2]), args.length > 3 ? args[3] : null);
+            System.out.printf("Exported %,d rows in %d ms%n", rows, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | SQLException e) {
+            System.err.println("Export failed: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            dbManager.close();
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package New_Additions;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * OrderItem model class representing individual items within an order.
  * 
@@ -17,6 +21,11 @@ package New_Additions;
  * flexibility allows the boba shop to accommodate diverse customer preferences
  * and create personalized drink experiences.
  * 
+ * Customizations are stored compactly: sugar and ice levels as bytes, the
+ * milk type as a code in a shared dictionary, and toppings as a bitmask over
+ * the {@link Topping} catalogue with per-topping portion counts allocated only
+ * when a drink has a double portion of something.
+ * 
  */
 public class OrderItem {
     /** The unique identifier for the order item in the database */
@@ -32,104 +41,43 @@ public class OrderItem {
     private int quantity;
 
     // Customization options
+    /** Marks a sugar or ice level the customer did not choose */
+    private static final byte UNSET = -1;
+
     /**
      * Sugar level preference (0-100, where 0 is no sugar and 100 is maximum
-     * sweetness)
+     * sweetness), or {@link #UNSET}
      */
-    private int sugarLevel;
+    private byte sugarLevel = UNSET;
 
-    /** Ice level preference (0-100, where 0 is no ice and 100 is maximum ice) */
-    private int iceLevel;
+    /**
+     * Ice level preference (0-100, where 0 is no ice and 100 is maximum ice), or
+     * {@link #UNSET}
+     */
+    private byte iceLevel = UNSET;
 
     /**
-     * Type of milk used in the drink (e.g., "Regular", "Almond", "Oat", "Coconut")
+     * Type of milk used in the drink, as a code in the shared milk type
+     * dictionary (0 when not set)
      */
-    private String milkType;
+    private byte milkCode;
 
     // Toppings
-    /** Quantity of regular boba pearls added to the drink */
-    private int boba;
-
-    /** Quantity of lychee jelly pieces added to the drink */
-    private int lycheeJelly;
-
-    /** Quantity of grass jelly pieces added to the drink */
-    private int grassJelly;
-
-    /** Quantity of pudding portions added to the drink */
-    private int pudding;
-
-    /** Quantity of aloe vera pieces added to the drink */
-    private int aloeVera;
-
-    /** Quantity of red bean portions added to the drink */
-    private int redBean;
-
-    /** Quantity of coffee jelly pieces added to the drink */
-    private int coffeeJelly;
-
-    /** Quantity of coconut jelly pieces added to the drink */
-    private int coconutJelly;
-
-    /** Quantity of chia seed portions added to the drink */
-    private int chiaSeeds;
-
-    /** Quantity of taro ball portions added to the drink */
-    private int taroBalls;
-
-    /** Quantity of mango star pieces added to the drink */
-    private int mangoStars;
-
-    /** Quantity of rainbow jelly pieces added to the drink */
-    private int rainbowJelly;
-
-    /** Quantity of crystal boba pearls added to the drink */
-    private int crystalBoba;
-
-    /** Quantity of cheese foam toppings added to the drink */
-    private int cheeseFoam;
-
-    /** Quantity of whipped cream portions added to the drink */
-    private int whippedCream;
-
-    /** Quantity of Oreo crumb portions added to the drink */
-    private int oreoCrumbs;
-
-    /** Quantity of caramel drizzle portions added to the drink */
-    private int caramelDrizzle;
-
-    /** Quantity of matcha foam toppings added to the drink */
-    private int matchaFoam;
-
-    /** Quantity of strawberry popping boba pearls added to the drink */
-    private int strawberryPoppingBoba;
+    /** Bit {@code Topping.ordinal()} is set for each topping on the drink */
+    private int toppingMask;
 
-    /** Quantity of mango popping boba pearls added to the drink */
-    private int mangoPoppingBoba;
-
-    /** Quantity of blueberry popping boba pearls added to the drink */
-    private int blueberryPoppingBoba;
-
-    /** Quantity of passionfruit popping boba pearls added to the drink */
-    private int passionfruitPoppingBoba;
-
-    /** Quantity of chocolate chip portions added to the drink */
-    private int chocolateChips;
-
-    /** Quantity of peanut crumble portions added to the drink */
-    private int peanutCrumble;
-
-    /** Quantity of marshmallow portions added to the drink */
-    private int marshmallows;
-
-    /** Quantity of cinnamon dust sprinkles added to the drink */
-    private int cinnamonDust;
+    /**
+     * Portions per topping, indexed by {@code Topping.ordinal()}; only
+     * allocated once some topping has more than one portion, otherwise every
+     * topping in the mask has exactly one
+     */
+    private byte[] toppingCounts;
 
-    /** Quantity of honey drizzle portions added to the drink */
-    private int honey;
+    /** Milk type names by code; code 0 means no milk type. Copied on write so reads need no lock */
+    private static volatile String[] milkTypes = { null };
 
-    /** Quantity of mint leaf garnishes added to the drink */
-    private int mintLeaves;
+    /** Milk type codes by name */
+    private static final Map<String, Byte> MILK_CODES = new HashMap<>();
 
     // Constructors
     /**
@@ -239,10 +187,20 @@ public class OrderItem {
      * Gets the sugar level preference.
      * 
      * @return the sugar level (0-100, where 0 is no sugar and 100 is maximum
-     *         sweetness)
+     *         sweetness), or 0 when none was chosen
      */
     public int getSugarLevel() {
-        return sugarLevel;
+        return Math.max(sugarLevel, 0);
+    }
+
+    /**
+     * Checks whether a sugar level was chosen for this item.
+     * 
+     * @return true if {@link #setSugarLevel(int)} has been called
+     * @author harry
+     */
+    public boolean hasSugarLevel() {
+        return sugarLevel != UNSET;
     }
 
     /**
@@ -250,18 +208,30 @@ public class OrderItem {
      * 
      * @param sugarLevel the sugar level to set (0-100, where 0 is no sugar and 100
      *                   is maximum sweetness)
+     * @throws IllegalArgumentException if the level is outside 0-100
      */
     public void setSugarLevel(int sugarLevel) {
-        this.sugarLevel = sugarLevel;
+        this.sugarLevel = level(sugarLevel, "Sugar");
     }
 
     /**
      * Gets the ice level preference.
      * 
-     * @return the ice level (0-100, where 0 is no ice and 100 is maximum ice)
+     * @return the ice level (0-100, where 0 is no ice and 100 is maximum ice), or
+     *         0 when none was chosen
      */
     public int getIceLevel() {
-        return iceLevel;
+        return Math.max(iceLevel, 0);
+    }
+
+    /**
+     * Checks whether an ice level was chosen for this item.
+     * 
+     * @return true if {@link #setIceLevel(int)} has been called
+     * @author harry
+     */
+    public boolean hasIceLevel() {
+        return iceLevel != UNSET;
     }
 
     /**
@@ -269,9 +239,10 @@ public class OrderItem {
      * 
      * @param iceLevel the ice level to set (0-100, where 0 is no ice and 100 is
      *                 maximum ice)
+     * @throws IllegalArgumentException if the level is outside 0-100
      */
     public void setIceLevel(int iceLevel) {
-        this.iceLevel = iceLevel;
+        this.iceLevel = level(iceLevel, "Ice");
     }
 
     /**
@@ -280,7 +251,7 @@ public class OrderItem {
      * @return the type of milk (e.g., "Regular", "Almond", "Oat", "Coconut")
      */
     public String getMilkType() {
-        return milkType;
+        return milkTypeName(milkCode);
     }
 
     /**
@@ -290,17 +261,130 @@ public class OrderItem {
      *                 "Coconut")
      */
     public void setMilkType(String milkType) {
-        this.milkType = milkType;
+        this.milkCode = milkTypeCode(milkType);
+    }
+
+    /**
+     * Gets the dictionary code of the milk type.
+     * 
+     * @return the milk type code, 0 if no milk type is set
+     */
+    public byte getMilkCode() {
+        return milkCode;
+    }
+
+    // Toppings
+    /**
+     * Gets the number of portions of a topping.
+     * 
+     * @param topping the topping
+     * @return the number of portions added to the drink
+     */
+    public int getTopping(Topping topping) {
+        if ((toppingMask & topping.bit()) == 0) {
+            return 0;
+        }
+        return toppingCounts == null ? 1 : toppingCounts[topping.ordinal()];
+    }
+
+    /**
+     * Sets the number of portions of a topping.
+     * 
+     * @param topping the topping
+     * @param count   the number of portions, 0 to remove the topping
+     * @throws IllegalArgumentException if the count is negative or above 127
+     */
+    public void setTopping(Topping topping, int count) {
+        if (count < 0 || count > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid portions of " + topping + ": " + count);
+        }
+        if (count > 1 && toppingCounts == null) {
+            // Switch from "one portion each" to explicit counts
+            toppingCounts = new byte[Topping.count()];
+            for (int id = 0; id < toppingCounts.length; id++) {
+                if ((toppingMask & (1 << id)) != 0) {
+                    toppingCounts[id] = 1;
+                }
+            }
+        }
+        if (count == 0) {
+            toppingMask &= ~topping.bit();
+        } else {
+            toppingMask |= topping.bit();
+        }
+        if (toppingCounts != null) {
+            toppingCounts[topping.ordinal()] = (byte) count;
+        }
+    }
+
+    /**
+     * Gets the toppings on the drink as a bitmask.
+     * 
+     * @return bit {@code Topping.ordinal()} set for each topping on the drink
+     */
+    public int getToppingMask() {
+        return toppingMask;
+    }
+
+    /**
+     * Gets the price of the toppings on one drink.
+     * 
+     * @return the topping price in cents
+     */
+    public int getToppingsCents() {
+        int cents = 0;
+        for (int mask = toppingMask; mask != 0; mask &= mask - 1) {
+            Topping topping = Topping.byId(Integer.numberOfTrailingZeros(mask));
+            cents += topping.getPriceCents() * getTopping(topping);
+        }
+        return cents;
+    }
+
+    /**
+     * Packs the toppings as (topping ID, portions) byte pairs, the form they
+     * are stored in the orderitems.toppings column.
+     * 
+     * @return the packed toppings, or null if the drink has none
+     * @author harry
+     */
+    public byte[] getPackedToppings() {
+        if (toppingMask == 0) {
+            return null;
+        }
+        byte[] packed = new byte[Integer.bitCount(toppingMask) * 2];
+        int i = 0;
+        for (int mask = toppingMask; mask != 0; mask &= mask - 1) {
+            int id = Integer.numberOfTrailingZeros(mask);
+            packed[i++] = (byte) id;
+            packed[i++] = (byte) getTopping(Topping.byId(id));
+        }
+        return packed;
+    }
+
+    /**
+     * Replaces the toppings with ones packed by {@link #getPackedToppings()}.
+     * 
+     * @param packed the packed toppings, or null for none
+     * @author harry
+     */
+    public void setPackedToppings(byte[] packed) {
+        toppingMask = 0;
+        toppingCounts = null;
+        if (packed == null) {
+            return;
+        }
+        for (int i = 0; i + 1 < packed.length; i += 2) {
+            setTopping(Topping.byId(packed[i]), packed[i + 1]);
+        }
     }
 
-    // Topping getters and setters (simplified - including key ones)
     /**
      * Gets the quantity of regular boba pearls.
      * 
      * @return the number of boba pearl portions added to the drink
      */
     public int getBoba() {
-        return boba;
+        return getTopping(Topping.BOBA);
     }
 
     /**
@@ -309,7 +393,7 @@ public class OrderItem {
      * @param boba the number of boba pearl portions to add to the drink
      */
     public void setBoba(int boba) {
-        this.boba = boba;
+        setTopping(Topping.BOBA, boba);
     }
 
     /**
@@ -318,7 +402,7 @@ public class OrderItem {
      * @return the number of lychee jelly portions added to the drink
      */
     public int getLycheeJelly() {
-        return lycheeJelly;
+        return getTopping(Topping.LYCHEE_JELLY);
     }
 
     /**
@@ -327,7 +411,7 @@ public class OrderItem {
      * @param lycheeJelly the number of lychee jelly portions to add to the drink
      */
     public void setLycheeJelly(int lycheeJelly) {
-        this.lycheeJelly = lycheeJelly;
+        setTopping(Topping.LYCHEE_JELLY, lycheeJelly);
     }
 
     /**
@@ -336,7 +420,7 @@ public class OrderItem {
      * @return the number of grass jelly portions added to the drink
      */
     public int getGrassJelly() {
-        return grassJelly;
+        return getTopping(Topping.GRASS_JELLY);
     }
 
     /**
@@ -345,7 +429,49 @@ public class OrderItem {
      * @param grassJelly the number of grass jelly portions to add to the drink
      */
     public void setGrassJelly(int grassJelly) {
-        this.grassJelly = grassJelly;
+        setTopping(Topping.GRASS_JELLY, grassJelly);
+    }
+
+    /**
+     * Looks up the dictionary code of a milk type, adding it if it is new.
+     * 
+     * @param milkType the milk type, or null
+     * @return the code, 0 for null
+     * @throws IllegalStateException if the dictionary is full
+     */
+    public static synchronized byte milkTypeCode(String milkType) {
+        if (milkType == null) {
+            return 0;
+        }
+        Byte code = MILK_CODES.get(milkType);
+        if (code == null) {
+            if (milkTypes.length > Byte.MAX_VALUE) {
+                throw new IllegalStateException("Too many milk types: " + milkType);
+            }
+            code = (byte) milkTypes.length;
+            String[] grown = Arrays.copyOf(milkTypes, milkTypes.length + 1);
+            grown[code] = milkType;
+            milkTypes = grown;
+            MILK_CODES.put(milkType, code);
+        }
+        return code;
+    }
+
+    /**
+     * Looks up the milk type of a dictionary code.
+     * 
+     * @param code the milk type code
+     * @return the milk type, or null for code 0
+     */
+    public static String milkTypeName(byte code) {
+        return milkTypes[code];
+    }
+
+    private static byte level(int level, String what) {
+        if (level < 0 || level > 100) {
+            throw new IllegalArgumentException(what + " level must be between 0 and 100: " + level);
+        }
+        return (byte) level;
     }
 
     /**
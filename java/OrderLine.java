@@ -0,0 +1,152 @@
+package New_Additions;
+
+/**
+ * OrderLine is one order item joined with its order and menu item, as
+ * streamed by {@link DatabaseManager#streamOrderLines}. A single instance is
+ * reused for every row of a stream, so visitors must copy any values they
+ * want to keep.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class OrderLine {
+    int orderID;
+    long timeOfOrder;
+    int employeeID;
+    Integer customerID;
+    double totalCost;
+    int orderItemID;
+    int menuItemID;
+    String menuItemName;
+    String drinkCategory;
+    int quantity;
+    /** The drink as an order item with its menu item, quantity and toppings; reused like the line */
+    final OrderItem item = new OrderItem();
+
+    /**
+     * Gets the order ID.
+     *
+     * @return the order ID
+     * @author harry
+     */
+    public int getOrderID() {
+        return orderID;
+    }
+
+    /**
+     * Gets the time the order was placed.
+     *
+     * @return the time of order in epoch milliseconds
+     * @author harry
+     */
+    public long getTimeOfOrder() {
+        return timeOfOrder;
+    }
+
+    /**
+     * Gets the employee who took the order.
+     *
+     * @return the employee ID
+     * @author harry
+     */
+    public int getEmployeeID() {
+        return employeeID;
+    }
+
+    /**
+     * Gets the customer of the order.
+     *
+     * @return the customer ID, or null for walk-in customers
+     * @author harry
+     */
+    public Integer getCustomerID() {
+        return customerID;
+    }
+
+    /**
+     * Gets the total cost of the whole order, repeated on each of its lines.
+     *
+     * @return the order total in dollars
+     * @author harry
+     */
+    public double getTotalCost() {
+        return totalCost;
+    }
+
+    /**
+     * Gets the order item ID.
+     *
+     * @return the order item ID
+     * @author harry
+     */
+    public int getOrderItemID() {
+        return orderItemID;
+    }
+
+    /**
+     * Gets the menu item ID.
+     *
+     * @return the menu item ID
+     * @author harry
+     */
+    public int getMenuItemID() {
+        return menuItemID;
+    }
+
+    /**
+     * Gets the menu item name.
+     *
+     * @return the menu item name
+     * @author harry
+     */
+    public String getMenuItemName() {
+        return menuItemName;
+    }
+
+    /**
+     * Gets the drink category of the menu item.
+     *
+     * @return the drink category
+     * @author harry
+     */
+    public String getDrinkCategory() {
+        return drinkCategory;
+    }
+
+    /**
+     * Gets the quantity ordered.
+     *
+     * @return the quantity
+     * @author harry
+     */
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Gets the drink as an order item carrying its menu item, quantity and
+     * toppings, for recipe and price lookups. It is reused for the next row
+     * like the line itself.
+     *
+     * @return the order item of the current row
+     * @author harry
+     */
+    public OrderItem getOrderItem() {
+        return item;
+    }
+
+    /**
+     * Receives the rows of an order line stream.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * Handles one row; the line object is reused for the next row.
+         *
+         * @param line the current row
+         * @throws java.io.IOException if the row cannot be written out
+         */
+        void visit(OrderLine line) throws java.io.IOException;
+    }
+}
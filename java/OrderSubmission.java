@@ -0,0 +1,108 @@
+package New_Additions;
+
+import java.util.List;
+
+/**
+ * OrderSubmission pairs an order with its items for batched order creation
+ * and records what happened to it.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class OrderSubmission {
+
+    /** The result of submitting one order in a batch. */
+    public enum Outcome {
+        /** Not processed yet */
+        PENDING,
+        /** The order and its items were stored */
+        CREATED,
+        /** Rejected because an ingredient would run out */
+        INSUFFICIENT_INVENTORY,
+        /** Not stored because the batch failed */
+        FAILED,
+        /** Stored by an earlier submission with the same order key, whose ID the order now has */
+        DUPLICATE
+    }
+
+    private final Order order;
+    private final List<OrderItem> items;
+    private Outcome outcome = Outcome.PENDING;
+    private String message;
+
+    /**
+     * Constructs a new submission for an order and its items.
+     *
+     * @param order the Order object to be created
+     * @param items List of OrderItem objects for the order
+     * @author harry
+     */
+    public OrderSubmission(Order order, List<OrderItem> items) {
+        this.order = order;
+        this.items = items;
+    }
+
+    /**
+     * Gets the order.
+     *
+     * @return the order; its ID is set once the order is created
+     * @author harry
+     */
+    public Order getOrder() {
+        return order;
+    }
+
+    /**
+     * Gets the order items.
+     *
+     * @return the items of the order
+     * @author harry
+     */
+    public List<OrderItem> getItems() {
+        return items;
+    }
+
+    /**
+     * Gets the outcome of the submission.
+     *
+     * @return the outcome
+     * @author harry
+     */
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Gets the reason for a rejected or failed submission.
+     *
+     * @return the message, or null if the order was created
+     * @author harry
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Records the outcome of the submission.
+     *
+     * @param outcome the outcome
+     * @param message the reason, or null on success
+     * @author harry
+     */
+    public void setOutcome(Outcome outcome, String message) {
+        this.outcome = outcome;
+        this.message = message;
+    }
+
+    /**
+     * Returns a string representation of the submission.
+     *
+     * @return the order and its outcome
+     * @author harry
+     */
+    @Override
+    public String toString() {
+        return order + " [" + outcome + (message == null ? "" : ": " + message) + "]";
+    }
+}
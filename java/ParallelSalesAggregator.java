@@ -0,0 +1,367 @@
+package New_Additions;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * ParallelSalesAggregator summarises large ranges of a
+ * {@link ColumnarSalesStore} on a ForkJoinPool. The scan is split into chunks
+ * of rows, each chunk computes a partial {@link Summary}, and partials are
+ * merged on the way back up, so multi-year reports scale with core count.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class ParallelSalesAggregator {
+
+    /** Rows a task scans itself instead of splitting further */
+    private static final int CHUNK_ROWS = 1 << 16;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructs an aggregator on the common ForkJoinPool.
+     *
+     * @author harry
+     */
+    public ParallelSalesAggregator() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs an aggregator on a given pool.
+     *
+     * @param pool the pool to run scans on
+     * @author harry
+     */
+    public ParallelSalesAggregator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Totals, extremes and per-menu-item histograms of a set of order lines.
+     * Summaries of disjoint row ranges can be merged.
+     */
+    public static class Summary {
+        private long lines;
+        private long units;
+        private long orders;
+        private double revenue;
+        private double sales;
+        private double minLineRevenue = Double.POSITIVE_INFINITY;
+        private double maxLineRevenue = Double.NEGATIVE_INFINITY;
+        private long firstTime = Long.MAX_VALUE;
+        private long lastTime = Long.MIN_VALUE;
+        private long[] unitsByMenuItem = new long[0];
+        private double[] revenueByMenuItem = new double[0];
+
+        void add(ColumnarSalesStore.Columns c, int row) {
+            int quantity = c.quantities[row];
+            double lineRevenue = c.revenues[row];
+            long time = c.times[row];
+            int menuItemId = c.menuItemIds[row];
+
+            lines++;
+            units += quantity;
+            revenue += lineRevenue;
+            if (c.firstLines[row]) {
+                orders++;
+                sales += c.orderTotals[row];
+            }
+            minLineRevenue = Math.min(minLineRevenue, lineRevenue);
+            maxLineRevenue = Math.max(maxLineRevenue, lineRevenue);
+            firstTime = Math.min(firstTime, time);
+            lastTime = Math.max(lastTime, time);
+
+            if (menuItemId >= unitsByMenuItem.length) {
+                growHistogram(menuItemId + 1);
+            }
+            unitsByMenuItem[menuItemId] += quantity;
+            revenueByMenuItem[menuItemId] += lineRevenue;
+        }
+
+        /**
+         * Adds another summary into this one.
+         *
+         * @param other the summary of a disjoint range
+         * @return this summary
+         * @author harry
+         */
+        public Summary merge(Summary other) {
+            lines += other.lines;
+            units += other.units;
+            orders += other.orders;
+            revenue += other.revenue;
+            sales += other.sales;
+            minLineRevenue = Math.min(minLineRevenue, other.minLineRevenue);
+            maxLineRevenue = Math.max(maxLineRevenue, other.maxLineRevenue);
+            firstTime = Math.min(firstTime, other.firstTime);
+            lastTime = Math.max(lastTime, other.lastTime);
+            if (other.unitsByMenuItem.length > unitsByMenuItem.length) {
+                growHistogram(other.unitsByMenuItem.length);
+            }
+            for (int id = 0; id < other.unitsByMenuItem.length; id++) {
+                unitsByMenuItem[id] += other.unitsByMenuItem[id];
+                revenueByMenuItem[id] += other.revenueByMenuItem[id];
+            }
+            return this;
+        }
+
+        private void growHistogram(int length) {
+            unitsByMenuItem = Arrays.copyOf(unitsByMenuItem, length);
+            revenueByMenuItem = Arrays.copyOf(revenueByMenuItem, length);
+        }
+
+        /** @return the number of order lines */
+        public long getLines() {
+            return lines;
+        }
+
+        /** @return the number of drinks sold */
+        public long getUnits() {
+            return units;
+        }
+
+        /** @return the number of orders whose first line is in the range */
+        public long getOrders() {
+            return orders;
+        }
+
+        /** @return the sum of line revenue in dollars */
+        public double getRevenue() {
+            return revenue;
+        }
+
+        /** @return the sum of order totals in dollars */
+        public double getSales() {
+            return sales;
+        }
+
+        /** @return the smallest line revenue, or 0 if there are no lines */
+        public double getMinLineRevenue() {
+            return lines == 0 ? 0.0 : minLineRevenue;
+        }
+
+        /** @return the largest line revenue, or 0 if there are no lines */
+        public double getMaxLineRevenue() {
+            return lines == 0 ? 0.0 : maxLineRevenue;
+        }
+
+        /** @return the time of the earliest line, or Long.MAX_VALUE if there are none */
+        public long getFirstTime() {
+            return firstTime;
+        }
+
+        /** @return the time of the latest line, or Long.MIN_VALUE if there are none */
+        public long getLastTime() {
+            return lastTime;
+        }
+
+        /**
+         * Gets the units sold of one menu item.
+         *
+         * @param menuItemId the menu item ID
+         * @return the units sold
+         * @author harry
+         */
+        public long getUnits(int menuItemId) {
+            return menuItemId < unitsByMenuItem.length ? unitsByMenuItem[menuItemId] : 0L;
+        }
+
+        /**
+         * Gets the line revenue of one menu item.
+         *
+         * @param menuItemId the menu item ID
+         * @return the revenue in dollars
+         * @author harry
+         */
+        public double getRevenue(int menuItemId) {
+            return menuItemId < revenueByMenuItem.length ? revenueByMenuItem[menuItemId] : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d orders, %,d lines, %,d units, sales $%,.2f, line revenue $%,.2f (min $%.2f, max $%.2f)",
+                    orders, lines, units, sales, revenue, getMinLineRevenue(), getMaxLineRevenue());
+        }
+    }
+
+    /**
+     * Summarises the lines in a time range in parallel.
+     *
+     * @param store the sales columns
+     * @param fromMillis the inclusive start of the range
+     * @param toMillis the exclusive end of the range
+     * @param filterBy the dimension to filter on, or null for no filter
+     * @param filterValue the code to keep, as for {@link ColumnarSalesStore#groupBy}
+     * @return the summary
+     * @author harry
+     */
+    public Summary aggregate(ColumnarSalesStore store, long fromMillis, long toMillis,
+            ColumnarSalesStore.Dimension filterBy, int filterValue) {
+        Scan scan = new Scan(store, fromMillis, toMillis, filterBy, filterValue);
+        return pool.invoke(new ChunkTask(scan, scan.fromRow, scan.toRow));
+    }
+
+    /**
+     * Summarises the lines in a time range on the calling thread, for
+     * comparison and for small ranges.
+     *
+     * @param store the sales columns
+     * @param fromMillis the inclusive start of the range
+     * @param toMillis the exclusive end of the range
+     * @param filterBy the dimension to filter on, or null for no filter
+     * @param filterValue the code to keep
+     * @return the summary
+     * @author harry
+     */
+    public static Summary aggregateSequential(ColumnarSalesStore store, long fromMillis, long toMillis,
+            ColumnarSalesStore.Dimension filterBy, int filterValue) {
+        Scan scan = new Scan(store, fromMillis, toMillis, filterBy, filterValue);
+        return scan.summarise(scan.fromRow, scan.toRow);
+    }
+
+    /**
+     * The fixed parameters of one scan, shared by all of its tasks.
+     */
+    private static class Scan {
+        final ColumnarSalesStore.Columns columns;
+        final long fromMillis;
+        final long toMillis;
+        final ColumnarSalesStore.Dimension filterBy;
+        final int filterValue;
+        final int fromRow;
+        final int toRow;
+
+        Scan(ColumnarSalesStore store, long fromMillis, long toMillis,
+                ColumnarSalesStore.Dimension filterBy, int filterValue) {
+            this.columns = store.columns();
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+            this.filterBy = filterBy;
+            this.filterValue = filterValue;
+            int size = columns.size;
+            if (store.isTimeOrdered()) {
+                fromRow = ColumnarSalesStore.lowerBound(columns.times, size, fromMillis);
+                toRow = ColumnarSalesStore.lowerBound(columns.times, size, toMillis);
+            } else {
+                fromRow = 0;
+                toRow = size;
+            }
+        }
+
+        Summary summarise(int from, int to) {
+            Summary summary = new Summary();
+            for (int row = from; row < to; row++) {
+                long time = columns.times[row];
+                if (time < fromMillis || time >= toMillis) {
+                    continue;
+                }
+                if (filterBy != null && ColumnarSalesStore.valueOf(filterBy, columns, row) != filterValue) {
+                    continue;
+                }
+                summary.add(columns, row);
+            }
+            return summary;
+        }
+    }
+
+    /**
+     * Splits a row range in half until it is small enough to scan directly.
+     */
+    private static class ChunkTask extends RecursiveTask<Summary> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Scan scan;
+        private final int from;
+        private final int to;
+
+        ChunkTask(Scan scan, int from, int to) {
+            this.scan = scan;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Summary compute() {
+            if (to - from <= CHUNK_ROWS) {
+                return scan.summarise(from, to);
+            }
+            int mid = (from + to) >>> 1;
+            ChunkTask left = new ChunkTask(scan, from, mid);
+            left.fork();
+            Summary right = new ChunkTask(scan, mid, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * Generates a synthetic history, loads it into sales columns and compares
+     * sequential and parallel aggregation over it at several pool sizes.
+     * Usage: ParallelSalesAggregator [days] [ordersPerDay]
+     *
+     * @param args optional days and orders per weekday
+     * @author harry
+     */
+    public static void main(String[] args) {
+        int days = args.length > 0 ? Integer.parseInt(args[0]) : 3 * 365;
+        int perDay = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        MockDataProvider store = new MockDataProvider();
+        LocalDate firstDay = LocalDate.now().minusDays(days - 1);
+        int generated = new SyntheticHistoryGenerator(42L, perDay).generate(store, firstDay, days);
+
+        ColumnarSalesStore columns = new ColumnarSalesStore();
+        for (MenuItem item : store.getAllMenuItems()) {
+            columns.registerMenuItem(item);
+        }
+        PricingEngine pricing = new PricingEngine(store.getAllMenuItems());
+        Timestamp from = Timestamp.valueOf(firstDay.atStartOfDay());
+        Timestamp to = Timestamp.valueOf(LocalDate.now().plusDays(1).atStartOfDay());
+        for (Order order : store.getOrdersBetween(from, to)) {
+            List<OrderItem> items = store.getOrderItemsForOrder(order.getOrderID());
+            columns.appendOrder(order, items,
+                    pricing.chargedLineCents(items, PricingEngine.toCents(order.getTotalCost())));
+        }
+        System.out.printf("Loaded %,d orders as %,d order lines%n", generated, columns.size());
+
+        long start = from.getTime();
+        long end = to.getTime();
+        Summary expected = null;
+        for (int run = 0; run < 3; run++) {
+            long began = System.nanoTime();
+            expected = aggregateSequential(columns, start, end, null, 0);
+            System.out.printf("sequential: %d ms%n", (System.nanoTime() - began) / 1_000_000);
+        }
+        System.out.println(expected);
+
+        // Powers of two below the core count, then the core count itself
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<Integer> poolSizes = new ArrayList<>();
+        for (int threads = 1; threads < cores; threads *= 2) {
+            poolSizes.add(threads);
+        }
+        poolSizes.add(cores);
+        for (int threads : poolSizes) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            ParallelSalesAggregator aggregator = new ParallelSalesAggregator(pool);
+            long best = Long.MAX_VALUE;
+            Summary result = null;
+            for (int run = 0; run < 5; run++) {
+                long began = System.nanoTime();
+                result = aggregator.aggregate(columns, start, end, null, 0);
+                best = Math.min(best, System.nanoTime() - began);
+            }
+            pool.shutdown();
+            System.out.printf("parallel x%d: %d ms, %s%n", threads, best / 1_000_000,
+                    result.getUnits() == expected.getUnits() && result.getOrders() == expected.getOrders()
+                            ? "matches" : "MISMATCH");
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package New_Additions;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * PricingEngine prices carts and orders in whole cents. Menu item and
+ * topping prices are held in dense long arrays indexed by ID, so pricing a
+ * line is two array reads and a multiply with no allocation and no floating
+ * point rounding drift across lines.
+ *
+ * The tables are immutable once published; a price change builds a new
+ * table and swaps it in with one volatile write, so a total is always
+ * computed against a single consistent set of prices. CashierUI uses the
+ * engine for the running total and DatabaseManager recomputes the total
+ * with it when an order is committed.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class PricingEngine {
+
+    /** One consistent set of prices; never modified after publication. */
+    private static final class PriceTable {
+        /** Menu item price in cents by menu item ID, -1 where there is no item */
+        final long[] menuCents;
+        /** Topping price in cents by topping ID */
+        final long[] toppingCents;
+
+        PriceTable(long[] menuCents, long[] toppingCents) {
+            this.menuCents = menuCents;
+            this.toppingCents = toppingCents;
+        }
+    }
+
+    private volatile PriceTable table;
+
+    /**
+     * Constructs an engine priced from a menu and the topping catalogue.
+     *
+     * @param menuItems the menu items to price
+     * @author harry
+     */
+    public PricingEngine(Collection<MenuItem> menuItems) {
+        long[] toppingCents = new long[Topping.count()];
+        for (Topping topping : Topping.values()) {
+            toppingCents[topping.ordinal()] = topping.getPriceCents();
+        }
+        this.table = new PriceTable(buildMenuTable(menuItems), toppingCents);
+    }
+
+    private static long[] buildMenuTable(Collection<MenuItem> menuItems) {
+        int maxId = -1;
+        for (MenuItem item : menuItems) {
+            maxId = Math.max(maxId, item.getMenuItemID());
+        }
+        long[] menuCents = new long[maxId + 1];
+        Arrays.fill(menuCents, -1);
+        for (MenuItem item : menuItems) {
+            if (item.getMenuItemID() >= 0) {
+                menuCents[item.getMenuItemID()] = toCents(item.getPrice());
+            }
+        }
+        return menuCents;
+    }
+
+    /**
+     * Replaces every menu price, for example after the menu is reloaded.
+     *
+     * @param menuItems the full menu
+     * @author harry
+     */
+    public synchronized void reload(Collection<MenuItem> menuItems) {
+        table = new PriceTable(buildMenuTable(menuItems), table.toppingCents);
+    }
+
+    /**
+     * Sets the price of one menu item, adding it if it is new. Carts priced
+     * concurrently see either the old table or the new one, never a mix.
+     *
+     * @param menuItemId the menu item ID
+     * @param price the new price in dollars
+     * @author harry
+     */
+    public synchronized void setPrice(int menuItemId, double price) {
+        if (menuItemId < 0) {
+            throw new IllegalArgumentException("Invalid menu item ID: " + menuItemId);
+        }
+        PriceTable current = table;
+        long[] menuCents = Arrays.copyOf(current.menuCents, Math.max(current.menuCents.length, menuItemId + 1));
+        if (menuCents.length > current.menuCents.length) {
+            Arrays.fill(menuCents, current.menuCents.length, menuCents.length, -1);
+        }
+        menuCents[menuItemId] = toCents(price);
+        table = new PriceTable(menuCents, current.toppingCents);
+    }
+
+    /**
+     * Checks whether a menu item has a price.
+     *
+     * @param menuItemId the menu item ID
+     * @return true if the item can be priced
+     * @author harry
+     */
+    public boolean isPriced(int menuItemId) {
+        long[] menuCents = table.menuCents;
+        return menuItemId >= 0 && menuItemId < menuCents.length && menuCents[menuItemId] >= 0;
+    }
+
+    /**
+     * Gets the price of one plain drink.
+     *
+     * @param menuItemId the menu item ID
+     * @return the price in cents
+     * @throws IllegalArgumentException if the menu item has no price
+     * @author harry
+     */
+    public long unitCents(int menuItemId) {
+        return menuCents(table, menuItemId);
+    }
+
+    /**
+     * Prices a line of plain drinks.
+     *
+     * @param menuItemId the menu item ID
+     * @param quantity the number of drinks
+     * @return the line total in cents
+     * @throws IllegalArgumentException if the menu item has no price
+     * @author harry
+     */
+    public long lineCents(int menuItemId, int quantity) {
+        return menuCents(table, menuItemId) * quantity;
+    }
+
+    /**
+     * Prices an order item, toppings included.
+     *
+     * @param item the order item
+     * @return the line total in cents
+     * @throws IllegalArgumentException if the menu item has no price
+     * @author harry
+     */
+    public long lineCents(OrderItem item) {
+        return lineCents(table, item);
+    }
+
+    /**
+     * Prices a whole order against one consistent price table.
+     *
+     * @param items the items of the order
+     * @return the order total in cents
+     * @throws IllegalArgumentException if a menu item has no price
+     * @author harry
+     */
+    public long orderCents(List<OrderItem> items) {
+        PriceTable current = table;
+        long total = 0;
+        for (int i = 0, n = items.size(); i < n; i++) {
+            total += lineCents(current, items.get(i));
+        }
+        return total;
+    }
+
+    /**
+     * Works out what each line of a committed order was charged: the order
+     * total, after promotions and bundles, spread over the lines in
+     * proportion to their list prices. The lines add up to the total
+     * exactly. A line whose menu item has no price counts as free; if no
+     * line has a price, the total goes to the first line.
+     *
+     * @param items the items of the order
+     * @param totalCents the total charged for the order
+     * @return the charged cents of each line, in item order
+     * @author harry
+     */
+    public long[] chargedLineCents(List<OrderItem> items, long totalCents) {
+        PriceTable current = table;
+        long[] charged = new long[items.size()];
+        long listTotal = 0;
+        for (int i = 0; i < charged.length; i++) {
+            OrderItem item = items.get(i);
+            long[] menuCents = current.menuCents;
+            int id = item.getMenuItemID();
+            charged[i] = id >= 0 && id < menuCents.length && menuCents[id] >= 0 ? lineCents(current, item) : 0;
+            listTotal += charged[i];
+        }
+        if (listTotal <= 0) {
+            Arrays.fill(charged, 0);
+            if (charged.length > 0) {
+                charged[0] = totalCents;
+            }
+            return charged;
+        }
+        // Split at cumulative boundaries so rounding never loses or adds a cent
+        long listSoFar = 0;
+        long chargedSoFar = 0;
+        for (int i = 0; i < charged.length; i++) {
+            listSoFar += charged[i];
+            long boundary = Math.floorDiv(Math.multiplyExact(totalCents, listSoFar), listTotal);
+            charged[i] = boundary - chargedSoFar;
+            chargedSoFar = boundary;
+        }
+        return charged;
+    }
+
+    private static long lineCents(PriceTable current, OrderItem item) {
+        long unit = menuCents(current, item.getMenuItemID());
+        for (int mask = item.getToppingMask(); mask != 0; mask &= mask - 1) {
+            int id = Integer.numberOfTrailingZeros(mask);
+            unit += current.toppingCents[id] * item.getTopping(Topping.byId(id));
+        }
+        return unit * item.getQuantity();
+    }
+
+    private static long menuCents(PriceTable current, int menuItemId) {
+        long[] menuCents = current.menuCents;
+        if (menuItemId < 0 || menuItemId >= menuCents.length || menuCents[menuItemId] < 0) {
+            throw new IllegalArgumentException("No price for menu item ID: " + menuItemId);
+        }
+        return menuCents[menuItemId];
+    }
+
+    /**
+     * Converts a dollar amount to cents, rounding to the nearest cent.
+     *
+     * @param dollars the amount in dollars
+     * @return the amount in cents
+     * @author harry
+     */
+    public static long toCents(double dollars) {
+        return Math.round(dollars * 100);
+    }
+
+    /**
+     * Converts cents to dollars for storage in a money column.
+     *
+     * @param cents the amount in cents
+     * @return the amount in dollars
+     * @author harry
+     */
+    public static double toDollars(long cents) {
+        return cents / 100.0;
+    }
+
+    /**
+     * Formats cents as a dollar amount such as $4.50.
+     *
+     * @param cents the amount in cents
+     * @return the formatted amount
+     * @author harry
+     */
+    public static String format(long cents) {
+        long abs = Math.abs(cents);
+        return (cents < 0 ? "-$" : "$") + abs / 100 + "." + (abs % 100 < 10 ? "0" : "") + abs % 100;
+    }
+}
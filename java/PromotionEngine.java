@@ -0,0 +1,491 @@
+package New_Additions;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * PromotionEngine applies happy-hour and other promotions to carts. The
+ * active rules are compiled into lookup tables indexed by hour and menu item
+ * ID, with category rules expanded to the items of the category, so
+ * evaluating a cart line is a few array reads however many rules exist.
+ *
+ * Three kinds of rule are supported: a percentage off, a fixed amount off
+ * each unit, and buy N get one free, where every (N + 1)th unit in the
+ * rule's scope is free, cheapest units first. Rules of the same kind do
+ * not stack; the one best for the customer applies. Discounts apply to the
+ * drink price, not to toppings.
+ *
+ * Rules are read from a text file with one rule per line:
+ * name|PERCENT_OFF, CENTS_OFF or BUY_N|ALL, CATEGORY or ITEM|target|hours|value
+ * for example "Happy Hour|PERCENT_OFF|CATEGORY|Milk Tea|14-17|20". Hours
+ * are a start and an exclusive end hour and may wrap past midnight.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class PromotionEngine {
+
+    /** Default location of the promotion rules, next to the other data files */
+    public static final Path DEFAULT_PATH = Paths.get("promotions.txt");
+
+    private static final int HOURS = 24;
+
+    /** What a rule gives. */
+    public enum Kind {
+        /** A percentage off each unit */
+        PERCENT_OFF,
+        /** A fixed number of cents off each unit */
+        CENTS_OFF,
+        /** Every (N + 1)th unit free */
+        BUY_N
+    }
+
+    /** Which items a rule covers. */
+    public enum Scope {
+        ALL, CATEGORY, ITEM
+    }
+
+    /** One promotion rule as written in the rules file. */
+    public static final class Rule {
+        private final String name;
+        private final Kind kind;
+        private final Scope scope;
+        private final String target;
+        private final int startHour;
+        private final int endHour;
+        private final int value;
+
+        /**
+         * Constructs a rule.
+         *
+         * @param name the name shown to staff
+         * @param kind what the rule gives
+         * @param scope which items it covers
+         * @param target the category name or menu item ID, ignored for ALL
+         * @param startHour the first hour the rule is active, 0 to 23
+         * @param endHour the hour it stops, 1 to 24; before startHour to wrap past midnight
+         * @param value the percentage, cents or N, depending on the kind
+         * @author harry
+         */
+        public Rule(String name, Kind kind, Scope scope, String target, int startHour, int endHour, int value) {
+            if (startHour < 0 || startHour > 23 || endHour < 1 || endHour > HOURS || startHour == endHour) {
+                throw new IllegalArgumentException("Invalid hours: " + startHour + "-" + endHour);
+            }
+            if (value <= 0 || (kind == Kind.PERCENT_OFF && value > 100)) {
+                throw new IllegalArgumentException("Invalid value for " + kind + ": " + value);
+            }
+            if (scope == Scope.ITEM) {
+                Integer.parseInt(target);
+            }
+            this.name = name;
+            this.kind = kind;
+            this.scope = scope;
+            this.target = target;
+            this.startHour = startHour;
+            this.endHour = endHour;
+            this.value = value;
+        }
+
+        /**
+         * Parses one line of the rules file.
+         *
+         * @param line the line
+         * @return the rule
+         * @throws IllegalArgumentException if the line is not a valid rule
+         * @author harry
+         */
+        public static Rule parse(String line) {
+            String[] fields = line.split("\\|", -1);
+            if (fields.length != 6) {
+                throw new IllegalArgumentException("Expected 6 fields but found " + fields.length);
+            }
+            String[] hours = fields[4].trim().split("-");
+            if (hours.length != 2) {
+                throw new IllegalArgumentException("Invalid hours: " + fields[4]);
+            }
+            return new Rule(fields[0].trim(), Kind.valueOf(fields[1].trim().toUpperCase()),
+                    Scope.valueOf(fields[2].trim().toUpperCase()), fields[3].trim(),
+                    Integer.parseInt(hours[0].trim()), Integer.parseInt(hours[1].trim()),
+                    Integer.parseInt(fields[5].trim()));
+        }
+
+        /**
+         * Gets the name shown to staff.
+         *
+         * @return the rule name
+         * @author harry
+         */
+        public String getName() {
+            return name;
+        }
+
+        boolean isActive(int hour) {
+            return startHour < endHour ? hour >= startHour && hour < endHour
+                    : hour >= startHour || hour < endHour;
+        }
+
+        boolean covers(MenuItem item) {
+            switch (scope) {
+                case ALL:
+                    return true;
+                case CATEGORY:
+                    return target.equalsIgnoreCase(item.getDrinkCategory());
+                default:
+                    return Integer.parseInt(target) == item.getMenuItemID();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name + "|" + kind + "|" + scope + "|" + target + "|" + startHour + "-" + endHour + "|" + value;
+        }
+    }
+
+    /** Compiled rules; slot = hour * stride + menu item ID. Never modified after publication. */
+    private static final class Table {
+        final int stride;
+        final byte[] percentOff;
+        final int[] centsOff;
+        final short[] buyGroup;
+        /** Units per free unit (N + 1) of each buy-N rule, by group */
+        final int[] groupPeriod;
+
+        Table(int stride, int groups) {
+            this.stride = stride;
+            this.percentOff = new byte[HOURS * stride];
+            this.centsOff = new int[HOURS * stride];
+            this.buyGroup = new short[HOURS * stride];
+            this.groupPeriod = new int[groups];
+            Arrays.fill(buyGroup, (short) -1);
+        }
+
+        int slot(int hour, int menuItemId) {
+            return menuItemId >= 0 && menuItemId < stride ? hour * stride + menuItemId : -1;
+        }
+    }
+
+    private final List<Rule> rules;
+    private volatile Table table;
+
+    /**
+     * Constructs an engine with a set of rules compiled against a menu.
+     *
+     * @param rules the active rules
+     * @param menuItems the menu, used to expand category rules
+     * @author harry
+     */
+    public PromotionEngine(List<Rule> rules, Collection<MenuItem> menuItems) {
+        this.rules = new ArrayList<>(rules);
+        compile(menuItems);
+    }
+
+    /**
+     * Recompiles the rules against a changed menu, for example after an item
+     * is added to a category with a promotion. Carts already open keep the
+     * tables they started with.
+     *
+     * @param menuItems the full menu
+     * @author harry
+     */
+    public synchronized void compile(Collection<MenuItem> menuItems) {
+        int maxId = -1;
+        for (MenuItem item : menuItems) {
+            maxId = Math.max(maxId, item.getMenuItemID());
+        }
+        int groups = 0;
+        for (Rule rule : rules) {
+            groups += rule.kind == Kind.BUY_N ? 1 : 0;
+        }
+        if (groups > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many buy-N rules: " + groups);
+        }
+
+        Table compiled = new Table(maxId + 1, groups);
+        int group = 0;
+        for (Rule rule : rules) {
+            if (rule.kind == Kind.BUY_N) {
+                compiled.groupPeriod[group] = rule.value + 1;
+            }
+            for (MenuItem item : menuItems) {
+                if (item.getMenuItemID() < 0 || !rule.covers(item)) {
+                    continue;
+                }
+                for (int hour = 0; hour < HOURS; hour++) {
+                    if (!rule.isActive(hour)) {
+                        continue;
+                    }
+                    int slot = compiled.slot(hour, item.getMenuItemID());
+                    switch (rule.kind) {
+                        case PERCENT_OFF:
+                            compiled.percentOff[slot] = (byte) Math.max(compiled.percentOff[slot], rule.value);
+                            break;
+                        case CENTS_OFF:
+                            compiled.centsOff[slot] = Math.max(compiled.centsOff[slot], rule.value);
+                            break;
+                        default:
+                            // The smallest N is the best deal for the customer
+                            int current = compiled.buyGroup[slot];
+                            if (current < 0 || compiled.groupPeriod[current] > rule.value + 1) {
+                                compiled.buyGroup[slot] = (short) group;
+                            }
+                    }
+                }
+            }
+            if (rule.kind == Kind.BUY_N) {
+                group++;
+            }
+        }
+        table = compiled;
+    }
+
+    /**
+     * Gets the rules this engine was built with.
+     *
+     * @return the rules, in file order
+     * @author harry
+     */
+    public List<Rule> getRules() {
+        return new ArrayList<>(rules);
+    }
+
+    /**
+     * Starts a cart priced with the promotions active at a time.
+     *
+     * @param time the time of the order
+     * @return an empty cart
+     * @author harry
+     */
+    public Cart newCart(LocalDateTime time) {
+        return new Cart(table, time.getHour());
+    }
+
+    /**
+     * Computes the discount of a whole order, as applied when it is
+     * committed.
+     *
+     * @param items the items of the order
+     * @param pricing the prices to discount from
+     * @param time the time of the order
+     * @return the discount in cents
+     * @throws IllegalArgumentException if a menu item has no price
+     * @author harry
+     */
+    public long discountCents(List<OrderItem> items, PricingEngine pricing, LocalDateTime time) {
+        Cart cart = newCart(time);
+        for (int i = 0, n = items.size(); i < n; i++) {
+            OrderItem item = items.get(i);
+            cart.add(item.getMenuItemID(), item.getQuantity(), pricing.unitCents(item.getMenuItemID()));
+        }
+        return cart.getDiscountCents();
+    }
+
+    /**
+     * The promotion state of one cart, updated as lines are added so the
+     * discount never has to be recomputed from scratch.
+     */
+    public static final class Cart {
+        private final Table table;
+        private final int hour;
+        private long unitDiscount;
+        private long groupDiscount;
+
+        // Buy-N groups this cart has units in, with each unit's price sorted ascending
+        private int groupCount;
+        private int[] groups = new int[2];
+        private long[][] unitPrices = new long[2][];
+        private int[] unitCounts = new int[2];
+        private long[] discounts = new long[2];
+
+        private Cart(Table table, int hour) {
+            this.table = table;
+            this.hour = hour;
+        }
+
+        /**
+         * Adds a line to the cart.
+         *
+         * @param menuItemId the menu item ID
+         * @param quantity the number of drinks
+         * @param unitCents the price of one drink in cents
+         * @return the cart's total discount in cents after adding the line
+         * @author harry
+         */
+        public long add(int menuItemId, int quantity, long unitCents) {
+            int slot = table.slot(hour, menuItemId);
+            if (slot < 0 || quantity <= 0) {
+                return getDiscountCents();
+            }
+            long perUnit = Math.max(unitCents * table.percentOff[slot] / 100, table.centsOff[slot]);
+            perUnit = Math.min(perUnit, unitCents);
+            unitDiscount += perUnit * quantity;
+
+            int group = table.buyGroup[slot];
+            if (group >= 0) {
+                addToGroup(group, unitCents - perUnit, quantity);
+            }
+            return getDiscountCents();
+        }
+
+        private void addToGroup(int group, long price, int quantity) {
+            int index = 0;
+            while (index < groupCount && groups[index] != group) {
+                index++;
+            }
+            if (index == groupCount) {
+                if (groupCount == groups.length) {
+                    groups = Arrays.copyOf(groups, groupCount * 2);
+                    unitPrices = Arrays.copyOf(unitPrices, groupCount * 2);
+                    unitCounts = Arrays.copyOf(unitCounts, groupCount * 2);
+                    discounts = Arrays.copyOf(discounts, groupCount * 2);
+                }
+                groups[index] = group;
+                unitPrices[index] = new long[Math.max(8, quantity)];
+                groupCount++;
+            }
+
+            // Insert the units keeping the prices sorted
+            long[] prices = unitPrices[index];
+            int count = unitCounts[index];
+            if (count + quantity > prices.length) {
+                prices = Arrays.copyOf(prices, Math.max(prices.length * 2, count + quantity));
+                unitPrices[index] = prices;
+            }
+            int at = count;
+            while (at > 0 && prices[at - 1] > price) {
+                at--;
+            }
+            System.arraycopy(prices, at, prices, at + quantity, count - at);
+            Arrays.fill(prices, at, at + quantity, price);
+            count += quantity;
+            unitCounts[index] = count;
+
+            // The cheapest units are the free ones
+            long discount = 0;
+            for (int i = 0, free = count / table.groupPeriod[group]; i < free; i++) {
+                discount += prices[i];
+            }
+            groupDiscount += discount - discounts[index];
+            discounts[index] = discount;
+        }
+
+        /**
+         * Gets the hour whose promotions the cart applies.
+         *
+         * @return the hour of day, 0-23
+         * @author harry
+         */
+        public int getHour() {
+            return hour;
+        }
+
+        /**
+         * Gets the cart's total discount.
+         *
+         * @return the discount in cents
+         * @author harry
+         */
+        public long getDiscountCents() {
+            return unitDiscount + groupDiscount;
+        }
+    }
+
+    /**
+     * Reads rules from a text file. Blank lines and lines starting with #
+     * are ignored.
+     *
+     * @param path the rules file
+     * @return the rules, in file order
+     * @throws IOException if the file cannot be read or a rule is invalid
+     * @author harry
+     */
+    public static List<Rule> loadRules(Path path) throws IOException {
+        List<Rule> rules = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.trim().startsWith("#")) {
+                    continue;
+                }
+                try {
+                    rules.add(Rule.parse(line));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Invalid promotion rule on line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Benchmark entry point. Prices the same carts against growing numbers
+     * of random rules to show evaluation cost does not depend on the rule
+     * count.
+     * Usage: PromotionEngine [carts]
+     *
+     * @param args optional number of carts per run
+     * @author harry
+     */
+    public static void main(String[] args) {
+        int carts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        String[] categories = { "Milk Tea", "Fruit Tea", "Brewed Tea", "Slush", "Coffee", "Specialty" };
+        List<MenuItem> menu = new ArrayList<>();
+        for (int id = 1; id <= 120; id++) {
+            menu.add(new MenuItem(id, categories[id % categories.length], "Drink " + id, 4 + (id % 5) * 0.5));
+        }
+        PricingEngine pricing = new PricingEngine(menu);
+
+        SplittableRandom random = new SplittableRandom(42);
+        int[][] cartLines = new int[1024][];
+        for (int c = 0; c < cartLines.length; c++) {
+            cartLines[c] = new int[2 * (1 + random.nextInt(6))];
+            for (int i = 0; i < cartLines[c].length; i += 2) {
+                cartLines[c][i] = 1 + random.nextInt(menu.size());
+                cartLines[c][i + 1] = 1 + random.nextInt(3);
+            }
+        }
+
+        LocalDateTime time = LocalDateTime.of(2024, 6, 1, 15, 0);
+        for (int ruleCount : new int[] { 0, 10, 100, 1_000, 10_000 }) {
+            List<Rule> rules = new ArrayList<>();
+            for (int r = 0; r < ruleCount; r++) {
+                Kind kind = Kind.values()[random.nextInt(3)];
+                Scope scope = Scope.values()[random.nextInt(3)];
+                String target = scope == Scope.ITEM ? String.valueOf(1 + random.nextInt(menu.size()))
+                        : categories[random.nextInt(categories.length)];
+                int start = random.nextInt(23);
+                int value = kind == Kind.PERCENT_OFF ? 5 + random.nextInt(30)
+                        : kind == Kind.CENTS_OFF ? 25 + random.nextInt(100) : 2 + random.nextInt(4);
+                rules.add(new Rule("Rule " + r, kind, scope, target, start, start + 1 + random.nextInt(HOURS - start), value));
+            }
+            long compileStart = System.nanoTime();
+            PromotionEngine engine = new PromotionEngine(rules, menu);
+            long compileMicros = (System.nanoTime() - compileStart) / 1_000;
+
+            long checksum = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < carts; i++) {
+                int[] lines = cartLines[i & (cartLines.length - 1)];
+                Cart cart = engine.newCart(time);
+                for (int l = 0; l < lines.length; l += 2) {
+                    checksum += cart.add(lines[l], lines[l + 1], pricing.unitCents(lines[l]));
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%,6d rules: compiled in %,d us, %.0f ns per cart (checksum %d)%n",
+                    ruleCount, compileMicros, (double) elapsed / carts, checksum);
+        }
+    }
+}
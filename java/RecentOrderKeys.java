@@ -0,0 +1,85 @@
+package New_Additions;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * RecentOrderKeys remembers the order keys of recently submitted orders and
+ * the order IDs they were stored under, so a resubmitted order is answered
+ * from memory instead of being stored twice. A key is claimed while its
+ * order is being stored; a second submission of the same key meanwhile is
+ * told it is in flight rather than racing the first.
+ *
+ * The cache is bounded and forgets the oldest keys first. It only saves
+ * round trips: the unique order key column in the database, or the key
+ * index of the mock store, still catches a duplicate whose key has been
+ * forgotten.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class RecentOrderKeys {
+
+    /** Default number of keys remembered, several shifts' worth of orders */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /** Returned by {@link #claim(UUID)} when the key was free and is now claimed */
+    public static final int CLAIMED = 0;
+
+    /** Returned by {@link #claim(UUID)} when another submission of the key is being stored */
+    public static final int IN_FLIGHT = -1;
+
+    private final Map<UUID, Integer> keys;
+
+    /**
+     * Constructs a cache holding up to a number of keys.
+     *
+     * @param capacity the number of keys remembered
+     * @author harry
+     */
+    public RecentOrderKeys(int capacity) {
+        this.keys = new LinkedHashMap<>(capacity * 4 / 3 + 1) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Integer> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Claims a key for an order about to be stored.
+     *
+     * @param key the order key
+     * @return the ID the key's order was stored under, {@link #CLAIMED} if
+     *         the key is new, or {@link #IN_FLIGHT} if it is being stored
+     * @author harry
+     */
+    public synchronized int claim(UUID key) {
+        Integer orderId = keys.putIfAbsent(key, IN_FLIGHT);
+        return orderId == null ? CLAIMED : orderId;
+    }
+
+    /**
+     * Records the ID a claimed key's order was stored under.
+     *
+     * @param key the order key
+     * @param orderId the order ID
+     * @author harry
+     */
+    public synchronized void complete(UUID key, int orderId) {
+        keys.put(key, orderId);
+    }
+
+    /**
+     * Gives up a claim after its order was not stored, so the key can be
+     * submitted again.
+     *
+     * @param key the order key
+     * @author harry
+     */
+    public synchronized void release(UUID key) {
+        keys.remove(key, IN_FLIGHT);
+    }
+}
@@ -0,0 +1,131 @@
+package New_Additions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * RecipeBook groups MenuItemIngredients rows by menu item and turns a list of
+ * order items into the total quantity needed of each ingredient, including one
+ * portion of the mapped inventory item per topping portion. Instances are
+ * immutable, so one can be shared by every terminal and replaced wholesale
+ * when recipes change.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class RecipeBook {
+    private final List<MenuItemIngredient> lines;
+    private final Map<Integer, List<MenuItemIngredient>> byMenuItem;
+    /** Ingredient ID drawn by each topping, indexed by topping ID; -1 if the topping is not stocked */
+    private final int[] toppingIngredients;
+
+    /**
+     * Constructs a new RecipeBook from recipe lines, without topping
+     * ingredients.
+     *
+     * @param lines the MenuItemIngredients rows
+     * @author harry
+     */
+    public RecipeBook(List<MenuItemIngredient> lines) {
+        this(lines, List.of());
+    }
+
+    /**
+     * Constructs a new RecipeBook from recipe lines. Each topping is mapped to
+     * the inventory item named by {@link Topping#getIngredientName()}, if
+     * there is one.
+     *
+     * @param lines the MenuItemIngredients rows
+     * @param inventory the inventory items toppings may draw from
+     * @author harry
+     */
+    public RecipeBook(List<MenuItemIngredient> lines, Collection<Inventory> inventory) {
+        this.toppingIngredients = new int[Topping.count()];
+        Arrays.fill(toppingIngredients, -1);
+        Map<String, Integer> idsByName = new HashMap<>();
+        for (Inventory item : inventory) {
+            if (item.getIngredientName() != null) {
+                idsByName.put(item.getIngredientName().toLowerCase(Locale.ROOT), item.getIngredientID());
+            }
+        }
+        for (Topping topping : Topping.values()) {
+            toppingIngredients[topping.ordinal()] =
+                    idsByName.getOrDefault(topping.getIngredientName().toLowerCase(Locale.ROOT), -1);
+        }
+
+        this.lines = List.copyOf(lines);
+        Map<Integer, List<MenuItemIngredient>> grouped = new HashMap<>();
+        for (MenuItemIngredient line : this.lines) {
+            grouped.computeIfAbsent(line.getMenuItemID(), k -> new ArrayList<>()).add(line);
+        }
+        grouped.replaceAll((id, recipe) -> Collections.unmodifiableList(recipe));
+        this.byMenuItem = grouped;
+    }
+
+    /**
+     * Retrieves every recipe line.
+     *
+     * @return List of MenuItemIngredient objects
+     * @author harry
+     */
+    public List<MenuItemIngredient> getAllLines() {
+        return lines;
+    }
+
+    /**
+     * Retrieves the recipe of one menu item.
+     *
+     * @param menuItemId the ID of the menu item
+     * @return the recipe lines, empty if the item has no recipe
+     * @author harry
+     */
+    public List<MenuItemIngredient> getRecipe(int menuItemId) {
+        return byMenuItem.getOrDefault(menuItemId, List.of());
+    }
+
+    /**
+     * Gets the inventory item a topping draws from.
+     *
+     * @param topping the topping
+     * @return the ingredient ID, or -1 if the topping is not stocked
+     * @author harry
+     */
+    public int getToppingIngredient(Topping topping) {
+        return toppingIngredients[topping.ordinal()];
+    }
+
+    /**
+     * Sums the ingredients needed for a set of order items. The result is
+     * ordered by ingredient ID so callers can lock ingredients in a canonical
+     * order.
+     *
+     * @param orderItems the items to make
+     * @return Map of ingredient ID to total quantity needed
+     * @author harry
+     */
+    public SortedMap<Integer, Integer> requirementsFor(List<OrderItem> orderItems) {
+        SortedMap<Integer, Integer> needed = new TreeMap<>();
+        for (OrderItem orderItem : orderItems) {
+            for (MenuItemIngredient line : getRecipe(orderItem.getMenuItemID())) {
+                needed.merge(line.getIngredientID(), line.getIngredientQty() * orderItem.getQuantity(), Integer::sum);
+            }
+            for (int mask = orderItem.getToppingMask(); mask != 0; mask &= mask - 1) {
+                Topping topping = Topping.byId(Integer.numberOfTrailingZeros(mask));
+                int ingredientId = toppingIngredients[topping.ordinal()];
+                if (ingredientId >= 0) {
+                    needed.merge(ingredientId, orderItem.getTopping(topping) * orderItem.getQuantity(), Integer::sum);
+                }
+            }
+        }
+        return needed;
+    }
+}
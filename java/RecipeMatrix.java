@@ -0,0 +1,240 @@
+package New_Additions;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * RecipeMatrix compiles the recipes into a dense menu item by ingredient
+ * matrix of quantities, with the stock of each ingredient in a parallel
+ * array. Checking whether a whole cart can be made is then a tight loop over
+ * primitive arrays instead of a query per drink, cheap enough to run on
+ * every line the cashier adds.
+ *
+ * Rows and columns are numbered densely in the order menu items and
+ * ingredients first appear; IDs are mapped to them through lookup arrays.
+ * The stock is a guide kept up to date by DatabaseManager; the stock check
+ * when an order is committed is still authoritative.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class RecipeMatrix {
+
+    private final int[] rowOf;
+    private final int[] columnOf;
+    private final int columns;
+    /** Quantity of each ingredient per drink, row-major: row * columns + column */
+    private final int[] quantities;
+    /** Column drawn by each topping, indexed by topping ID; -1 if not stocked */
+    private final int[] toppingColumns;
+    private final int[] stock;
+
+    /**
+     * Compiles recipes and the current stock.
+     *
+     * @param recipes the recipes, with toppings mapped to inventory items
+     * @param inventory the current inventory
+     * @author harry
+     */
+    public RecipeMatrix(RecipeBook recipes, Collection<Inventory> inventory) {
+        int maxMenuItemId = -1;
+        int maxIngredientId = -1;
+        for (MenuItemIngredient line : recipes.getAllLines()) {
+            maxMenuItemId = Math.max(maxMenuItemId, line.getMenuItemID());
+            maxIngredientId = Math.max(maxIngredientId, line.getIngredientID());
+        }
+        for (Inventory item : inventory) {
+            maxIngredientId = Math.max(maxIngredientId, item.getIngredientID());
+        }
+
+        rowOf = new int[maxMenuItemId + 1];
+        columnOf = new int[maxIngredientId + 1];
+        Arrays.fill(rowOf, -1);
+        Arrays.fill(columnOf, -1);
+        int rows = 0;
+        int cols = 0;
+        for (MenuItemIngredient line : recipes.getAllLines()) {
+            if (line.getMenuItemID() >= 0 && rowOf[line.getMenuItemID()] < 0) {
+                rowOf[line.getMenuItemID()] = rows++;
+            }
+            if (line.getIngredientID() >= 0 && columnOf[line.getIngredientID()] < 0) {
+                columnOf[line.getIngredientID()] = cols++;
+            }
+        }
+        for (Inventory item : inventory) {
+            if (item.getIngredientID() >= 0 && columnOf[item.getIngredientID()] < 0) {
+                columnOf[item.getIngredientID()] = cols++;
+            }
+        }
+        columns = cols;
+
+        quantities = new int[rows * cols];
+        for (MenuItemIngredient line : recipes.getAllLines()) {
+            if (line.getMenuItemID() >= 0 && line.getIngredientID() >= 0) {
+                quantities[rowOf[line.getMenuItemID()] * cols + columnOf[line.getIngredientID()]]
+                        += line.getIngredientQty();
+            }
+        }
+        toppingColumns = new int[Topping.count()];
+        for (Topping topping : Topping.values()) {
+            int ingredientId = recipes.getToppingIngredient(topping);
+            toppingColumns[topping.ordinal()] = ingredientId >= 0 ? columnOf[ingredientId] : -1;
+        }
+        stock = new int[cols];
+        for (Inventory item : inventory) {
+            if (item.getIngredientID() >= 0) {
+                stock[columnOf[item.getIngredientID()]] = item.getIngredientCount();
+            }
+        }
+    }
+
+    /**
+     * Checks whether the current stock can make a whole cart.
+     *
+     * @param orderItems the items of the cart
+     * @return true if every ingredient is in stock in the quantity needed
+     * @author harry
+     */
+    public boolean canMake(List<OrderItem> orderItems) {
+        Cart cart = newCart();
+        for (int i = 0, n = orderItems.size(); i < n; i++) {
+            cart.addItem(orderItems.get(i));
+        }
+        return cart.fits();
+    }
+
+    /**
+     * Sets the stock of one ingredient.
+     *
+     * @param ingredientId the ingredient ID
+     * @param count the new stock
+     * @author harry
+     */
+    public synchronized void setStock(int ingredientId, int count) {
+        if (ingredientId >= 0 && ingredientId < columnOf.length && columnOf[ingredientId] >= 0) {
+            stock[columnOf[ingredientId]] = count;
+        }
+    }
+
+    /**
+     * Removes the stock used by a committed order.
+     *
+     * @param orderItems the items of the order
+     * @author harry
+     */
+    public synchronized void recordOrder(List<OrderItem> orderItems) {
+        Cart used = newCart();
+        for (int i = 0, n = orderItems.size(); i < n; i++) {
+            used.addItem(orderItems.get(i));
+        }
+        for (int c = 0; c < columns; c++) {
+            stock[c] -= used.needed[c];
+        }
+    }
+
+    /**
+     * Starts an empty cart for checking lines as they are added.
+     *
+     * @return an empty cart
+     * @author harry
+     */
+    public Cart newCart() {
+        return new Cart();
+    }
+
+    /**
+     * The summed ingredient needs of a cart, checked against the stock of
+     * the matrix it came from.
+     */
+    public final class Cart {
+        private final int[] needed = new int[columns];
+
+        private Cart() {
+        }
+
+        /**
+         * Checks whether plain drinks can be added without running any
+         * ingredient out, counting what the cart already needs.
+         *
+         * @param menuItemId the menu item ID
+         * @param quantity the number of drinks
+         * @return true if the drinks can be made as well
+         * @author harry
+         */
+        public boolean canAdd(int menuItemId, int quantity) {
+            int row = rowFor(menuItemId);
+            if (row < 0) {
+                return true;
+            }
+            for (int c = 0, base = row * columns; c < columns; c++) {
+                if (needed[c] + quantities[base + c] * quantity > stock[c]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Adds plain drinks to the cart.
+         *
+         * @param menuItemId the menu item ID
+         * @param quantity the number of drinks
+         * @author harry
+         */
+        public void add(int menuItemId, int quantity) {
+            int row = rowFor(menuItemId);
+            if (row < 0) {
+                return;
+            }
+            for (int c = 0, base = row * columns; c < columns; c++) {
+                needed[c] += quantities[base + c] * quantity;
+            }
+        }
+
+        /**
+         * Adds an order item, toppings included, to the cart.
+         *
+         * @param item the order item
+         * @author harry
+         */
+        public void addItem(OrderItem item) {
+            add(item.getMenuItemID(), item.getQuantity());
+            for (int mask = item.getToppingMask(); mask != 0; mask &= mask - 1) {
+                int id = Integer.numberOfTrailingZeros(mask);
+                if (toppingColumns[id] >= 0) {
+                    needed[toppingColumns[id]] += item.getTopping(Topping.byId(id)) * item.getQuantity();
+                }
+            }
+        }
+
+        /**
+         * Checks whether everything in the cart can be made.
+         *
+         * @return true if no ingredient is needed beyond its stock
+         * @author harry
+         */
+        public boolean fits() {
+            for (int c = 0; c < columns; c++) {
+                if (needed[c] > stock[c]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Empties the cart.
+         *
+         * @author harry
+         */
+        public void clear() {
+            Arrays.fill(needed, 0);
+        }
+    }
+
+    private int rowFor(int menuItemId) {
+        return menuItemId >= 0 && menuItemId < rowOf.length ? rowOf[menuItemId] : -1;
+    }
+}
@@ -0,0 +1,346 @@
+package New_Additions;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ReportScheduler precomputes daily, weekly and monthly sales and usage
+ * reports during configurable quiet hours and keeps them in an on-disk
+ * cache under report_cache/vN/SOURCE/TYPE/FROM_TO.tsv, where SOURCE names the
+ * database (or mock data) the orders came from. Reports for finished periods
+ * are then read from the cache, and a report for the current period is the
+ * cached days so far plus a live scan of today only.
+ *
+ * Each entry records the highest order ID and the order count of its period
+ * when it was computed. An order added to or removed from a finished period
+ * later, such as a late import, changes these and the entry is computed
+ * again.
+ *
+ * The cache directory carries a format version; bumping
+ * {@link #CACHE_VERSION} when the report sections change makes old entries
+ * unreachable instead of being served.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class ReportScheduler {
+
+    /** Root of the report cache */
+    public static final Path CACHE_ROOT = Paths.get("report_cache");
+
+    /** Version of the cached report format */
+    public static final int CACHE_VERSION = 2;
+
+    /** First field of the watermark line that starts each cache entry */
+    private static final String WATERMARK = "#watermark";
+
+    /** Days of daily reports kept warm, enough to cover the current month */
+    private static final int WARM_DAYS = 35;
+
+    /** Report periods. */
+    public enum ReportType {
+        DAILY, WEEKLY, MONTHLY;
+
+        /**
+         * Gets the first day of the period containing a day.
+         *
+         * @param day any day of the period
+         * @return the first day
+         */
+        public LocalDate periodStart(LocalDate day) {
+            switch (this) {
+                case DAILY:
+                    return day;
+                case WEEKLY:
+                    return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                default:
+                    return day.withDayOfMonth(1);
+            }
+        }
+
+        /**
+         * Gets the last day of the period containing a day.
+         *
+         * @param day any day of the period
+         * @return the last day
+         */
+        public LocalDate periodEnd(LocalDate day) {
+            switch (this) {
+                case DAILY:
+                    return day;
+                case WEEKLY:
+                    return day.with(TemporalAdjusters.nextOrSame(DayOfWeek.SUNDAY));
+                default:
+                    return day.with(TemporalAdjusters.lastDayOfMonth());
+            }
+        }
+    }
+
+    private final DatabaseManager dbManager;
+    private final EndOfDayReport reports;
+    private final Path cacheDir;
+    private final int quietStartHour;
+    private final int quietEndHour;
+    private ScheduledExecutorService executor;
+
+    /**
+     * Constructs a scheduler whose quiet hours run from quietStartHour up to
+     * quietEndHour, wrapping past midnight if the start is after the end.
+     *
+     * @param dbManager the DatabaseManager to read orders from
+     * @param quietStartHour the first quiet hour, 0 to 23
+     * @param quietEndHour the hour quiet time ends, 0 to 23
+     * @author harry
+     */
+    public ReportScheduler(DatabaseManager dbManager, int quietStartHour, int quietEndHour) {
+        this.dbManager = dbManager;
+        this.reports = new EndOfDayReport(dbManager);
+        this.cacheDir = CACHE_ROOT.resolve("v" + CACHE_VERSION)
+                .resolve(dbManager.getDataSourceName().replaceAll("[^A-Za-z0-9.-]+", "_"));
+        this.quietStartHour = quietStartHour;
+        this.quietEndHour = quietEndHour;
+    }
+
+    /**
+     * Starts checking every 15 minutes whether it is quiet time, and
+     * precomputing missing reports when it is.
+     *
+     * @author harry
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "report-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            if (isQuietTime(LocalTime.now())) {
+                precompute(LocalDate.now());
+            }
+        }, 0, 15, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stops the scheduler, letting a precompute in progress finish.
+     *
+     * @author harry
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * Checks whether a time falls in the quiet hours.
+     *
+     * @param time the time of day
+     * @return true if reports may be precomputed now
+     * @author harry
+     */
+    public boolean isQuietTime(LocalTime time) {
+        int hour = time.getHour();
+        if (quietStartHour <= quietEndHour) {
+            return hour >= quietStartHour && hour < quietEndHour;
+        }
+        return hour >= quietStartHour || hour < quietEndHour;
+    }
+
+    /**
+     * Fills the cache with every finished period up to yesterday that is not
+     * cached yet: the last {@value #WARM_DAYS} daily reports, last week and
+     * last month.
+     *
+     * @param today the current day; only earlier days are precomputed
+     * @return the number of reports computed
+     * @author harry
+     */
+    public int precompute(LocalDate today) {
+        int computed = 0;
+        try {
+            for (int back = WARM_DAYS; back >= 1; back--) {
+                computed += ensureCached(ReportType.DAILY, today.minusDays(back)) ? 1 : 0;
+            }
+            computed += ensureCached(ReportType.WEEKLY, today.minusWeeks(1)) ? 1 : 0;
+            computed += ensureCached(ReportType.MONTHLY, today.minusMonths(1)) ? 1 : 0;
+        } catch (SQLException | IOException e) {
+            System.err.println("Error precomputing reports: " + e.getMessage());
+        }
+        if (computed > 0) {
+            System.out.println("Precomputed " + computed + " reports");
+        }
+        return computed;
+    }
+
+    /**
+     * Gets the report for the period containing a day. Finished periods come
+     * from the cache, computed and stored on a miss. The current period is
+     * the cached reports of its finished days plus a live scan of today.
+     *
+     * @param type the report period
+     * @param day any day of the period
+     * @return Map of section title to its values
+     * @throws SQLException if orders cannot be read
+     * @throws IOException if the cache cannot be read or written
+     * @author harry
+     */
+    public Map<String, Map<String, Double>> getReport(ReportType type, LocalDate day)
+            throws SQLException, IOException {
+        LocalDate today = LocalDate.now();
+        LocalDate start = type.periodStart(day);
+        LocalDate end = type.periodEnd(day);
+        if (start.isAfter(today)) {
+            return new LinkedHashMap<>();
+        }
+        if (end.isBefore(today)) {
+            ensureCached(type, day);
+            return readCache(cacheFile(type, start, end));
+        }
+
+        // Current period: finished days from the cache, today live
+        Map<String, Map<String, Double>> report = new LinkedHashMap<>();
+        for (LocalDate past = start; past.isBefore(today); past = past.plusDays(1)) {
+            ensureCached(ReportType.DAILY, past);
+            EndOfDayReport.merge(report, readCache(cacheFile(ReportType.DAILY, past, past)));
+        }
+        EndOfDayReport.merge(report, reports.run(Timestamp.valueOf(today.atStartOfDay()),
+                Timestamp.valueOf(LocalDateTime.now().plusSeconds(1))));
+        return report;
+    }
+
+    /**
+     * Computes and caches the report of a finished period if it is not
+     * cached, or if its orders changed since it was.
+     *
+     * @return true if the report was computed
+     */
+    private boolean ensureCached(ReportType type, LocalDate day) throws SQLException, IOException {
+        LocalDate start = type.periodStart(day);
+        LocalDate end = type.periodEnd(day);
+        Path file = cacheFile(type, start, end);
+        // Taken before the scan, so an order committed during it makes the entry stale
+        String watermark = watermark(start, end);
+        if (Files.exists(file) && watermark.equals(readWatermark(file))) {
+            return false;
+        }
+        writeCache(file, watermark, reports.run(start, end));
+        return true;
+    }
+
+    /**
+     * Describes the orders of a period as its highest order ID and order count.
+     */
+    private String watermark(LocalDate start, LocalDate end) throws SQLException {
+        long[] watermark = dbManager.getOrderWatermark(Timestamp.valueOf(start.atStartOfDay()),
+                Timestamp.valueOf(end.plusDays(1).atStartOfDay()));
+        return WATERMARK + '\t' + watermark[0] + '\t' + watermark[1];
+    }
+
+    private Path cacheFile(ReportType type, LocalDate start, LocalDate end) {
+        return cacheDir.resolve(type.name().toLowerCase()).resolve(start + "_" + end + ".tsv");
+    }
+
+    /**
+     * Writes a report as its watermark line followed by section, key and
+     * value columns, replacing the file atomically so readers never see a
+     * partial entry.
+     */
+    private static void writeCache(Path file, String watermark, Map<String, Map<String, Double>> report)
+            throws IOException {
+        Files.createDirectories(file.getParent());
+        // A unique temp file, so two processes filling the same entry do not write into one file
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(watermark);
+            writer.newLine();
+            for (Map.Entry<String, Map<String, Double>> section : report.entrySet()) {
+                for (Map.Entry<String, Double> row : section.getValue().entrySet()) {
+                    writer.write(section.getKey() + '\t' + row.getKey() + '\t' + row.getValue());
+                    writer.newLine();
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the watermark line of a cache entry.
+     *
+     * @return the watermark, or null if the entry has none
+     */
+    private static String readWatermark(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            return line != null && line.startsWith(WATERMARK + '\t') ? line : null;
+        }
+    }
+
+    private static Map<String, Map<String, Double>> readCache(Path file) throws IOException {
+        Map<String, Map<String, Double>> report = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine(); // watermark
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 3) {
+                    throw new IOException("Corrupt report cache entry: " + file);
+                }
+                report.computeIfAbsent(fields[0], k -> new LinkedHashMap<>())
+                        .put(fields[1], Double.parseDouble(fields[2]));
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Command line entry point. Precomputes missing reports once, then
+     * prints the requested report.
+     * Usage: ReportScheduler [daily|weekly|monthly] [date]
+     *
+     * @param args optional report type and ISO date
+     * @author harry
+     */
+    public static void main(String[] args) {
+        ReportType type = args.length > 0 ? ReportType.valueOf(args[0].toUpperCase()) : ReportType.WEEKLY;
+        LocalDate day = args.length > 1 ? LocalDate.parse(args[1]) : LocalDate.now();
+        DatabaseManager dbManager = new DatabaseManager();
+        try {
+            ReportScheduler scheduler = new ReportScheduler(dbManager, 2, 6);
+            scheduler.precompute(LocalDate.now());
+            long start = System.nanoTime();
+            Map<String, Map<String, Double>> report = scheduler.getReport(type, day);
+            System.out.printf("%s report for %s in %d ms%n", type, day, (System.nanoTime() - start) / 1_000_000);
+            report.forEach((section, rows) -> System.out.println(section + ": " + rows));
+        } catch (IOException | SQLException e) {
+            System.err.println("Report failed: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            dbManager.close();
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package New_Additions;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SalesCube pre-aggregates revenue and units sold by day, hour, drink
+ * category, menu item and employee. Each cell is keyed by a packed long with
+ * the day in the high bits, so a date range is a contiguous slice of the
+ * cube and drill-downs and heatmaps only visit the cells of that range.
+ *
+ * The cube is updated as orders are committed and can be saved to disk on
+ * a schedule. Weeks are reported as ISO year-weeks, so weeks of different
+ * years never collide the way {@code Order.orderWeek} does.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class SalesCube {
+
+    /** Default location of the cube file, next to the other data files */
+    public static final Path DEFAULT_PATH = Paths.get("sales_cube.bin");
+
+    private static final int MAGIC = 0x424F4342; // "BOCB"
+    private static final int VERSION = 1;
+
+    // Key layout, high to low: epoch day (20 bits), hour (5), category (6), menu item (16), employee (16)
+    private static final int DAY_SHIFT = 43;
+    private static final int HOUR_SHIFT = 38;
+    private static final int CATEGORY_SHIFT = 32;
+    private static final int MENU_ITEM_SHIFT = 16;
+    private static final int MAX_CATEGORIES = 1 << 6;
+    private static final int MAX_ID = 0xFFFF;
+
+    /** Dimensions the cube can be rolled up by or filtered on. */
+    public enum Dimension {
+        DAY, WEEK, HOUR, WEEKDAY, CATEGORY, MENU_ITEM, EMPLOYEE
+    }
+
+    /** Revenue and units of one cell or one rolled-up group. */
+    public static class Cell {
+        private volatile long revenueCents;
+        private volatile long units;
+
+        Cell() {
+        }
+
+        Cell(long revenueCents, long units) {
+            this.revenueCents = revenueCents;
+            this.units = units;
+        }
+
+        synchronized void add(long cents, long count) {
+            revenueCents += cents;
+            units += count;
+        }
+
+        /** @return the revenue in cents */
+        public long getRevenueCents() {
+            return revenueCents;
+        }
+
+        /** @return the revenue in dollars */
+        public double getRevenue() {
+            return revenueCents / 100.0;
+        }
+
+        /** @return the number of drinks sold */
+        public long getUnits() {
+            return units;
+        }
+
+        @Override
+        public String toString() {
+            return units + " units, $" + String.format("%.2f", getRevenue());
+        }
+    }
+
+    private final ConcurrentSkipListMap<Long, Cell> cells = new ConcurrentSkipListMap<>();
+    private final Map<String, Integer> categoryCodes = new HashMap<>();
+    private final List<String> categoryNames = new ArrayList<>();
+    private final Map<Integer, MenuItem> menuItems = new HashMap<>();
+    private final AtomicLong lastOrderId = new AtomicLong(0);
+
+    /** Incremented on every change, so the persister can skip unchanged cubes */
+    private final AtomicLong version = new AtomicLong();
+    private long savedVersion;
+    private ScheduledExecutorService persister;
+
+    /**
+     * Registers or updates a menu item, used to resolve the category of
+     * recorded orders and to label menu item groups.
+     *
+     * @param item the menu item
+     * @author harry
+     */
+    public synchronized void registerMenuItem(MenuItem item) {
+        menuItems.put(item.getMenuItemID(), new MenuItem(item.getMenuItemID(), item.getDrinkCategory(),
+                item.getMenuItemName(), item.getPrice()));
+        categoryCode(item.getDrinkCategory());
+    }
+
+    /**
+     * Records a committed order, valuing each line at what it was charged.
+     *
+     * @param order the committed order
+     * @param items the items of the order
+     * @param chargedCents what each item was charged, from
+     *                     {@link PricingEngine#chargedLineCents(List, long)}
+     * @author harry
+     */
+    public void record(Order order, List<OrderItem> items, long[] chargedCents) {
+        long time = order.getTimeOfOrder().getTime();
+        for (int i = 0; i < items.size(); i++) {
+            OrderItem item = items.get(i);
+            MenuItem menuItem;
+            synchronized (this) {
+                menuItem = menuItems.get(item.getMenuItemID());
+            }
+            String category = menuItem == null ? null : menuItem.getDrinkCategory();
+            addLine(order.getOrderID(), time, order.getEmployeeID(), item.getMenuItemID(), category,
+                    item.getQuantity(), chargedCents[i]);
+        }
+    }
+
+    /**
+     * Adds one order line to its cell.
+     *
+     * @param orderId the order ID
+     * @param time the time of order in epoch milliseconds
+     * @param employeeId the employee who took the order
+     * @param menuItemId the menu item sold
+     * @param category the drink category of the menu item
+     * @param quantity the number sold
+     * @param revenueCents the revenue of the line in cents
+     * @author harry
+     */
+    public void addLine(int orderId, long time, int employeeId, int menuItemId, String category,
+            int quantity, long revenueCents) {
+        LocalDateTime at = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        int code;
+        synchronized (this) {
+            code = categoryCode(category);
+        }
+        long key = key(at.toLocalDate().toEpochDay(), at.getHour(), code, menuItemId, employeeId);
+        cells.computeIfAbsent(key, k -> new Cell()).add(revenueCents, quantity);
+        lastOrderId.accumulateAndGet(orderId, Math::max);
+        version.incrementAndGet();
+    }
+
+    /**
+     * Gets the highest order ID recorded, so a reloaded cube knows which
+     * orders it already contains.
+     *
+     * @return the highest order ID, or 0 if none
+     * @author harry
+     */
+    public int getLastOrderId() {
+        return (int) lastOrderId.get();
+    }
+
+    /**
+     * Looks up the code of a drink category for use as a filter value.
+     *
+     * @param category the drink category
+     * @return the category code, or -1 if the category has never been seen
+     * @author harry
+     */
+    public synchronized int getCategoryCode(String category) {
+        Integer code = categoryCodes.get(category);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Rolls the cells of a date range up to one dimension, optionally keeping
+     * only cells whose value in another dimension matches.
+     *
+     * @param by the dimension to group by
+     * @param from the first day, inclusive
+     * @param to the last day, inclusive
+     * @param filterBy the dimension to filter on, or null for no filter
+     * @param filterValue the value to keep: epoch day, hour, weekday (1 = Monday),
+     *        category code, menu item ID or employee ID; for WEEK, year * 100 + week
+     * @return Map of group label to totals, in label order
+     * @author harry
+     */
+    public Map<String, Cell> rollup(Dimension by, LocalDate from, LocalDate to, Dimension filterBy, int filterValue) {
+        Map<Long, Cell> groups = new TreeMap<>();
+        for (Map.Entry<Long, Cell> entry : range(from, to).entrySet()) {
+            long key = entry.getKey();
+            if (filterBy != null && value(filterBy, key) != filterValue) {
+                continue;
+            }
+            Cell cell = entry.getValue();
+            groups.computeIfAbsent(value(by, key), k -> new Cell()).add(cell.getRevenueCents(), cell.getUnits());
+        }
+
+        Map<String, Cell> result = new LinkedHashMap<>();
+        for (Map.Entry<Long, Cell> group : groups.entrySet()) {
+            result.put(label(by, group.getKey()), group.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Builds a weekday by hour heatmap of revenue for a date range.
+     *
+     * @param from the first day, inclusive
+     * @param to the last day, inclusive
+     * @param category only include this drink category, or null for all
+     * @return revenue in cents indexed by [weekday - 1][hour], Monday first
+     * @author harry
+     */
+    public long[][] heatmap(LocalDate from, LocalDate to, String category) {
+        int code = category == null ? -1 : getCategoryCode(category);
+        long[][] heatmap = new long[7][24];
+        if (category != null && code < 0) {
+            return heatmap;
+        }
+        for (Map.Entry<Long, Cell> entry : range(from, to).entrySet()) {
+            long key = entry.getKey();
+            if (code >= 0 && value(Dimension.CATEGORY, key) != code) {
+                continue;
+            }
+            heatmap[(int) value(Dimension.WEEKDAY, key) - 1][(int) value(Dimension.HOUR, key)]
+                    += entry.getValue().getRevenueCents();
+        }
+        return heatmap;
+    }
+
+    /**
+     * Gets the number of non-empty cells.
+     *
+     * @return the cell count
+     * @author harry
+     */
+    public int getCellCount() {
+        return cells.size();
+    }
+
+    /**
+     * Saves the cube to disk every period, skipping periods with no changes.
+     *
+     * @param path the file to write
+     * @param period the time between saves
+     * @param unit the unit of the period
+     * @author harry
+     */
+    public synchronized void startPersisting(Path path, long period, TimeUnit unit) {
+        if (persister != null) {
+            return;
+        }
+        persister = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sales-cube-persister");
+            thread.setDaemon(true);
+            return thread;
+        });
+        persister.scheduleWithFixedDelay(() -> {
+            try {
+                saveIfChanged(path);
+            } catch (IOException e) {
+                System.err.println("Error saving sales cube: " + e.getMessage());
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Stops the periodic saves and writes any remaining changes.
+     *
+     * @param path the file to write
+     * @author harry
+     */
+    public void stopPersisting(Path path) {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = persister;
+            persister = null;
+        }
+        if (running != null) {
+            running.shutdown();
+            try {
+                running.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            saveIfChanged(path);
+        } catch (IOException e) {
+            System.err.println("Error saving sales cube: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the cube if it changed since the last save.
+     *
+     * @param path the file to write
+     * @return true if the cube was written
+     * @throws IOException if the file cannot be written
+     * @author harry
+     */
+    public synchronized boolean saveIfChanged(Path path) throws IOException {
+        long current = version.get();
+        if (current == savedVersion) {
+            return false;
+        }
+        save(path);
+        savedVersion = current;
+        return true;
+    }
+
+    /**
+     * Saves the cube, replacing the file atomically.
+     *
+     * @param path the file to write
+     * @throws IOException if the file cannot be written
+     * @author harry
+     */
+    public synchronized void save(Path path) throws IOException {
+        Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(getLastOrderId());
+            out.writeInt(categoryNames.size());
+            for (String name : categoryNames) {
+                out.writeUTF(name);
+            }
+            // Cells added while writing may or may not be included; the next save picks them up
+            List<Map.Entry<Long, Cell>> snapshot = new ArrayList<>(cells.entrySet());
+            out.writeInt(snapshot.size());
+            for (Map.Entry<Long, Cell> entry : snapshot) {
+                out.writeLong(entry.getKey());
+                out.writeLong(entry.getValue().getRevenueCents());
+                out.writeLong(entry.getValue().getUnits());
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a cube saved by {@link #save}. Menu items must be registered
+     * again before recording orders.
+     *
+     * @param path the file to read
+     * @return the cube
+     * @throws IOException if the file cannot be read or is not a cube file
+     * @author harry
+     */
+    public static SalesCube load(Path path) throws IOException {
+        SalesCube cube = new SalesCube();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a sales cube file: " + path);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported sales cube version: " + version);
+            }
+            cube.lastOrderId.set(in.readInt());
+            int categories = in.readInt();
+            for (int i = 0; i < categories; i++) {
+                cube.categoryCode(in.readUTF());
+            }
+            int cellCount = in.readInt();
+            for (int i = 0; i < cellCount; i++) {
+                cube.cells.put(in.readLong(), new Cell(in.readLong(), in.readLong()));
+            }
+        }
+        cube.savedVersion = cube.version.get();
+        return cube;
+    }
+
+    private ConcurrentNavigableMap<Long, Cell> range(LocalDate from, LocalDate to) {
+        return cells.subMap(from.toEpochDay() << DAY_SHIFT, true, (to.toEpochDay() + 1) << DAY_SHIFT, false);
+    }
+
+    private int categoryCode(String category) {
+        String key = category == null ? "" : category;
+        Integer code = categoryCodes.get(key);
+        if (code == null) {
+            if (categoryNames.size() == MAX_CATEGORIES) {
+                throw new IllegalStateException("Sales cube supports at most " + MAX_CATEGORIES + " categories");
+            }
+            code = categoryNames.size();
+            categoryCodes.put(key, code);
+            categoryNames.add(key);
+        }
+        return code;
+    }
+
+    private static long key(long epochDay, int hour, int category, int menuItemId, int employeeId) {
+        if (menuItemId < 0 || menuItemId > MAX_ID || employeeId < 0 || employeeId > MAX_ID) {
+            throw new IllegalArgumentException("Menu item and employee IDs must be between 0 and " + MAX_ID);
+        }
+        return epochDay << DAY_SHIFT | (long) hour << HOUR_SHIFT | (long) category << CATEGORY_SHIFT
+                | (long) menuItemId << MENU_ITEM_SHIFT | employeeId;
+    }
+
+    private static long value(Dimension dimension, long key) {
+        long epochDay = key >>> DAY_SHIFT;
+        switch (dimension) {
+            case DAY:
+                return epochDay;
+            case WEEK:
+                LocalDate day = LocalDate.ofEpochDay(epochDay);
+                return day.get(IsoFields.WEEK_BASED_YEAR) * 100L + day.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+            case HOUR:
+                return (key >>> HOUR_SHIFT) & 0x1F;
+            case WEEKDAY:
+                // 1970-01-01 was a Thursday
+                return Math.floorMod(epochDay + 3, 7) + 1;
+            case CATEGORY:
+                return (key >>> CATEGORY_SHIFT) & 0x3F;
+            case MENU_ITEM:
+                return (key >>> MENU_ITEM_SHIFT) & MAX_ID;
+            default:
+                return key & MAX_ID;
+        }
+    }
+
+    private synchronized String label(Dimension dimension, long value) {
+        switch (dimension) {
+            case DAY:
+                return LocalDate.ofEpochDay(value).toString();
+            case WEEK:
+                return String.format("%d-W%02d", value / 100, value % 100);
+            case HOUR:
+                return String.format("%02d:00", value);
+            case WEEKDAY:
+                return DayOfWeek.of((int) value).toString();
+            case CATEGORY:
+                return categoryNames.get((int) value);
+            case MENU_ITEM:
+                MenuItem item = menuItems.get((int) value);
+                return item == null ? "Item #" + value : item.getMenuItemName();
+            default:
+                return "Employee #" + value;
+        }
+    }
+}
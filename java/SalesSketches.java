@@ -0,0 +1,285 @@
+package New_Additions;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * SalesSketches keeps one small set of sketches per business day: a
+ * HyperLogLog of loyalty customers and Count-Min sketches with top-K
+ * tracking for menu items and toppings (keyed by {@link Topping} ID).
+ * Questions such as "distinct customers this quarter" or "best sellers this
+ * year" are answered by merging the days in the range instead of scanning
+ * every order.
+ *
+ * Sketches are updated as orders are committed and saved to disk on
+ * shutdown. Sketches from different terminals can be combined with
+ * {@link #merge}, and {@link #flushTo} adds a process's sketches to the
+ * file instead of replacing it, so processes sharing the file do not
+ * overwrite each other's days.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class SalesSketches {
+
+    /** Default location of the sketch file, next to the other data files */
+    public static final Path DEFAULT_PATH = Paths.get("sales_sketches.bin");
+
+    private static final int MAGIC = 0x424F534B; // "BOSK"
+    private static final int VERSION = 1;
+
+    private static final int CMS_DEPTH = 4;
+    private static final int MENU_ITEM_WIDTH = 1024;
+    private static final int TOPPING_WIDTH = 256;
+    private static final int TOP_K = 20;
+
+    /** The sketches of one day. */
+    private static class DaySketch {
+        final HyperLogLog customers;
+        final CountMinSketch menuItems;
+        final CountMinSketch toppings;
+
+        DaySketch() {
+            this(new HyperLogLog(), new CountMinSketch(CMS_DEPTH, MENU_ITEM_WIDTH, TOP_K),
+                    new CountMinSketch(CMS_DEPTH, TOPPING_WIDTH, TOP_K));
+        }
+
+        DaySketch(HyperLogLog customers, CountMinSketch menuItems, CountMinSketch toppings) {
+            this.customers = customers;
+            this.menuItems = menuItems;
+            this.toppings = toppings;
+        }
+
+        DaySketch copy() {
+            return new DaySketch(customers.copy(), menuItems.copy(), toppings.copy());
+        }
+
+        void merge(DaySketch other) {
+            customers.merge(other.customers);
+            menuItems.merge(other.menuItems);
+            toppings.merge(other.toppings);
+        }
+    }
+
+    private final TreeMap<LocalDate, DaySketch> days = new TreeMap<>();
+
+    /**
+     * Records a committed order.
+     *
+     * @param order the order
+     * @param items the items of the order
+     * @author harry
+     */
+    public synchronized void record(Order order, List<OrderItem> items) {
+        LocalDate day = order.getTimeOfOrder().toLocalDateTime().toLocalDate();
+        DaySketch sketch = days.computeIfAbsent(day, d -> new DaySketch());
+        if (order.getCustomerID() != null) {
+            sketch.customers.add(order.getCustomerID());
+        }
+        for (OrderItem item : items) {
+            sketch.menuItems.add(item.getMenuItemID(), item.getQuantity());
+            for (int mask = item.getToppingMask(); mask != 0; mask &= mask - 1) {
+                sketch.toppings.add(Integer.numberOfTrailingZeros(mask), item.getQuantity());
+            }
+        }
+    }
+
+    /**
+     * Estimates the number of distinct loyalty customers between two days.
+     *
+     * @param from the first day, inclusive
+     * @param to the last day, inclusive
+     * @return the estimated number of distinct customers
+     * @author harry
+     */
+    public synchronized long distinctCustomers(LocalDate from, LocalDate to) {
+        HyperLogLog union = new HyperLogLog();
+        for (DaySketch sketch : days.subMap(from, true, to, true).values()) {
+            union.merge(sketch.customers);
+        }
+        return union.estimate();
+    }
+
+    /**
+     * Estimates the units sold of one menu item between two days.
+     *
+     * @param menuItemId the menu item ID
+     * @param from the first day, inclusive
+     * @param to the last day, inclusive
+     * @return the estimated units sold, never below the true number
+     * @author harry
+     */
+    public synchronized long estimateMenuItemUnits(int menuItemId, LocalDate from, LocalDate to) {
+        long units = 0;
+        for (DaySketch sketch : days.subMap(from, true, to, true).values()) {
+            units += sketch.menuItems.estimate(menuItemId);
+        }
+        return units;
+    }
+
+    /**
+     * Gets the best-selling menu items between two days.
+     *
+     * @param from the first day, inclusive
+     * @param to the last day, inclusive
+     * @param k the number of menu items, at most 20
+     * @return List of menu item ID and estimated units pairs, best seller first
+     * @author harry
+     */
+    public synchronized List<Map.Entry<Long, Long>> topMenuItems(LocalDate from, LocalDate to, int k) {
+        CountMinSketch merged = new CountMinSketch(CMS_DEPTH, MENU_ITEM_WIDTH, TOP_K);
+        for (DaySketch sketch : days.subMap(from, true, to, true).values()) {
+            merged.merge(sketch.menuItems);
+        }
+        return merged.top(k);
+    }
+
+    /**
+     * Gets the most popular toppings between two days.
+     *
+     * @param from the first day, inclusive
+     * @param to the last day, inclusive
+     * @param k the number of toppings
+     * @return Map of topping name to estimated drinks, most popular first
+     * @author harry
+     */
+    public synchronized Map<String, Long> topToppings(LocalDate from, LocalDate to, int k) {
+        CountMinSketch merged = new CountMinSketch(CMS_DEPTH, TOPPING_WIDTH, TOP_K);
+        for (DaySketch sketch : days.subMap(from, true, to, true).values()) {
+            merged.merge(sketch.toppings);
+        }
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<Long, Long> entry : merged.top(k)) {
+            result.put(Topping.byId(entry.getKey().intValue()).getDisplayName(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Merges the sketches of another terminal or period into these.
+     *
+     * @param other the sketches to merge in
+     * @author harry
+     */
+    public void merge(SalesSketches other) {
+        Map<LocalDate, DaySketch> copies = other.copyDays();
+        synchronized (this) {
+            for (Map.Entry<LocalDate, DaySketch> entry : copies.entrySet()) {
+                DaySketch mine = days.get(entry.getKey());
+                if (mine == null) {
+                    days.put(entry.getKey(), entry.getValue());
+                } else {
+                    mine.merge(entry.getValue());
+                }
+            }
+        }
+    }
+
+    private synchronized Map<LocalDate, DaySketch> copyDays() {
+        Map<LocalDate, DaySketch> copies = new TreeMap<>();
+        for (Map.Entry<LocalDate, DaySketch> entry : days.entrySet()) {
+            copies.put(entry.getKey(), entry.getValue().copy());
+        }
+        return copies;
+    }
+
+    /**
+     * Gets the number of days with sketches.
+     *
+     * @return the day count
+     * @author harry
+     */
+    public synchronized int getDayCount() {
+        return days.size();
+    }
+
+    /**
+     * Adds these sketches to a sketch file and clears them, so the next
+     * flush only adds what was recorded since. Customer registers take the
+     * maximum and counters add up. Other processes flushing to the same file
+     * wait on a lock file next to it, so no flush is lost.
+     *
+     * @param path the sketch file, created if missing
+     * @throws IOException if the file cannot be read or written
+     * @author harry
+     */
+    public synchronized void flushTo(Path path) throws IOException {
+        if (days.isEmpty()) {
+            return;
+        }
+        Path lockFile = path.resolveSibling(path.getFileName() + ".lock");
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.lock(); // released when the channel closes
+            SalesSketches combined = Files.exists(path) ? load(path) : new SalesSketches();
+            combined.merge(this);
+            combined.save(path);
+        }
+        days.clear();
+    }
+
+    /**
+     * Saves the sketches, replacing the file atomically.
+     *
+     * @param path the file to write
+     * @throws IOException if the file cannot be written
+     * @author harry
+     */
+    public synchronized void save(Path path) throws IOException {
+        Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(days.size());
+            for (Map.Entry<LocalDate, DaySketch> entry : days.entrySet()) {
+                out.writeLong(entry.getKey().toEpochDay());
+                entry.getValue().customers.writeTo(out);
+                entry.getValue().menuItems.writeTo(out);
+                entry.getValue().toppings.writeTo(out);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads sketches saved by {@link #save}.
+     *
+     * @param path the file to read
+     * @return the sketches
+     * @throws IOException if the file cannot be read or is not a sketch file
+     * @author harry
+     */
+    public static SalesSketches load(Path path) throws IOException {
+        SalesSketches sketches = new SalesSketches();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a sales sketch file: " + path);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported sales sketch version: " + version);
+            }
+            int dayCount = in.readInt();
+            for (int i = 0; i < dayCount; i++) {
+                LocalDate day = LocalDate.ofEpochDay(in.readLong());
+                sketches.days.put(day, new DaySketch(HyperLogLog.readFrom(in),
+                        CountMinSketch.readFrom(in), CountMinSketch.readFrom(in)));
+            }
+        }
+        return sketches;
+    }
+}
@@ -0,0 +1,714 @@
+package New_Additions;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * StockLedger keeps the inventory counts in memory while the shop is open
+ * and is the source of truth for them during service. An order takes its
+ * ingredients from the ledger instead of locking and updating the inventory
+ * rows itself, and a background flush writes the deductions of every order
+ * committed since the last flush, summed per ingredient, with one UPDATE.
+ * At rush hour the hot rows (cups, lids, straws, boba) are then written a
+ * few times a second instead of once per order per terminal.
+ *
+ * Every deduction is appended to a journal under stock_journal/ and forced
+ * to disk, tagged with its order ID, before the order's transaction
+ * commits. The journal is split into numbered segments. A flush starts a
+ * new segment and, in the same transaction as the UPDATE, records in the
+ * stockledger table the last segment it covers, so every segment is either
+ * fully applied or still waiting. On startup the waiting segments are
+ * replayed, skipping orders that were cancelled or never stored.
+ *
+ * Each flush reads back the counts it updated, so deductions made by other
+ * processes reach this ledger's hot ingredients within one interval.
+ *
+ * Only one process may use a journal directory: open() takes an exclusive
+ * lock on it and fails if another process holds it. The row in the
+ * stockledger table is keyed by a terminal ID generated on first use and
+ * kept in the directory, so tills on different machines never share a row.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class StockLedger {
+
+    /** Default journal directory */
+    public static final Path DEFAULT_DIR = Paths.get("stock_journal");
+
+    /** Default time between flushes */
+    public static final long DEFAULT_FLUSH_MILLIS = 500;
+
+    /** File in the journal directory locked by the process using it */
+    private static final String LOCK_FILE = ".lock";
+    /** File in the journal directory holding the terminal ID */
+    private static final String TERMINAL_ID_FILE = "terminal_id";
+
+    private static final byte DEDUCT = 1;
+    private static final byte CANCEL = 2;
+
+    /** One journal record: the ingredients deducted for an order, or its cancellation. */
+    static final class Record {
+        final byte type;
+        final int orderId;
+        final Map<Integer, Integer> quantities;
+
+        Record(byte type, int orderId, Map<Integer, Integer> quantities) {
+            this.type = type;
+            this.orderId = orderId;
+            this.quantities = quantities;
+        }
+    }
+
+    /**
+     * The ingredients taken for one order while it is being stored. A hold
+     * must be committed or aborted on the thread that took it.
+     */
+    public final class Hold {
+        private final SortedMap<Integer, Integer> quantities;
+        private int orderId = -1;
+        private boolean done;
+
+        private Hold(SortedMap<Integer, Integer> quantities) {
+            this.quantities = quantities;
+        }
+
+        /**
+         * Appends the hold to the journal once its order has an ID. Call it
+         * before committing the order's transaction.
+         *
+         * @param orderId the ID of the order
+         * @throws IOException if the journal cannot be written
+         * @author harry
+         */
+        public void journal(int orderId) throws IOException {
+            append(DEDUCT, orderId, quantities);
+            this.orderId = orderId;
+        }
+
+        /**
+         * Queues the deductions for the next flush once the order is stored.
+         *
+         * @author harry
+         */
+        public void commit() {
+            finish(true);
+        }
+
+        /**
+         * Puts the ingredients back after the order failed, cancelling its
+         * journal record if it has one. Does nothing if already finished.
+         *
+         * @author harry
+         */
+        public void abort() {
+            finish(false);
+        }
+
+        private void finish(boolean stored) {
+            if (done) {
+                return;
+            }
+            done = true;
+            try {
+                synchronized (StockLedger.this) {
+                    for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+                        held.merge(entry.getKey(), -entry.getValue(), Integer::sum);
+                        if (stored) {
+                            pending.merge(entry.getKey(), entry.getValue(), Integer::sum);
+                        } else {
+                            stock.merge(entry.getKey(), entry.getValue(), Integer::sum);
+                        }
+                    }
+                }
+                if (!stored && orderId >= 0) {
+                    try {
+                        append(CANCEL, orderId, Map.of());
+                    } catch (IOException e) {
+                        System.err.println("Error cancelling stock journal record: " + e.getMessage());
+                    }
+                }
+            } finally {
+                rotation.readLock().unlock();
+            }
+        }
+    }
+
+    private final DatabaseManager dbManager;
+    private final Path dir;
+    private final long flushMillis;
+
+    /** Held by orders between taking stock and finishing; a flush takes it exclusively to rotate segments */
+    private final ReentrantReadWriteLock rotation = new ReentrantReadWriteLock();
+    /** Serializes journal appends and segment switches */
+    private final Object journalLock = new Object();
+    /** Serializes flushes, which share one connection */
+    private final Object flushLock = new Object();
+
+    /** Ingredient ID to count, less what is held and pending; guarded by this */
+    private final Map<Integer, Integer> stock = new HashMap<>();
+    /** Ingredient ID to quantity taken by orders not yet finished; guarded by this */
+    private final Map<Integer, Integer> held = new HashMap<>();
+    /** Ingredient ID to quantity deducted by stored orders since the last flush; guarded by this */
+    private SortedMap<Integer, Integer> pending = new TreeMap<>();
+
+    private FileChannel journal;
+    private long segment;
+    /** Holds the lock on the journal directory while the ledger is open */
+    private FileChannel directoryLock;
+    /** Identifies this terminal's row in the stockledger table */
+    private String ledgerId;
+    private Connection connection;
+    private ScheduledExecutorService flusher;
+
+    /**
+     * Constructs a ledger journalling to a directory. Call {@link #open()}
+     * before use.
+     *
+     * @param dbManager the DatabaseManager to open the flush connection with
+     * @param dir the journal directory
+     * @param flushMillis the time between flushes
+     * @author harry
+     */
+    public StockLedger(DatabaseManager dbManager, Path dir, long flushMillis) {
+        this.dbManager = dbManager;
+        this.dir = dir;
+        this.flushMillis = flushMillis;
+    }
+
+    /**
+     * Locks the journal directory, replays the journal segments a crash left
+     * unflushed, loads the stock from the database and opens a new journal
+     * segment.
+     *
+     * @throws SQLException if the database cannot be read or updated
+     * @throws IOException if the journal is in use by another process, or
+     *         cannot be read or written
+     * @author harry
+     */
+    public void open() throws SQLException, IOException {
+        Files.createDirectories(dir);
+        lockDirectory();
+        try {
+            ledgerId = readTerminalId();
+            recover();
+        } catch (SQLException | IOException e) {
+            closeConnection();
+            unlockDirectory();
+            throw e;
+        }
+    }
+
+    /** Replays the unflushed segments, loads the stock and opens a new segment. */
+    private void recover() throws SQLException, IOException {
+        long flushed = queryFlushedSegment();
+        long last = flushed;
+        List<Record> live = new ArrayList<>();
+        for (long number : listSegments()) {
+            if (number > flushed) {
+                live = collectLive(live, readSegment(segmentPath(number)));
+                last = number;
+            }
+        }
+        if (last > flushed) {
+            SortedMap<Integer, Integer> replayed = new TreeMap<>();
+            Set<Integer> stored = queryStoredOrders(live);
+            for (Record record : live) {
+                if (stored.contains(record.orderId)) {
+                    record.quantities.forEach((id, qty) -> replayed.merge(id, qty, Integer::sum));
+                }
+            }
+            applyFlush(replayed, last);
+            System.out.println("Replayed " + stored.size() + " journalled orders into inventory");
+        }
+        deleteSegmentsThrough(last);
+
+        synchronized (this) {
+            try (Statement stmt = connection().createStatement();
+                    ResultSet rs = stmt.executeQuery("SELECT ingredientid, ingredientcount FROM inventory")) {
+                while (rs.next()) {
+                    stock.put(rs.getInt("ingredientid"), rs.getInt("ingredientcount"));
+                }
+            }
+        }
+        synchronized (journalLock) {
+            segment = last + 1;
+            journal = openSegment(segment);
+        }
+    }
+
+    /**
+     * Starts flushing in the background, and once more when the JVM exits.
+     *
+     * @author harry
+     */
+    public synchronized void start() {
+        if (flusher != null) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-ledger-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "stock-ledger-shutdown"));
+    }
+
+    /**
+     * Stops the background flush, flushes what is left and closes the
+     * journal and connection.
+     *
+     * @author harry
+     */
+    public void stop() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = flusher;
+            flusher = null;
+        }
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        synchronized (journalLock) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Error closing stock journal: " + e.getMessage());
+            }
+        }
+        synchronized (flushLock) {
+            closeConnection();
+        }
+        unlockDirectory();
+    }
+
+    /**
+     * Takes an order's ingredients if all of them are in stock. The hold
+     * keeps the current journal segment open until it is finished, so keep
+     * it only for the order's transaction.
+     *
+     * @param needed Map of ingredient ID to quantity
+     * @return the hold, or null if some ingredient is short
+     * @author harry
+     */
+    public Hold take(SortedMap<Integer, Integer> needed) {
+        rotation.readLock().lock();
+        synchronized (this) {
+            for (Map.Entry<Integer, Integer> entry : needed.entrySet()) {
+                if (stock.getOrDefault(entry.getKey(), 0) < entry.getValue()) {
+                    rotation.readLock().unlock();
+                    return null;
+                }
+            }
+            for (Map.Entry<Integer, Integer> entry : needed.entrySet()) {
+                stock.merge(entry.getKey(), -entry.getValue(), Integer::sum);
+                held.merge(entry.getKey(), entry.getValue(), Integer::sum);
+            }
+        }
+        return new Hold(new TreeMap<>(needed));
+    }
+
+    /**
+     * Gets the current counts, which may be ahead of the database by up to
+     * one flush interval.
+     *
+     * @return Map of ingredient ID to count
+     * @author harry
+     */
+    public synchronized Map<Integer, Integer> getStock() {
+        return new HashMap<>(stock);
+    }
+
+    /**
+     * Sets the count of one ingredient after it was written to the database,
+     * for example by a manager's stock correction or a new inventory item.
+     * Flush first, so earlier deductions are not applied on top of the new
+     * count.
+     *
+     * @param ingredientId the ingredient ID
+     * @param count the count now in the database
+     * @author harry
+     */
+    public synchronized void setStock(int ingredientId, int count) {
+        stock.put(ingredientId, count - held.getOrDefault(ingredientId, 0) - pending.getOrDefault(ingredientId, 0));
+    }
+
+    /**
+     * Writes the deductions of the orders stored since the last flush to the
+     * database in one transaction. On failure they stay queued for the next
+     * flush.
+     *
+     * @return true if everything queued was written
+     * @author harry
+     */
+    public boolean flush() {
+        synchronized (flushLock) {
+            SortedMap<Integer, Integer> batch;
+            long covered;
+            rotation.writeLock().lock();
+            try {
+                synchronized (this) {
+                    if (pending.isEmpty()) {
+                        return true;
+                    }
+                    batch = pending;
+                    pending = new TreeMap<>();
+                }
+                covered = rotate();
+            } finally {
+                rotation.writeLock().unlock();
+            }
+            if (covered < 0) {
+                requeue(batch);
+                return false;
+            }
+
+            try {
+                Map<Integer, Integer> counts = applyFlush(batch, covered);
+                synchronized (this) {
+                    for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+                        int id = entry.getKey();
+                        stock.put(id, entry.getValue() - held.getOrDefault(id, 0) - pending.getOrDefault(id, 0));
+                    }
+                }
+                deleteSegmentsThrough(covered);
+                return true;
+            } catch (SQLException | IOException e) {
+                System.err.println("Error flushing stock ledger: " + e.getMessage());
+                requeue(batch);
+                closeConnection();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Starts a new journal segment. Only called with the rotation lock held
+     * exclusively, so no order is between taking stock and finishing.
+     *
+     * @return the number of the segment just closed, or -1 on failure
+     */
+    private long rotate() {
+        synchronized (journalLock) {
+            try {
+                FileChannel previous = journal;
+                journal = openSegment(segment + 1);
+                previous.close();
+                return segment++;
+            } catch (IOException e) {
+                System.err.println("Error rotating stock journal: " + e.getMessage());
+                return -1;
+            }
+        }
+    }
+
+    private synchronized void requeue(Map<Integer, Integer> batch) {
+        batch.forEach((id, qty) -> pending.merge(id, qty, Integer::sum));
+    }
+
+    /**
+     * Applies summed deductions and marks the journal segments they cover as
+     * flushed, in one transaction.
+     *
+     * @return Map of ingredient ID to its updated count
+     */
+    private Map<Integer, Integer> applyFlush(SortedMap<Integer, Integer> deductions, long covered)
+            throws SQLException {
+        Connection conn = connection();
+        Map<Integer, Integer> counts = new HashMap<>();
+        conn.setAutoCommit(false);
+        try {
+            if (!deductions.isEmpty()) {
+                // Lock in ingredient ID order first; the join below would lock in any order
+                String lock = "SELECT ingredientid FROM inventory WHERE ingredientid = ANY(?) "
+                        + "ORDER BY ingredientid FOR UPDATE";
+                try (PreparedStatement pstmt = conn.prepareStatement(lock)) {
+                    pstmt.setArray(1, conn.createArrayOf("integer", deductions.keySet().toArray()));
+                    pstmt.executeQuery().close();
+                }
+                String update = "UPDATE inventory AS i SET ingredientcount = i.ingredientcount - d.qty "
+                        + "FROM unnest(?::int[], ?::int[]) AS d(id, qty) WHERE i.ingredientid = d.id "
+                        + "RETURNING i.ingredientid, i.ingredientcount";
+                try (PreparedStatement pstmt = conn.prepareStatement(update)) {
+                    pstmt.setArray(1, conn.createArrayOf("integer", deductions.keySet().toArray()));
+                    pstmt.setArray(2, conn.createArrayOf("integer", deductions.values().toArray()));
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            counts.put(rs.getInt(1), rs.getInt(2));
+                        }
+                    }
+                }
+            }
+            String mark = "INSERT INTO stockledger (ledgerid, flushedsegment) VALUES (?, ?) "
+                    + "ON CONFLICT (ledgerid) DO UPDATE SET flushedsegment = EXCLUDED.flushedsegment";
+            try (PreparedStatement pstmt = conn.prepareStatement(mark)) {
+                pstmt.setString(1, ledgerId);
+                pstmt.setLong(2, covered);
+                pstmt.executeUpdate();
+            }
+            conn.commit();
+            return counts;
+        } catch (SQLException e) {
+            try {
+                conn.rollback();
+            } catch (SQLException rollbackEx) {
+                System.err.println("Error rolling back stock flush: " + rollbackEx.getMessage());
+            }
+            throw e;
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                System.err.println("Error resetting auto-commit: " + e.getMessage());
+            }
+        }
+    }
+
+    private long queryFlushedSegment() throws SQLException {
+        try (PreparedStatement pstmt = connection().prepareStatement(
+                "SELECT flushedsegment FROM stockledger WHERE ledgerid = ?")) {
+            pstmt.setString(1, ledgerId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    private Set<Integer> queryStoredOrders(List<Record> records) throws SQLException {
+        Set<Integer> stored = new HashSet<>();
+        if (records.isEmpty()) {
+            return stored;
+        }
+        Connection conn = connection();
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT orderid FROM orders WHERE orderid = ANY(?)")) {
+            pstmt.setArray(1, conn.createArrayOf("integer", records.stream().map(r -> r.orderId).toArray()));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    stored.add(rs.getInt(1));
+                }
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Adds the deductions of a segment to those still live, dropping each
+     * one a later cancel record names.
+     *
+     * @param live the live deductions so far, in journal order
+     * @param records the records of the next segment
+     * @return the live deductions
+     */
+    static List<Record> collectLive(List<Record> live, List<Record> records) {
+        for (Record record : records) {
+            if (record.type == DEDUCT) {
+                live.add(record);
+                continue;
+            }
+            for (int i = live.size() - 1; i >= 0; i--) {
+                if (live.get(i).orderId == record.orderId) {
+                    live.remove(i);
+                    break;
+                }
+            }
+        }
+        return live;
+    }
+
+    /**
+     * Reads the records of a journal segment, stopping at the first record
+     * that is incomplete or fails its checksum, as left by a crash mid-write.
+     *
+     * @param path the segment file
+     * @return the records in the order they were written
+     * @throws IOException if the file cannot be read
+     */
+    static List<Record> readSegment(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        List<Record> records = new ArrayList<>();
+        while (buffer.remaining() >= 1 + 4 + 2) {
+            int start = buffer.position();
+            byte type = buffer.get();
+            int orderId = buffer.getInt();
+            int count = buffer.getShort() & 0xFFFF;
+            if (buffer.remaining() < count * 8 + 4) {
+                break;
+            }
+            Map<Integer, Integer> quantities = new TreeMap<>();
+            for (int i = 0; i < count; i++) {
+                quantities.put(buffer.getInt(), buffer.getInt());
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), start, buffer.position() - start);
+            if (buffer.getInt() != (int) crc.getValue()) {
+                break;
+            }
+            records.add(new Record(type, orderId, quantities));
+        }
+        return records;
+    }
+
+    private void append(byte type, int orderId, Map<Integer, Integer> quantities) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + 2 + quantities.size() * 8 + 4);
+        buffer.put(type).putInt(orderId).putShort((short) quantities.size());
+        for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+            buffer.putInt(entry.getKey()).putInt(entry.getValue());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        synchronized (journalLock) {
+            while (buffer.hasRemaining()) {
+                journal.write(buffer);
+            }
+            journal.force(false);
+        }
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(segmentPath(number), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private Path segmentPath(long number) {
+        return dir.resolve(String.format("segment-%012d.log", number));
+    }
+
+    private List<Long> listSegments() throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.matches("segment-\\d+\\.log"))
+                    .forEach(name -> numbers.add(Long.parseLong(name.substring(8, name.length() - 4))));
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    private void deleteSegmentsThrough(long number) throws IOException {
+        for (long existing : listSegments()) {
+            if (existing <= number) {
+                Files.deleteIfExists(segmentPath(existing));
+            }
+        }
+    }
+
+    /**
+     * Takes an exclusive lock on the journal directory, so a second process
+     * on this machine cannot replay and delete segments this one is writing.
+     */
+    private void lockDirectory() throws IOException {
+        FileChannel channel = FileChannel.open(dir.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IOException("Stock journal " + dir.toAbsolutePath() + " is in use by another process");
+        }
+        directoryLock = channel;
+    }
+
+    private void unlockDirectory() {
+        if (directoryLock != null) {
+            try {
+                directoryLock.close();
+            } catch (IOException e) {
+                System.err.println("Error unlocking stock journal: " + e.getMessage());
+            }
+            directoryLock = null;
+        }
+    }
+
+    /**
+     * Reads the terminal ID kept in the journal directory, generating one
+     * from the host name and a random UUID on first use. It stays with the
+     * segments, so a segment is always checked against the row it was
+     * flushed to.
+     */
+    private String readTerminalId() throws IOException {
+        Path file = dir.resolve(TERMINAL_ID_FILE);
+        if (Files.exists(file)) {
+            String saved = Files.readString(file, StandardCharsets.UTF_8).trim();
+            if (!saved.isEmpty()) {
+                return saved;
+            }
+        }
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            host = "till";
+        }
+        String generated = host + "/" + UUID.randomUUID();
+        Path temp = Files.createTempFile(dir, TERMINAL_ID_FILE, ".tmp");
+        Files.writeString(temp, generated, StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return generated;
+    }
+
+    private Connection connection() throws SQLException {
+        if (connection == null) {
+            connection = dbManager.openConnection();
+        }
+        return connection;
+    }
+
+    private void closeConnection() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing stock ledger connection: " + e.getMessage());
+            }
+            connection = null;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package New_Additions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+/**
+ * StoreSnapshot checkpoints the whole MockDataProvider state (menu, inventory,
+ * recipes, employees, orders and order items) to a compact binary file and
+ * restores it on startup, so offline shifts and large synthetic datasets
+ * survive a restart.
+ *
+ * Orders are written in independent blocks listed in a directory after the
+ * header. Blocks are encoded in parallel on save, and on restore each block
+ * is memory-mapped on its own and decoded and imported in parallel.
+ *
+ * File layout (big-endian): magic, version, saved-at millis, block count,
+ * then one (offset, length, CRC32) entry per block. Block 0 holds the
+ * reference data; the remaining blocks hold orders with their items.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class StoreSnapshot {
+    /** Default location of the store snapshot file */
+    public static final Path DEFAULT_PATH = Paths.get("store_snapshot.bin");
+
+    private static final int MAGIC = 0x424F4253; // "BOBS"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 2 + 8 + 4;
+    private static final int DIRECTORY_ENTRY_SIZE = 8 + 4 + 4;
+
+    /** Orders per block; small enough to spread across cores, large enough to amortize overhead */
+    private static final int ORDERS_PER_BLOCK = 32_768;
+
+    private StoreSnapshot() {
+    }
+
+    /**
+     * Writes the full state of a store to disk. The file is written to a
+     * temporary sibling first and then moved into place.
+     *
+     * @param store the store to checkpoint
+     * @param path the file to write
+     * @return the number of orders written
+     * @throws IOException if the file cannot be written
+     * @author harry
+     */
+    public static int save(MockDataProvider store, Path path) throws IOException {
+        List<Order> orders = store.getAllOrders();
+        int orderBlocks = (orders.size() + ORDERS_PER_BLOCK - 1) / ORDERS_PER_BLOCK;
+
+        List<byte[]> blocks = new ArrayList<>(orderBlocks + 1);
+        blocks.add(encodeReferenceData(store));
+        try {
+            blocks.addAll(IntStream.range(0, orderBlocks).parallel()
+                    .mapToObj(b -> encodeOrders(store, orders.subList(b * ORDERS_PER_BLOCK,
+                            Math.min(orders.size(), (b + 1) * ORDERS_PER_BLOCK))))
+                    .collect(Collectors.toList()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + blocks.size() * DIRECTORY_ENTRY_SIZE);
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        header.putLong(System.currentTimeMillis());
+        header.putInt(blocks.size());
+        long offset = header.capacity();
+        for (byte[] block : blocks) {
+            CRC32 crc = new CRC32();
+            crc.update(block);
+            header.putLong(offset);
+            header.putInt(block.length);
+            header.putInt((int) crc.getValue());
+            offset += block.length;
+        }
+        header.flip();
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            for (byte[] block : blocks) {
+                ByteBuffer body = ByteBuffer.wrap(block);
+                while (body.hasRemaining()) {
+                    channel.write(body);
+                }
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return orders.size();
+    }
+
+    /**
+     * Replaces the state of a store with the contents of a snapshot file.
+     *
+     * @param store the store to fill
+     * @param path the snapshot file to read
+     * @return the number of orders restored
+     * @throws IOException if the file is missing, corrupt or of another version
+     * @author harry
+     */
+    public static int restore(MockDataProvider store, Path path) throws IOException {
+        return restore(store, path, Long.MIN_VALUE);
+    }
+
+    /**
+     * Replaces the orders and employees of a store with the contents of a
+     * snapshot file. The menu, inventory and recipes are only replaced if
+     * the file was saved after the store's own were; a newer menu snapshot
+     * loaded into the store is kept.
+     *
+     * @param store the store to fill
+     * @param path the snapshot file to read
+     * @param referenceSavedAt when the store's menu, inventory and recipes were
+     *        saved, in epoch millis
+     * @return the number of orders restored
+     * @throws IOException if the file is missing, corrupt or of another version
+     * @author harry
+     */
+    public static int restore(MockDataProvider store, Path path, long referenceSavedAt) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Snapshot file is truncated: " + path);
+            }
+            ByteBuffer header = readFully(channel, 0, HEADER_SIZE, path);
+
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a store snapshot: " + path);
+            }
+            short version = header.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            long savedAt = header.getLong();
+            int blockCount = header.getInt();
+            if (blockCount < 1 || (long) blockCount * DIRECTORY_ENTRY_SIZE > channel.size() - HEADER_SIZE) {
+                throw new IOException("Snapshot block directory is corrupt: " + path);
+            }
+            ByteBuffer directory = readFully(channel, HEADER_SIZE, blockCount * DIRECTORY_ENTRY_SIZE, path);
+
+            // Each block is mapped on its own: one mapping is limited to 2 GB, the file is not
+            ByteBuffer[] blocks = new ByteBuffer[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                long offset = directory.getLong();
+                int length = directory.getInt();
+                int expectedCrc = directory.getInt();
+                if (offset < 0 || length < 0 || offset + length > channel.size()) {
+                    throw new IOException("Snapshot block " + i + " is truncated: " + path);
+                }
+                MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                CRC32 crc = new CRC32();
+                crc.update(block.duplicate());
+                if ((int) crc.getValue() != expectedCrc) {
+                    throw new IOException("Snapshot block " + i + " checksum mismatch: " + path);
+                }
+                blocks[i] = block;
+            }
+
+            decodeReferenceData(store, blocks[0], savedAt >= referenceSavedAt);
+            int restored = IntStream.range(1, blockCount).parallel()
+                    .map(i -> decodeOrders(store, blocks[i]))
+                    .sum();
+            store.syncIdCounters();
+            return restored;
+        }
+    }
+
+    /**
+     * Reads a range of a file into a buffer, failing if the file ends first.
+     */
+    private static ByteBuffer readFully(FileChannel channel, long position, int length, Path path)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Snapshot file is truncated: " + path);
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Encodes menu items, inventory, recipes and employees.
+     */
+    private static byte[] encodeReferenceData(MockDataProvider store) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            List<MenuItem> menuItems = store.getAllMenuItems();
+            out.writeInt(menuItems.size());
+            for (MenuItem item : menuItems) {
+                out.writeInt(item.getMenuItemID());
+                MenuSnapshot.writeString(out, item.getDrinkCategory());
+                MenuSnapshot.writeString(out, item.getMenuItemName());
+                out.writeDouble(item.getPrice());
+            }
+
+            List<Inventory> inventory = store.getAllInventory();
+            out.writeInt(inventory.size());
+            for (Inventory item : inventory) {
+                out.writeInt(item.getIngredientID());
+                MenuSnapshot.writeString(out, item.getIngredientName());
+                out.writeInt(item.getIngredientCount());
+            }
+
+            List<MenuItemIngredient> recipes = store.getAllRecipes();
+            out.writeInt(recipes.size());
+            for (MenuItemIngredient line : recipes) {
+                out.writeInt(line.getMenuItemID());
+                out.writeInt(line.getIngredientID());
+                out.writeInt(line.getIngredientQty());
+            }
+
+            List<Employee> employees = store.getAllEmployees();
+            out.writeInt(employees.size());
+            for (Employee employee : employees) {
+                out.writeInt(employee.getEmployeeID());
+                MenuSnapshot.writeString(out, employee.getEmployeeName());
+                MenuSnapshot.writeString(out, employee.getEmployeeRole());
+                out.writeInt(employee.getHoursWorked());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Restores employees and, if asked to, menu items, inventory and recipes;
+     * this also clears any orders already in the store.
+     */
+    private static void decodeReferenceData(MockDataProvider store, ByteBuffer in, boolean replaceMenu) {
+        List<MenuItem> menuItems = new ArrayList<>();
+        int menuCount = in.getInt();
+        for (int i = 0; i < menuCount; i++) {
+            int id = in.getInt();
+            String category = MenuSnapshot.readString(in);
+            String name = MenuSnapshot.readString(in);
+            menuItems.add(new MenuItem(id, category, name, in.getDouble()));
+        }
+
+        List<Inventory> inventory = new ArrayList<>();
+        int inventoryCount = in.getInt();
+        for (int i = 0; i < inventoryCount; i++) {
+            int id = in.getInt();
+            String name = MenuSnapshot.readString(in);
+            inventory.add(new Inventory(id, name, in.getInt()));
+        }
+
+        List<MenuItemIngredient> recipes = new ArrayList<>();
+        int recipeCount = in.getInt();
+        for (int i = 0; i < recipeCount; i++) {
+            recipes.add(new MenuItemIngredient(in.getInt(), in.getInt(), in.getInt()));
+        }
+
+        List<Employee> employees = new ArrayList<>();
+        int employeeCount = in.getInt();
+        for (int i = 0; i < employeeCount; i++) {
+            int id = in.getInt();
+            String name = MenuSnapshot.readString(in);
+            String role = MenuSnapshot.readString(in);
+            employees.add(new Employee(id, name, role, in.getInt()));
+        }
+
+        if (replaceMenu) {
+            store.loadSnapshot(new MenuSnapshot(menuItems, inventory, recipes));
+        } else {
+            store.clearOrders();
+        }
+        store.replaceEmployees(employees);
+    }
+
+    /**
+     * Encodes one block of orders, each followed by its items.
+     */
+    private static byte[] encodeOrders(MockDataProvider store, List<Order> orders) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(orders.size() * 96);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(orders.size());
+            for (Order order : orders) {
+                out.writeInt(order.getOrderID());
+                out.writeLong(order.getTimeOfOrder().getTime());
+                out.writeBoolean(order.getCustomerID() != null);
+                out.writeInt(order.getCustomerID() == null ? 0 : order.getCustomerID());
+                out.writeInt(order.getEmployeeID());
+                out.writeDouble(order.getTotalCost());
+                out.writeInt(order.getOrderWeek());
+                UUID orderKey = order.getOrderKey();
+                out.writeBoolean(orderKey != null);
+                if (orderKey != null) {
+                    out.writeLong(orderKey.getMostSignificantBits());
+                    out.writeLong(orderKey.getLeastSignificantBits());
+                }
+
+                List<OrderItem> items = store.getOrderItemsForOrder(order.getOrderID());
+                out.writeShort(items.size());
+                for (OrderItem item : items) {
+                    out.writeInt(item.getOrderItemID());
+                    out.writeInt(item.getMenuItemID());
+                    out.writeInt(item.getQuantity());
+                    out.writeByte(item.hasSugarLevel() ? item.getSugarLevel() : -1);
+                    out.writeByte(item.hasIceLevel() ? item.getIceLevel() : -1);
+                    MenuSnapshot.writeString(out, item.getMilkType());
+                    out.writeInt(item.getToppingMask());
+                    for (int mask = item.getToppingMask(); mask != 0; mask &= mask - 1) {
+                        out.writeByte(item.getTopping(Topping.byId(Integer.numberOfTrailingZeros(mask))));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes one block of orders and imports them into the store. The order
+     * key is restored with each order, so resubmissions are still recognized
+     * after a restart.
+     */
+    private static int decodeOrders(MockDataProvider store, ByteBuffer in) {
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            int orderId = in.getInt();
+            Timestamp time = new Timestamp(in.getLong());
+            boolean hasCustomer = in.get() != 0;
+            int customerId = in.getInt();
+            Order order = new Order(orderId, time, hasCustomer ? customerId : null, in.getInt(),
+                    in.getDouble(), in.getInt());
+            if (in.get() != 0) {
+                order.setOrderKey(new UUID(in.getLong(), in.getLong()));
+            }
+
+            int itemCount = in.getShort();
+            List<OrderItem> items = new ArrayList<>(itemCount);
+            for (int j = 0; j < itemCount; j++) {
+                OrderItem item = new OrderItem(in.getInt(), orderId, in.getInt(), in.getInt());
+                byte sugarLevel = in.get();
+                if (sugarLevel >= 0) {
+                    item.setSugarLevel(sugarLevel);
+                }
+                byte iceLevel = in.get();
+                if (iceLevel >= 0) {
+                    item.setIceLevel(iceLevel);
+                }
+                item.setMilkType(MenuSnapshot.readString(in));
+                for (int mask = in.getInt(); mask != 0; mask &= mask - 1) {
+                    item.setTopping(Topping.byId(Integer.numberOfTrailingZeros(mask)), in.get());
+                }
+                items.add(item);
+            }
+            store.importOrder(order, items);
+        }
+        return count;
+    }
+}
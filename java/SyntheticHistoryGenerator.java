@@ -0,0 +1,280 @@
+package New_Additions;
+
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.WeekFields;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * SyntheticHistoryGenerator fills a MockDataProvider with realistic order
+ * history so analytics and history screens can be exercised at production
+ * data sizes in demo and test mode.
+ *
+ * Demand follows an hourly curve with lunch and after-school peaks, busier
+ * weekends, a fixed category mix and per-topping add-on rates. Each day is
+ * generated from its own random stream derived from the seed, so days are
+ * built in parallel and the same seed always gives the same history,
+ * including order and order item IDs.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public class SyntheticHistoryGenerator {
+
+    /** Relative order volume per hour of day; the shop is closed before 10 and after 21 */
+    private static final double[] HOURLY_DEMAND = {
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0.6, 1.0, 1.8, 2.0, 1.4, 1.6, 1.9, 1.5, 1.2, 1.0, 0.8, 0.5, 0, 0 };
+
+    /** Relative order volume per day of week, Monday first */
+    private static final double[] WEEKDAY_DEMAND = { 0.85, 0.85, 0.9, 0.95, 1.15, 1.35, 1.2 };
+
+    /** Drink categories and their share of line items */
+    private static final String[] CATEGORIES = { "Milk Tea", "Fruit Tea", "Coffee", "Smoothie", "Specialty" };
+    private static final double[] CATEGORY_MIX = { 0.42, 0.24, 0.10, 0.09, 0.15 };
+
+    /** Chance that a line item gets boba, lychee jelly or grass jelly */
+    private static final double BOBA_RATE = 0.45;
+    private static final double LYCHEE_JELLY_RATE = 0.10;
+    private static final double GRASS_JELLY_RATE = 0.07;
+    /** Chance of one of the less common toppings, picked uniformly */
+    private static final double OTHER_TOPPING_RATE = 0.20;
+
+    private static final int[] LEVELS = { 0, 25, 50, 75, 100 };
+    private static final String[] MILK_TYPES = { "Regular", "Regular", "Regular", "Oat", "Almond", "Coconut" };
+
+    /** Size of the loyalty customer pool; walk-ins have no customer ID */
+    private static final int CUSTOMER_POOL = 5000;
+    private static final double LOYALTY_RATE = 0.3;
+
+    private final long seed;
+    private final int ordersPerDay;
+
+    private final double[] hourCdf = cumulative(HOURLY_DEMAND);
+    private final double[] categoryCdf = cumulative(CATEGORY_MIX);
+
+    /**
+     * Constructs a new generator.
+     *
+     * @param seed the seed that determines the whole history
+     * @param ordersPerDay the average number of orders on a weekday
+     * @author harry
+     */
+    public SyntheticHistoryGenerator(long seed, int ordersPerDay) {
+        this.seed = seed;
+        this.ordersPerDay = ordersPerDay;
+    }
+
+    /**
+     * Generates order history for a run of days and imports it into the store.
+     * Days are generated in parallel, IDs are reserved as one block and then
+     * assigned in day order so the result is deterministic.
+     *
+     * @param store the store to fill
+     * @param firstDay the first day of history
+     * @param days the number of days to generate
+     * @return the number of orders generated
+     * @author harry
+     */
+    public int generate(MockDataProvider store, LocalDate firstDay, int days) {
+        List<MenuItem> menu = store.getAllMenuItems();
+        List<List<MenuItem>> menuByCategory = new ArrayList<>();
+        for (String category : CATEGORIES) {
+            List<MenuItem> items = store.getMenuItemsByCategory(category);
+            menuByCategory.add(items.isEmpty() ? menu : items);
+        }
+        int[] employeeIds = store.getAllEmployees().stream().mapToInt(Employee::getEmployeeID).toArray();
+        if (menu.isEmpty() || employeeIds.length == 0) {
+            return 0;
+        }
+
+        // Split one independent stream per day up front so the parallel result is deterministic
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] dayRandoms = new SplittableRandom[days];
+        for (int day = 0; day < days; day++) {
+            dayRandoms[day] = root.split();
+        }
+
+        List<DayBatch> batches = IntStream.range(0, days).parallel()
+                .mapToObj(day -> generateDay(firstDay.plusDays(day), dayRandoms[day], menuByCategory, employeeIds))
+                .collect(Collectors.toList());
+
+        int totalOrders = 0;
+        int totalItems = 0;
+        for (DayBatch batch : batches) {
+            batch.firstOrderOffset = totalOrders;
+            batch.firstItemOffset = totalItems;
+            totalOrders += batch.orders.size();
+            totalItems += batch.itemCount;
+        }
+
+        int orderBase = store.reserveOrderIds(totalOrders);
+        int itemBase = store.reserveOrderItemIds(totalItems);
+        batches.parallelStream().forEach(batch -> batch.importInto(store, orderBase, itemBase));
+
+        return totalOrders;
+    }
+
+    /**
+     * Generates one day of orders from the day's own random stream.
+     */
+    private DayBatch generateDay(LocalDate date, SplittableRandom random, List<List<MenuItem>> menuByCategory,
+            int[] employeeIds) {
+        DayBatch batch = new DayBatch();
+
+        double volume = ordersPerDay * WEEKDAY_DEMAND[date.getDayOfWeek().getValue() - 1];
+        int orderCount = (int) Math.round(volume * (0.9 + 0.2 * random.nextDouble()));
+        int week = date.get(WeekFields.of(Locale.getDefault()).weekOfYear());
+
+        List<LocalDateTime> times = new ArrayList<>(orderCount);
+        for (int i = 0; i < orderCount; i++) {
+            int hour = sample(hourCdf, random);
+            times.add(date.atTime(hour, random.nextInt(60), random.nextInt(60)));
+        }
+        times.sort(null);
+
+        for (LocalDateTime time : times) {
+            Order order = new Order();
+            order.setTimeOfOrder(Timestamp.valueOf(time));
+            order.setEmployeeID(employeeIds[random.nextInt(employeeIds.length)]);
+            order.setCustomerID(random.nextDouble() < LOYALTY_RATE ? 1 + random.nextInt(CUSTOMER_POOL) : null);
+            order.setOrderWeek(week);
+
+            // 1 item most of the time, occasionally a group order
+            int lines = 1;
+            while (lines < 6 && random.nextDouble() < 0.35) {
+                lines++;
+            }
+
+            List<OrderItem> items = new ArrayList<>(lines);
+            double total = 0.0;
+            for (int i = 0; i < lines; i++) {
+                List<MenuItem> choices = menuByCategory.get(sample(categoryCdf, random));
+                MenuItem menuItem = choices.get(random.nextInt(choices.size()));
+
+                OrderItem item = new OrderItem();
+                item.setMenuItemID(menuItem.getMenuItemID());
+                item.setQuantity(random.nextDouble() < 0.85 ? 1 : 2);
+                item.setSugarLevel(LEVELS[random.nextInt(LEVELS.length)]);
+                item.setIceLevel(LEVELS[random.nextInt(LEVELS.length)]);
+                item.setMilkType(MILK_TYPES[random.nextInt(MILK_TYPES.length)]);
+                item.setBoba(random.nextDouble() < BOBA_RATE ? 1 : 0);
+                item.setLycheeJelly(random.nextDouble() < LYCHEE_JELLY_RATE ? 1 : 0);
+                item.setGrassJelly(random.nextDouble() < GRASS_JELLY_RATE ? 1 : 0);
+                if (random.nextDouble() < OTHER_TOPPING_RATE) {
+                    item.setTopping(Topping.byId(3 + random.nextInt(Topping.count() - 3)), 1);
+                }
+
+                total += menuItem.getPrice() * item.getQuantity();
+                items.add(item);
+            }
+            order.setTotalCost(Math.round(total * 100) / 100.0);
+
+            batch.orders.add(order);
+            batch.items.add(items);
+            batch.itemCount += items.size();
+        }
+        return batch;
+    }
+
+    /**
+     * Picks an index from a cumulative distribution.
+     */
+    private static int sample(double[] cdf, SplittableRandom random) {
+        double target = random.nextDouble() * cdf[cdf.length - 1];
+        for (int i = 0; i < cdf.length; i++) {
+            if (target < cdf[i]) {
+                return i;
+            }
+        }
+        return cdf.length - 1;
+    }
+
+    /**
+     * Builds a running sum of weights.
+     */
+    private static double[] cumulative(double[] weights) {
+        double[] cdf = new double[weights.length];
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            cdf[i] = sum;
+        }
+        return cdf;
+    }
+
+    /** One generated day, waiting for its block of IDs. */
+    private static class DayBatch {
+        private final List<Order> orders = new ArrayList<>();
+        private final List<List<OrderItem>> items = new ArrayList<>();
+        private int itemCount;
+        private int firstOrderOffset;
+        private int firstItemOffset;
+
+        /** Assigns this day's IDs from the reserved blocks and stores the orders. */
+        private void importInto(MockDataProvider store, int orderBase, int itemBase) {
+            int nextItemId = itemBase + firstItemOffset;
+            for (int i = 0; i < orders.size(); i++) {
+                Order order = orders.get(i);
+                order.setOrderID(orderBase + firstOrderOffset + i);
+                for (OrderItem item : items.get(i)) {
+                    item.setOrderItemID(nextItemId++);
+                    item.setOrderID(order.getOrderID());
+                }
+                store.importOrder(order, items.get(i));
+            }
+        }
+    }
+
+    /**
+     * Generates a history into a fresh mock store and times the analytics and
+     * history paths against it.
+     * Usage: SyntheticHistoryGenerator [days] [ordersPerDay] [seed]
+     *
+     * @param args optional days, orders per weekday and seed
+     * @author harry
+     */
+    public static void main(String[] args) {
+        int days = args.length > 0 ? Integer.parseInt(args[0]) : 365;
+        int perDay = args.length > 1 ? Integer.parseInt(args[1]) : 800;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42L;
+
+        MockDataProvider store = new MockDataProvider();
+        LocalDate firstDay = LocalDate.now().minusDays(days - 1);
+
+        long start = System.nanoTime();
+        int generated = new SyntheticHistoryGenerator(seed, perDay).generate(store, firstDay, days);
+        System.out.printf("Generated %,d orders over %d days in %d ms%n",
+                generated, days, (System.nanoTime() - start) / 1_000_000);
+
+        java.sql.Date from = java.sql.Date.valueOf(firstDay);
+        java.sql.Date to = java.sql.Date.valueOf(LocalDate.now());
+        for (int run = 0; run < 3; run++) {
+            start = System.nanoTime();
+            double sales = store.getTotalSales(from, to);
+            long salesMs = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+            int products = store.getProductUsageData().size();
+            long usageMs = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+            int paged = 0;
+            for (int offset : new int[] { 0, 1_000, generated / 2 }) {
+                paged += store.getOrdersPage(offset, 50).size();
+            }
+            long pageMs = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.printf("run %d: getTotalSales=$%,.2f (%d ms), getProductUsageData=%d items (%d ms), "
+                    + "3 history pages=%d orders (%d ms)%n", run + 1, sales, salesMs, products, usageMs, paged, pageMs);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package New_Additions;
+
+/**
+ * Topping is the catalogue of toppings and add-ons that can be put on a
+ * drink, with the inventory ingredient each one draws from and its price.
+ *
+ * An OrderItem stores its toppings as a bitmask indexed by
+ * {@link #ordinal()}, which is also how they are persisted, so new toppings
+ * must only ever be added at the end of the list.
+ *
+ * @author harry
+ * @version 1.0
+ * @since 2024
+ */
+public enum Topping {
+    BOBA("Boba", "Tapioca Pearls (Boba)", 50),
+    LYCHEE_JELLY("Lychee Jelly", "Lychee Jelly", 50),
+    GRASS_JELLY("Grass Jelly", "Grass Jelly", 50),
+    PUDDING("Pudding", "Pudding", 75),
+    ALOE_VERA("Aloe Vera", "Aloe Vera", 50),
+    RED_BEAN("Red Bean", "Red Bean", 50),
+    COFFEE_JELLY("Coffee Jelly", "Coffee Jelly", 50),
+    COCONUT_JELLY("Coconut Jelly", "Coconut Jelly", 50),
+    CHIA_SEEDS("Chia Seeds", "Chia Seeds", 50),
+    TARO_BALLS("Taro Balls", "Taro Balls", 75),
+    MANGO_STARS("Mango Stars", "Mango Stars", 50),
+    RAINBOW_JELLY("Rainbow Jelly", "Rainbow Jelly", 50),
+    CRYSTAL_BOBA("Crystal Boba", "Crystal Boba", 75),
+    CHEESE_FOAM("Cheese Foam", "Cheese Foam", 100),
+    WHIPPED_CREAM("Whipped Cream", "Whipped Cream", 50),
+    OREO_CRUMBS("Oreo Crumbs", "Oreo Crumbs", 50),
+    CARAMEL_DRIZZLE("Caramel Drizzle", "Caramel Sauce", 50),
+    MATCHA_FOAM("Matcha Foam", "Matcha Powder", 100),
+    STRAWBERRY_POPPING_BOBA("Strawberry Popping Boba", "Popping Boba (Strawberry)", 75),
+    MANGO_POPPING_BOBA("Mango Popping Boba", "Popping Boba (Mango)", 75),
+    BLUEBERRY_POPPING_BOBA("Blueberry Popping Boba", "Popping Boba (Blueberry)", 75),
+    PASSIONFRUIT_POPPING_BOBA("Passionfruit Popping Boba", "Popping Boba (Passionfruit)", 75),
+    CHOCOLATE_CHIPS("Chocolate Chips", "Chocolate Chips", 50),
+    PEANUT_CRUMBLE("Peanut Crumble", "Peanut Crumble", 50),
+    MARSHMALLOWS("Marshmallows", "Marshmallows", 50),
+    CINNAMON_DUST("Cinnamon Dust", "Cinnamon", 25),
+    HONEY("Honey", "Honey", 50),
+    MINT_LEAVES("Mint Leaves", "Mint Leaves", 25);
+
+    private static final Topping[] VALUES = values();
+
+    private final String displayName;
+    private final String ingredientName;
+    private final int priceCents;
+
+    Topping(String displayName, String ingredientName, int priceCents) {
+        this.displayName = displayName;
+        this.ingredientName = ingredientName;
+        this.priceCents = priceCents;
+    }
+
+    /**
+     * Gets the name shown to cashiers and on receipts.
+     *
+     * @return the display name
+     * @author harry
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Gets the name of the inventory item one portion of the topping uses.
+     *
+     * @return the ingredient name
+     * @author harry
+     */
+    public String getIngredientName() {
+        return ingredientName;
+    }
+
+    /**
+     * Gets the price of one portion.
+     *
+     * @return the price in cents
+     * @author harry
+     */
+    public int getPriceCents() {
+        return priceCents;
+    }
+
+    /**
+     * Gets the bit of this topping in a topping mask.
+     *
+     * @return the mask bit
+     * @author harry
+     */
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * Looks up a topping by its position in the catalogue.
+     *
+     * @param id the topping ID, as returned by {@link #ordinal()}
+     * @return the topping
+     * @author harry
+     */
+    public static Topping byId(int id) {
+        return VALUES[id];
+    }
+
+    /**
+     * Gets the number of toppings in the catalogue.
+     *
+     * @return the topping count
+     * @author harry
+     */
+    public static int count() {
+        return VALUES.length;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
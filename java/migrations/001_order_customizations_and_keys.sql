@@ -0,0 +1,25 @@
+-- Adds the drink customization columns to orderitems and the order key used
+-- to recognize resubmitted orders. Run once per database, as a role that
+-- owns the tables, before starting tills built with these columns:
+--
+--     psql "$DB_URL" -f migrations/001_order_customizations_and_keys.sql
+--
+-- The tills only check that these columns and the index exist; they no
+-- longer change the schema themselves.
+
+-- Toppings are packed as (topping ID, portions) byte pairs, see
+-- OrderItem.getPackedToppings(). Adding nullable columns without defaults
+-- only touches the catalog, so the lock is held briefly.
+ALTER TABLE orderitems
+    ADD COLUMN IF NOT EXISTS sugarlevel smallint,
+    ADD COLUMN IF NOT EXISTS icelevel smallint,
+    ADD COLUMN IF NOT EXISTS milktype text,
+    ADD COLUMN IF NOT EXISTS toppings bytea;
+
+-- Orders stored without a key leave it null, which never conflicts.
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS orderkey uuid;
+
+-- Built concurrently so tills can keep taking orders while it builds. This
+-- cannot run inside a transaction block; if it fails, drop the invalid index
+-- and run this statement again.
+CREATE UNIQUE INDEX CONCURRENTLY IF NOT EXISTS orders_orderkey_key ON orders (orderkey);
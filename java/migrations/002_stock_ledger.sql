@@ -0,0 +1,14 @@
+-- Adds the table the stock ledger records its flushed journal segments in,
+-- one row per till. Run once per database, as a role allowed to create
+-- tables, before starting tills that keep a stock journal:
+--
+--     psql "$DB_URL" -f migrations/002_stock_ledger.sql
+--
+-- The tills only check that the table exists; until it does, orders update
+-- the inventory rows directly.
+
+-- ledgerid is the terminal ID kept in each till's stock_journal/terminal_id.
+CREATE TABLE IF NOT EXISTS stockledger (
+    ledgerid text PRIMARY KEY,
+    flushedsegment bigint NOT NULL
+);